@@ -4,43 +4,85 @@ import java.sql.*;
 
 public class ConnectionEstablisher {
 
-    //Static variables for database connection
-    private final String URL = "jdbc:mysql://db.cs.dal.ca:3306/shrey";
-    private final String USERNAME = "shrey";
-    private final String PASSWORD = "B00960433";
+    private static ConnectionEstablisher sharedDefault;
 
+    private final StorageBackend storageBackend;
+    private final ConnectionPool connectionPool;
 
+    /**
+     * Creates a connection establisher backed by the process-wide pool for the backend
+     * selected through the investment.storage system property.
+     */
     public ConnectionEstablisher() {
+        this(getSharedDefault());
+    }
+
+    /**
+     * Creates a connection establisher with its own connection pool against the given backend.
+     *
+     * @param storageBackend the backend to connect to
+     */
+    public ConnectionEstablisher(StorageBackend storageBackend) {
+        this(storageBackend, storageBackend.createConnectionPool());
     }
 
     /**
-     * Establishes a connection to the database using the provided credentials.
+     * Creates a connection establisher that hands out connections from the given pool.
      *
-     * @return a Connection object representing the database connection
+     * @param storageBackend the backend the pool connects to
+     * @param connectionPool the pool to borrow connections from
+     */
+    public ConnectionEstablisher(StorageBackend storageBackend, ConnectionPool connectionPool) {
+        this.storageBackend = storageBackend;
+        this.connectionPool = connectionPool;
+    }
+
+    private ConnectionEstablisher(ConnectionEstablisher other) {
+        this(other.storageBackend, other.connectionPool);
+    }
+
+    private static synchronized ConnectionEstablisher getSharedDefault() {
+        if (sharedDefault == null) {
+            sharedDefault = new ConnectionEstablisher(StorageBackend.fromSystemProperties());
+        }
+        return sharedDefault;
+    }
+
+    /**
+     * Borrows a connection to the database from the connection pool.
+     *
+     * @return a Connection object representing the database connection, or null if none could be obtained
      */
     public Connection establishConnection() {
         try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            return DriverManager.getConnection(URL, USERNAME, PASSWORD);
+            return connectionPool.borrowConnection();
         } catch (SQLException e) {
             return null;
-        } catch (ClassNotFoundException e) {
-            throw new RuntimeException(e);
         }
     }
 
     /**
-     * Closes the given database connection.
+     * Returns the given database connection to the connection pool.
      *
-     * @param connect the Connection object to be closed
+     * @param connect the Connection object to be released
      */
     public void closeConnection(Connection connect) {
         if (connect != null) {
-            try {
-                connect.close();
-            } catch (SQLException e) {
-                System.out.println("Failed to close connection: " + e.getMessage());
-            }
+            connectionPool.releaseConnection(connect);
         }
     }
+
+    /**
+     * @return the backend this establisher connects to
+     */
+    public StorageBackend getStorageBackend() {
+        return storageBackend;
+    }
+
+    /**
+     * @return the connection pool used by this establisher, for metrics and shutdown
+     */
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
 }
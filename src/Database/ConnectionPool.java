@@ -0,0 +1,432 @@
+package Database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class ConnectionPool {
+
+    // Default pool settings
+    public static final int DEFAULT_MAX_SIZE = 10;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 10 * 60 * 1000L;
+    public static final long DEFAULT_BORROW_TIMEOUT_MILLIS = 30 * 1000L;
+    public static final long DEFAULT_LEAK_THRESHOLD_MILLIS = 60 * 1000L;
+
+    // Connections returned more recently than this are handed out again without a validation round trip
+    private static final long VALIDATION_BYPASS_MILLIS = 500L;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    private static final long HOUSEKEEPING_INTERVAL_MILLIS = 30 * 1000L;
+    // Set -Dinvestment.pool.traceLeaks=true to record where each connection was borrowed, for leak reports.
+    // Off by default, since building a stack trace on every borrow is expensive
+    private static final boolean TRACE_LEAKS = Boolean.getBoolean("investment.pool.traceLeaks");
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maxSize;
+    private final long idleTimeoutMillis;
+    private final long borrowTimeoutMillis;
+    private final long leakThresholdMillis;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition connectionAvailable = lock.newCondition();
+    private final Deque<IdleConnection> idleConnections = new ArrayDeque<>();
+    private final Map<Connection, Lease> leasedConnections = new IdentityHashMap<>();
+    private final ScheduledExecutorService housekeeper;
+    private int pendingCreations = 0;
+    private boolean closed = false;
+
+    // Pool metrics, guarded by lock
+    private long borrowCount = 0;
+    private long totalWaitNanos = 0;
+    private long maxWaitNanos = 0;
+    private long timeoutCount = 0;
+    private long leakCount = 0;
+    private long createdCount = 0;
+    private long evictedCount = 0;
+
+    public ConnectionPool(String driverClassName, String url, String username, String password) {
+        this(driverClassName, url, username, password, DEFAULT_MAX_SIZE, DEFAULT_IDLE_TIMEOUT_MILLIS,
+                DEFAULT_BORROW_TIMEOUT_MILLIS, DEFAULT_LEAK_THRESHOLD_MILLIS);
+    }
+
+    /**
+     * Creates a bounded connection pool. Connections are opened lazily, up to maxSize at a time.
+     *
+     * @param driverClassName     the JDBC driver class to load
+     * @param url                 the JDBC URL of the database
+     * @param username            the database user
+     * @param password            the database password
+     * @param maxSize             the maximum number of open connections
+     * @param idleTimeoutMillis   how long an unused connection is kept before it is closed
+     * @param borrowTimeoutMillis how long a caller waits for a free connection before giving up
+     * @param leakThresholdMillis how long a connection may be held before it is reported as leaked, or 0 to disable
+     */
+    public ConnectionPool(String driverClassName, String url, String username, String password, int maxSize,
+                          long idleTimeoutMillis, long borrowTimeoutMillis, long leakThresholdMillis) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive.");
+        }
+        try {
+            Class.forName(driverClassName);
+        } catch (ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeep, HOUSEKEEPING_INTERVAL_MILLIS,
+                HOUSEKEEPING_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if the pool is not yet full.
+     * Idle connections are validated before they are handed out.
+     *
+     * @return an open connection that must be given back with releaseConnection
+     * @throws SQLException if no connection becomes available within the borrow timeout or one cannot be opened
+     */
+    public Connection borrowConnection() throws SQLException {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMillis);
+        while (true) {
+            IdleConnection candidate = null;
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) {
+                        throw new SQLException("Connection pool is closed.");
+                    }
+                    candidate = idleConnections.pollFirst();
+                    if (candidate != null || totalConnections() < maxSize) {
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        timeoutCount++;
+                        throw new SQLException("Timed out after " + borrowTimeoutMillis + " ms waiting for a database connection.");
+                    }
+                    connectionAvailable.awaitNanos(remaining);
+                }
+                if (candidate == null) {
+                    pendingCreations++; // Reserve a slot while the connection is opened outside the lock
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection.", e);
+            } finally {
+                lock.unlock();
+            }
+
+            Connection connection;
+            if (candidate == null) {
+                try {
+                    connection = DriverManager.getConnection(url, username, password);
+                } catch (SQLException e) {
+                    lock.lock();
+                    try {
+                        pendingCreations--;
+                        connectionAvailable.signal();
+                    } finally {
+                        lock.unlock();
+                    }
+                    throw e;
+                }
+            } else {
+                connection = candidate.connection;
+                if (System.currentTimeMillis() - candidate.lastUsedMillis > VALIDATION_BYPASS_MILLIS && !isUsable(connection)) {
+                    closeQuietly(connection);
+                    signalAvailable();
+                    continue; // Try the next idle connection or open a new one
+                }
+            }
+
+            Lease lease = new Lease(TRACE_LEAKS && leakThresholdMillis > 0);
+            lock.lock();
+            try {
+                if (candidate == null) {
+                    pendingCreations--;
+                    createdCount++;
+                }
+                leasedConnections.put(connection, lease);
+                long waited = System.nanoTime() - start;
+                borrowCount++;
+                totalWaitNanos += waited;
+                maxWaitNanos = Math.max(maxWaitNanos, waited);
+            } finally {
+                lock.unlock();
+            }
+            return connection;
+        }
+    }
+
+    /**
+     * Returns a borrowed connection to the pool. Any open transaction is rolled back and auto-commit restored.
+     * Connections that are broken, or that did not come from this pool, are closed instead.
+     *
+     * @param connection the connection to give back
+     */
+    public void releaseConnection(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        Lease lease;
+        lock.lock();
+        try {
+            lease = leasedConnections.remove(connection);
+        } finally {
+            lock.unlock();
+        }
+        if (lease == null) {
+            closeQuietly(connection);
+            return;
+        }
+
+        boolean reusable = resetConnection(connection);
+        lock.lock();
+        try {
+            if (reusable && !closed) {
+                idleConnections.addFirst(new IdleConnection(connection));
+            }
+            connectionAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (!reusable || closed) {
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Closes all idle connections and stops handing out new ones. Leased connections are closed when released.
+     */
+    public void close() {
+        List<IdleConnection> toClose;
+        lock.lock();
+        try {
+            closed = true;
+            toClose = new ArrayList<>(idleConnections);
+            idleConnections.clear();
+            connectionAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        housekeeper.shutdownNow();
+        for (IdleConnection idle : toClose) {
+            closeQuietly(idle.connection);
+        }
+    }
+
+    /**
+     * Closes idle connections past the idle timeout and reports connections held longer than the leak threshold.
+     */
+    private void housekeep() {
+        List<Connection> expired = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            Iterator<IdleConnection> oldestFirst = idleConnections.descendingIterator();
+            while (oldestFirst.hasNext()) {
+                IdleConnection idle = oldestFirst.next();
+                if (now - idle.lastUsedMillis < idleTimeoutMillis) {
+                    break;
+                }
+                oldestFirst.remove();
+                expired.add(idle.connection);
+                evictedCount++;
+            }
+            if (leakThresholdMillis > 0) {
+                for (Lease lease : leasedConnections.values()) {
+                    if (!lease.reported && now - lease.borrowedAtMillis > leakThresholdMillis) {
+                        lease.reported = true;
+                        leakCount++;
+                        System.out.println("Possible connection leak: connection held by " + lease.threadName
+                                + " for " + (now - lease.borrowedAtMillis) + " ms.");
+                        if (lease.origin != null) {
+                            lease.origin.printStackTrace(System.out);
+                        }
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Connection connection : expired) {
+            closeQuietly(connection);
+        }
+    }
+
+    private int totalConnections() {
+        return idleConnections.size() + leasedConnections.size() + pendingCreations;
+    }
+
+    private void signalAvailable() {
+        lock.lock();
+        try {
+            connectionAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isUsable(Connection connection) {
+        try {
+            return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private boolean resetConnection(Connection connection) {
+        try {
+            if (connection.isClosed()) {
+                return false;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.out.println("Failed to close connection: " + e.getMessage());
+        }
+    }
+
+    public int getActiveConnections() {
+        lock.lock();
+        try {
+            return leasedConnections.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getIdleConnections() {
+        lock.lock();
+        try {
+            return idleConnections.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getBorrowCount() {
+        lock.lock();
+        try {
+            return borrowCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the average time callers waited for a connection, in milliseconds
+     */
+    public double getAverageWaitMillis() {
+        lock.lock();
+        try {
+            return borrowCount == 0 ? 0.0 : totalWaitNanos / (double) borrowCount / 1_000_000.0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the longest time a caller waited for a connection, in milliseconds
+     */
+    public double getMaxWaitMillis() {
+        lock.lock();
+        try {
+            return maxWaitNanos / 1_000_000.0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getTimeoutCount() {
+        lock.lock();
+        try {
+            return timeoutCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getLeakCount() {
+        lock.lock();
+        try {
+            return leakCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCreatedCount() {
+        lock.lock();
+        try {
+            return createdCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getEvictedCount() {
+        lock.lock();
+        try {
+            return evictedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class IdleConnection {
+        final Connection connection;
+        final long lastUsedMillis;
+
+        IdleConnection(Connection connection) {
+            this.connection = connection;
+            this.lastUsedMillis = System.currentTimeMillis();
+        }
+    }
+
+    private static final class Lease {
+        final long borrowedAtMillis = System.currentTimeMillis();
+        final String threadName = Thread.currentThread().getName();
+        final Throwable origin;
+        boolean reported = false;
+
+        Lease(boolean captureOrigin) {
+            this.origin = captureOrigin ? new Throwable("Connection borrowed here") : null;
+        }
+    }
+}
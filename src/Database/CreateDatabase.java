@@ -3,9 +3,9 @@ package Database;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.List;
 
 public class CreateDatabase {
-    static ConnectionEstablisher connectionEstablisher = new ConnectionEstablisher();
    public static String schema =
            "CREATE TABLE IF NOT EXISTS Sectors (" +
                    "    sector_id INT AUTO_INCREMENT PRIMARY KEY," +
@@ -77,6 +77,37 @@ public class CreateDatabase {
                     "    UNIQUE (stock_id)" +
                     ");\n\n" +
 
+                    "CREATE TABLE IF NOT EXISTS DividendRuns (" +
+                    "    run_id INT AUTO_INCREMENT PRIMARY KEY," +
+                    "    stock_id INT NOT NULL," +
+                    "    dividend_per_share DOUBLE NOT NULL," +
+                    "    price_per_share DOUBLE NOT NULL," +
+                    "    status VARCHAR(20) NOT NULL," +
+                    "    firm_shares INT," +
+                    "    FOREIGN KEY (stock_id) REFERENCES Stocks(stock_id)" +
+                    ");\n\n" +
+
+                    "CREATE TABLE IF NOT EXISTS DividendRunPartitions (" +
+                    "    run_id INT NOT NULL," +
+                    "    partition_no INT NOT NULL," +
+                    "    range_end INT NOT NULL," +
+                    "    last_account_id INT NOT NULL," +
+                    "    fractional_shares DOUBLE NOT NULL DEFAULT 0," +
+                    "    completed BOOLEAN NOT NULL DEFAULT FALSE," +
+                    "    PRIMARY KEY (run_id, partition_no)," +
+                    "    FOREIGN KEY (run_id) REFERENCES DividendRuns(run_id)" +
+                    ");\n\n" +
+
+                    "CREATE TABLE IF NOT EXISTS AdvisorGroupCentroids (" +
+                    "    group_count INT NOT NULL," +
+                    "    group_index INT NOT NULL," +
+                    "    sector_id INT NOT NULL," +
+                    "    component DOUBLE NOT NULL," +
+                    "    account_count INT NOT NULL," +
+                    "    PRIMARY KEY (group_count, group_index, sector_id)," +
+                    "    FOREIGN KEY (sector_id) REFERENCES Sectors(sector_id)" +
+                    ");\n\n" +
+
                     "ALTER TABLE Investments\n" +
                     "MODIFY COLUMN quantity DECIMAL(18, 2) NOT NULL;";
 
@@ -86,10 +117,20 @@ public class CreateDatabase {
     }
 
     public static boolean createDatabase() {
+        return createDatabase(new ConnectionEstablisher());
+    }
+
+    /**
+     * Creates the schema for the establisher's storage backend using one of its connections.
+     *
+     * @param connectionEstablisher the provider to borrow the connection from
+     * @return true if the schema was created, false otherwise
+     */
+    public static boolean createDatabase(ConnectionEstablisher connectionEstablisher) {
         Connection connection = connectionEstablisher.establishConnection();
         if (connection != null) {
             try (Statement statement = connection.createStatement()) {
-                String[] createTableQueries = schema.split(";\n\n");
+                List<String> createTableQueries = connectionEstablisher.getStorageBackend().getSchemaStatements();
                 for (String query : createTableQueries) {
                     statement.executeUpdate(query);
                 }
@@ -0,0 +1,24 @@
+package Database;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Rounding shared by every class that keeps cash balances or share quantities in memory, so that the in-memory
+ * values agree with what the DECIMAL(18,2) columns store.
+ */
+public final class Decimals {
+
+    private Decimals() {
+    }
+
+    /**
+     * Rounds an amount to two decimal places, half up, the way the DECIMAL(18,2) cash and quantity columns store it.
+     *
+     * @param amount the amount
+     * @return the amount rounded to cents
+     */
+    public static double roundToCents(double amount) {
+        return BigDecimal.valueOf(amount).setScale(2, RoundingMode.HALF_UP).doubleValue();
+    }
+}
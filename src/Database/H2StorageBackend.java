@@ -0,0 +1,87 @@
+package Database;
+
+import java.util.List;
+
+/**
+ * An embedded H2 database running in MySQL compatibility mode inside the application process.
+ * By default the data lives only in memory for as long as the JVM runs, which suits simulations,
+ * tests and benchmarks that cannot or should not reach the MySQL server.
+ */
+public class H2StorageBackend implements StorageBackend {
+
+    public static final String NAME = "h2";
+
+    private static final String DRIVER = "org.h2.Driver";
+    private static final String DEFAULT_DATABASE = "investment";
+    // MODE=MySQL accepts the AUTO_INCREMENT, ON DUPLICATE KEY and FROM DUAL syntax used by the managers
+    private static final String URL_OPTIONS = ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private final String url;
+
+    public H2StorageBackend() {
+        this(System.getProperty("investment.h2.url", inMemoryUrl(DEFAULT_DATABASE)));
+    }
+
+    /**
+     * @param url the H2 JDBC URL, for example one built by inMemoryUrl or fileUrl
+     */
+    public H2StorageBackend(String url) {
+        this.url = url;
+    }
+
+    /**
+     * Builds the URL of a private in-memory database that lives until the JVM exits.
+     *
+     * @param databaseName the name of the database, databases with different names are independent
+     * @return the JDBC URL
+     */
+    public static String inMemoryUrl(String databaseName) {
+        return "jdbc:h2:mem:" + databaseName + URL_OPTIONS;
+    }
+
+    /**
+     * Builds the URL of an embedded database persisted to a local file.
+     *
+     * @param path the file path of the database, without extension
+     * @return the JDBC URL
+     */
+    public static String fileUrl(String path) {
+        return "jdbc:h2:file:" + path + URL_OPTIONS;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getDriverClassName() {
+        return DRIVER;
+    }
+
+    @Override
+    public String getUrl() {
+        return url;
+    }
+
+    @Override
+    public String getUsername() {
+        return "sa";
+    }
+
+    @Override
+    public String getPassword() {
+        return "";
+    }
+
+    /**
+     * Drops the trailing ALTER TABLE ... MODIFY COLUMN statement, since the CREATE TABLE for
+     * Investments already declares the same column type and H2 does not need the migration.
+     */
+    @Override
+    public List<String> getSchemaStatements() {
+        List<String> statements = StorageBackend.super.getSchemaStatements();
+        statements.removeIf(statement -> statement.trim().startsWith("ALTER TABLE"));
+        return statements;
+    }
+}
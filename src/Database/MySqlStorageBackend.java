@@ -0,0 +1,63 @@
+package Database;
+
+/**
+ * The shared MySQL server the firm runs against in production.
+ */
+public class MySqlStorageBackend implements StorageBackend {
+
+    public static final String NAME = "mysql";
+
+    //Static variables for database connection
+    private static final String DRIVER = "com.mysql.cj.jdbc.Driver";
+    // rewriteBatchedStatements lets the driver send a JDBC batch as multi-row statements
+    private static final String URL = "jdbc:mysql://db.cs.dal.ca:3306/shrey?rewriteBatchedStatements=true";
+    private static final String USERNAME = "shrey";
+    private static final String PASSWORD = "B00960433";
+
+    private final String url;
+    private final String username;
+    private final String password;
+
+    public MySqlStorageBackend() {
+        this(System.getProperty("investment.mysql.url", URL),
+                System.getProperty("investment.mysql.username", USERNAME),
+                System.getProperty("investment.mysql.password", PASSWORD));
+    }
+
+    public MySqlStorageBackend(String url, String username, String password) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getDriverClassName() {
+        return DRIVER;
+    }
+
+    @Override
+    public String getUrl() {
+        return url;
+    }
+
+    @Override
+    public String getUsername() {
+        return username;
+    }
+
+    @Override
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public int getStreamingFetchSize() {
+        // Connector/J streams a forward-only, read-only result set only when asked for this fetch size
+        return Integer.MIN_VALUE;
+    }
+}
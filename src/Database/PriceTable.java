@@ -0,0 +1,185 @@
+package Database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The current price of every stock, held in memory and indexed by stock ID.
+ * Prices are stored as the bits of a double in a primitive array, so reads take no lock and allocate nothing.
+ * The table is preloaded once at startup and updated by StockManager after every committed price change.
+ * A stock that is not in the table yet is read from the database once, on the caller's connection if it holds one.
+ */
+public class PriceTable {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // Marks a slot whose price has not been loaded
+    private static final long UNKNOWN = Double.doubleToRawLongBits(Double.NaN);
+
+    ConnectionEstablisher connectionEstablisher;
+
+    // Replaced by a larger copy when a stock ID beyond the end is written; writers hold the table's lock
+    private volatile AtomicLongArray prices = newArray(INITIAL_CAPACITY);
+
+    public PriceTable(ConnectionEstablisher connectionEstablisher) {
+        this.connectionEstablisher = connectionEstablisher;
+    }
+
+    /**
+     * Loads the price of every stock from the database.
+     *
+     * @return true if the prices were loaded, false otherwise
+     */
+    public boolean preload() {
+        Connection connection = connectionEstablisher.establishConnection();
+        if (connection != null) {
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT stock_id, perShare_price FROM Stocks")) {
+                while (rs.next()) {
+                    setPrice(rs.getInt("stock_id"), rs.getDouble("perShare_price"));
+                }
+                return true;
+            } catch (SQLException e) {
+                System.out.println("SQL error occurred while loading stock prices: " + e.getMessage());
+            } finally {
+                connectionEstablisher.closeConnection(connection);
+            }
+        } else {
+            System.out.println("Failed to establish database connection.");
+        }
+        return false;
+    }
+
+    /**
+     * @param stockId the ID of the stock
+     * @return the current price per share of the stock, or NaN if the stock does not exist
+     */
+    public double getPrice(int stockId) {
+        return getPrice(null, stockId);
+    }
+
+    /**
+     * @param connection a connection the caller already holds, used if the price is not in the table, or null to borrow one
+     * @param stockId    the ID of the stock
+     * @return the current price per share of the stock, or NaN if the stock does not exist
+     */
+    public double getPrice(Connection connection, int stockId) {
+        double price = getCachedPrice(stockId);
+        if (Double.isNaN(price) && stockId >= 0) {
+            return loadPrice(connection, stockId);
+        }
+        return price;
+    }
+
+    /**
+     * @param stockId the ID of the stock
+     * @return the price per share of the stock, or NaN if it is not in the table; the database is not queried
+     */
+    public double getCachedPrice(int stockId) {
+        if (stockId < 0) {
+            return Double.NaN;
+        }
+        AtomicLongArray current = prices;
+        if (stockId < current.length()) {
+            long bits = current.get(stockId);
+            if (bits != UNKNOWN) {
+                return Double.longBitsToDouble(bits);
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Records the price of a stock. Callers write the database first and only update the table once the change is committed.
+     *
+     * @param stockId       the ID of the stock
+     * @param perSharePrice the new price per share
+     */
+    public synchronized void setPrice(int stockId, double perSharePrice) {
+        if (stockId < 0) {
+            return;
+        }
+        ensureCapacity(stockId).set(stockId, Double.doubleToRawLongBits(perSharePrice));
+    }
+
+    /**
+     * Records a price read from the database unless a newer price was set while it was being read.
+     *
+     * @param stockId       the ID of the stock
+     * @param perSharePrice the price read from the database
+     * @return the price now held in the table
+     */
+    private synchronized double setLoadedPrice(int stockId, double perSharePrice) {
+        AtomicLongArray current = ensureCapacity(stockId);
+        if (current.get(stockId) == UNKNOWN) {
+            current.set(stockId, Double.doubleToRawLongBits(perSharePrice));
+        }
+        return Double.longBitsToDouble(current.get(stockId));
+    }
+
+    /**
+     * Grows the table so it has a slot for the given stock ID. Must be called while holding the table's lock.
+     *
+     * @param stockId the ID of the stock
+     * @return the array that holds the slot
+     */
+    private AtomicLongArray ensureCapacity(int stockId) {
+        AtomicLongArray current = prices;
+        if (stockId >= current.length()) {
+            int capacity = current.length();
+            while (capacity <= stockId) {
+                capacity *= 2;
+            }
+            AtomicLongArray grown = newArray(capacity);
+            for (int i = 0; i < current.length(); i++) {
+                grown.set(i, current.get(i));
+            }
+            prices = grown;
+            current = grown;
+        }
+        return current;
+    }
+
+    /**
+     * Reads the price of a stock that is not in the table yet.
+     *
+     * @param connection a connection the caller already holds, or null to borrow one
+     * @param stockId    the ID of the stock
+     * @return the price per share, or NaN if the stock does not exist
+     */
+    private double loadPrice(Connection connection, int stockId) {
+        boolean borrowed = connection == null;
+        if (borrowed) {
+            connection = connectionEstablisher.establishConnection();
+            if (connection == null) {
+                return Double.NaN;
+            }
+        }
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT perShare_price FROM Stocks WHERE stock_id = ?")) {
+            stmt.setInt(1, stockId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return setLoadedPrice(stockId, rs.getDouble("perShare_price"));
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("SQL error occurred: " + e.getMessage());
+        } finally {
+            if (borrowed) {
+                connectionEstablisher.closeConnection(connection);
+            }
+        }
+        return Double.NaN;
+    }
+
+    private static AtomicLongArray newArray(int capacity) {
+        AtomicLongArray array = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            array.set(i, UNKNOWN);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,409 @@
+package Database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A thread-safe, in-memory copy of the name-to-ID mappings of stocks, sectors and profiles.
+ * It is preloaded once at startup and kept current by the managers that define new rows,
+ * so resolving a symbol, sector or profile name costs no SQL. A lookup that misses the cache
+ * falls back to the database once and remembers the answer, including for a short while that there is no such row.
+ * A caller that already holds a connection passes it in, so that a miss never borrows a second one from the pool.
+ * Names are matched ignoring case, like the default MySQL collation does.
+ */
+public class ReferenceDataCache {
+
+    // The name of the sector that holds an account's cash balance
+    public static final String CASH_SECTOR = "cash";
+
+    // How long a name or ID the database did not have is reported as unknown without asking the database again
+    private static final long MISS_TTL_MILLIS = 5000L;
+    // Most misses remembered at once; past this they are all forgotten
+    private static final int MAX_MISSES = 10000;
+
+    ConnectionEstablisher connectionEstablisher;
+
+    private final NameIdMap stocks = new NameIdMap();
+    private final NameIdMap sectors = new NameIdMap();
+    private final NameIdMap profiles = new NameIdMap();
+    private final ConcurrentHashMap<Integer, Integer> sectorIdsByStockId = new ConcurrentHashMap<>();
+    // Lookups the database had no row for, with the time until which they are answered from here
+    private final ConcurrentHashMap<String, Long> missesUntil = new ConcurrentHashMap<>();
+
+    public ReferenceDataCache(ConnectionEstablisher connectionEstablisher) {
+        this.connectionEstablisher = connectionEstablisher;
+    }
+
+    /**
+     * Loads every sector, stock and profile from the database into the cache.
+     *
+     * @return true if the cache was loaded, false otherwise
+     */
+    public boolean preload() {
+        Connection connection = connectionEstablisher.establishConnection();
+        if (connection != null) {
+            try (Statement stmt = connection.createStatement()) {
+                try (ResultSet rs = stmt.executeQuery("SELECT sector_id, sectorName FROM Sectors")) {
+                    while (rs.next()) {
+                        putSector(rs.getInt("sector_id"), rs.getString("sectorName"));
+                    }
+                }
+                try (ResultSet rs = stmt.executeQuery("SELECT stock_id, stockSymbol, sector_id FROM Stocks")) {
+                    while (rs.next()) {
+                        putStock(rs.getInt("stock_id"), rs.getString("stockSymbol"), rs.getInt("sector_id"));
+                    }
+                }
+                try (ResultSet rs = stmt.executeQuery("SELECT profile_id, profileName FROM Profiles")) {
+                    while (rs.next()) {
+                        putProfile(rs.getInt("profile_id"), rs.getString("profileName"));
+                    }
+                }
+                return true;
+            } catch (SQLException e) {
+                System.out.println("SQL error occurred while loading reference data: " + e.getMessage());
+            } finally {
+                connectionEstablisher.closeConnection(connection);
+            }
+        } else {
+            System.out.println("Failed to establish database connection.");
+        }
+        return false;
+    }
+
+    /**
+     * Records a stock that was just defined.
+     *
+     * @param stockId     the ID of the stock
+     * @param stockSymbol the symbol of the stock
+     * @param sectorId    the ID of the sector the stock belongs to
+     */
+    public void putStock(int stockId, String stockSymbol, int sectorId) {
+        stocks.put(stockId, stockSymbol);
+        sectorIdsByStockId.put(stockId, sectorId);
+    }
+
+    /**
+     * Records a sector that was just defined.
+     *
+     * @param sectorId   the ID of the sector
+     * @param sectorName the name of the sector
+     */
+    public void putSector(int sectorId, String sectorName) {
+        sectors.put(sectorId, sectorName);
+    }
+
+    /**
+     * Records a profile that was just defined.
+     *
+     * @param profileId   the ID of the profile
+     * @param profileName the name of the profile
+     */
+    public void putProfile(int profileId, String profileName) {
+        profiles.put(profileId, profileName);
+    }
+
+    /**
+     * @param stockSymbol the symbol of the stock
+     * @return the ID of the stock, or -1 if the stock does not exist
+     */
+    public int getStockId(String stockSymbol) {
+        return getStockId(null, stockSymbol);
+    }
+
+    /**
+     * @param connection  a connection the caller already holds, used on a cache miss, or null to borrow one
+     * @param stockSymbol the symbol of the stock
+     * @return the ID of the stock, or -1 if the stock does not exist
+     */
+    public int getStockId(Connection connection, String stockSymbol) {
+        Integer stockId = stocks.getId(stockSymbol);
+        if (stockId == null && loadStock(connection, "SELECT stock_id, stockSymbol, sector_id FROM Stocks WHERE stockSymbol = ?", stockSymbol)) {
+            stockId = stocks.getId(stockSymbol);
+        }
+        return stockId == null ? -1 : stockId;
+    }
+
+    /**
+     * @param stockId the ID of the stock
+     * @return the symbol of the stock, or null if the stock does not exist
+     */
+    public String getStockSymbol(int stockId) {
+        return getStockSymbol(null, stockId);
+    }
+
+    /**
+     * @param connection a connection the caller already holds, used on a cache miss, or null to borrow one
+     * @param stockId    the ID of the stock
+     * @return the symbol of the stock, or null if the stock does not exist
+     */
+    public String getStockSymbol(Connection connection, int stockId) {
+        String stockSymbol = stocks.getName(stockId);
+        if (stockSymbol == null && loadStock(connection, "SELECT stock_id, stockSymbol, sector_id FROM Stocks WHERE stock_id = ?", stockId)) {
+            stockSymbol = stocks.getName(stockId);
+        }
+        return stockSymbol;
+    }
+
+    /**
+     * @param stockId the ID of the stock
+     * @return the ID of the sector the stock belongs to, or -1 if the stock does not exist
+     */
+    public int getSectorIdOfStock(int stockId) {
+        return getSectorIdOfStock(null, stockId);
+    }
+
+    /**
+     * @param connection a connection the caller already holds, used on a cache miss, or null to borrow one
+     * @param stockId    the ID of the stock
+     * @return the ID of the sector the stock belongs to, or -1 if the stock does not exist
+     */
+    public int getSectorIdOfStock(Connection connection, int stockId) {
+        Integer sectorId = sectorIdsByStockId.get(stockId);
+        if (sectorId == null && loadStock(connection, "SELECT stock_id, stockSymbol, sector_id FROM Stocks WHERE stock_id = ?", stockId)) {
+            sectorId = sectorIdsByStockId.get(stockId);
+        }
+        return sectorId == null ? -1 : sectorId;
+    }
+
+    /**
+     * @param sectorName the name of the sector
+     * @return the ID of the sector, or -1 if the sector does not exist
+     */
+    public int getSectorId(String sectorName) {
+        return getSectorId(null, sectorName);
+    }
+
+    /**
+     * @param connection a connection the caller already holds, used on a cache miss, or null to borrow one
+     * @param sectorName the name of the sector
+     * @return the ID of the sector, or -1 if the sector does not exist
+     */
+    public int getSectorId(Connection connection, String sectorName) {
+        Integer sectorId = sectors.getId(sectorName);
+        if (sectorId == null && loadNamedRow(connection, sectors, "SELECT sector_id, sectorName FROM Sectors WHERE sectorName = ?", sectorName)) {
+            sectorId = sectors.getId(sectorName);
+        }
+        return sectorId == null ? -1 : sectorId;
+    }
+
+    /**
+     * @param sectorId the ID of the sector
+     * @return the name of the sector, or null if the sector does not exist
+     */
+    public String getSectorName(int sectorId) {
+        return getSectorName(null, sectorId);
+    }
+
+    /**
+     * @param connection a connection the caller already holds, used on a cache miss, or null to borrow one
+     * @param sectorId   the ID of the sector
+     * @return the name of the sector, or null if the sector does not exist
+     */
+    public String getSectorName(Connection connection, int sectorId) {
+        String sectorName = sectors.getName(sectorId);
+        if (sectorName == null && loadNamedRow(connection, sectors, "SELECT sector_id, sectorName FROM Sectors WHERE sector_id = ?", sectorId)) {
+            sectorName = sectors.getName(sectorId);
+        }
+        return sectorName;
+    }
+
+    /**
+     * @return the IDs of all cached sectors
+     */
+    public List<Integer> getSectorIds() {
+        return new ArrayList<>(sectors.namesById.keySet());
+    }
+
+    /**
+     * @param profileName the name of the profile
+     * @return the ID of the profile, or -1 if the profile does not exist
+     */
+    public int getProfileId(String profileName) {
+        return getProfileId(null, profileName);
+    }
+
+    /**
+     * @param connection  a connection the caller already holds, used on a cache miss, or null to borrow one
+     * @param profileName the name of the profile
+     * @return the ID of the profile, or -1 if the profile does not exist
+     */
+    public int getProfileId(Connection connection, String profileName) {
+        Integer profileId = profiles.getId(profileName);
+        if (profileId == null && loadNamedRow(connection, profiles, "SELECT profile_id, profileName FROM Profiles WHERE profileName = ?", profileName)) {
+            profileId = profiles.getId(profileName);
+        }
+        return profileId == null ? -1 : profileId;
+    }
+
+    /**
+     * @param profileId the ID of the profile
+     * @return the name of the profile, or null if the profile does not exist
+     */
+    public String getProfileName(int profileId) {
+        return getProfileName(null, profileId);
+    }
+
+    /**
+     * @param connection a connection the caller already holds, used on a cache miss, or null to borrow one
+     * @param profileId  the ID of the profile
+     * @return the name of the profile, or null if the profile does not exist
+     */
+    public String getProfileName(Connection connection, int profileId) {
+        String profileName = profiles.getName(profileId);
+        if (profileName == null && loadNamedRow(connection, profiles, "SELECT profile_id, profileName FROM Profiles WHERE profile_id = ?", profileId)) {
+            profileName = profiles.getName(profileId);
+        }
+        return profileName;
+    }
+
+    /**
+     * @param stockSymbol the symbol of the stock
+     * @return the ID of the stock, or -1 if it is not cached; the database is not queried
+     */
+    public int getCachedStockId(String stockSymbol) {
+        Integer stockId = stocks.getId(stockSymbol);
+        return stockId == null ? -1 : stockId;
+    }
+
+    /**
+     * @param stockId the ID of the stock
+     * @return the ID of the sector the stock belongs to, or -1 if it is not cached; the database is not queried
+     */
+    public int getCachedSectorIdOfStock(int stockId) {
+        Integer sectorId = sectorIdsByStockId.get(stockId);
+        return sectorId == null ? -1 : sectorId;
+    }
+
+    /**
+     * @param sectorName the name of the sector
+     * @return the ID of the sector, or -1 if it is not cached; the database is not queried
+     */
+    public int getCachedSectorId(String sectorName) {
+        Integer sectorId = sectors.getId(sectorName);
+        return sectorId == null ? -1 : sectorId;
+    }
+
+    /**
+     * @param profileName the name of the profile
+     * @return the ID of the profile, or -1 if it is not cached; the database is not queried
+     */
+    public int getCachedProfileId(String profileName) {
+        Integer profileId = profiles.getId(profileName);
+        return profileId == null ? -1 : profileId;
+    }
+
+    /**
+     * Reads a single stock row that is not cached yet.
+     *
+     * @param connection a connection the caller already holds, or null to borrow one
+     * @param query      the query selecting stock_id, stockSymbol and sector_id by one parameter
+     * @param key        the symbol or ID to look up
+     * @return true if the stock was found and cached
+     */
+    private boolean loadStock(Connection connection, String query, Object key) {
+        return loadRow(connection, query, key, rs -> putStock(rs.getInt("stock_id"), rs.getString("stockSymbol"), rs.getInt("sector_id")));
+    }
+
+    /**
+     * Reads a single sector or profile row that is not cached yet.
+     *
+     * @param connection a connection the caller already holds, or null to borrow one
+     * @param target     the mapping to add the row to
+     * @param query      the query selecting the ID and name columns by one parameter
+     * @param key        the name or ID to look up
+     * @return true if the row was found and cached
+     */
+    private boolean loadNamedRow(Connection connection, NameIdMap target, String query, Object key) {
+        return loadRow(connection, query, key, rs -> target.put(rs.getInt(1), rs.getString(2)));
+    }
+
+    /**
+     * Reads a single row that is not cached yet. A key the database does not have is remembered for
+     * MISS_TTL_MILLIS, so that repeated lookups of an unknown symbol or name do not query again each time.
+     *
+     * @param connection a connection the caller already holds, or null to borrow one
+     * @param query      the query selecting the row by one parameter
+     * @param key        the name or ID to look up
+     * @param reader     caches the row that was found
+     * @return true if the row was found and cached
+     */
+    private boolean loadRow(Connection connection, String query, Object key, RowReader reader) {
+        if (key == null) {
+            return false;
+        }
+        String missKey = query + '\u0000' + (key instanceof String ? NameIdMap.key((String) key) : key);
+        Long missExpiry = missesUntil.get(missKey);
+        if (missExpiry != null) {
+            if (System.currentTimeMillis() < missExpiry) {
+                return false;
+            }
+            missesUntil.remove(missKey, missExpiry);
+        }
+        boolean borrowed = connection == null;
+        if (borrowed) {
+            connection = connectionEstablisher.establishConnection();
+            if (connection == null) {
+                return false;
+            }
+        }
+        try (PreparedStatement stmt = connection.prepareStatement(query)) {
+            stmt.setObject(1, key);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    reader.read(rs);
+                    return true;
+                }
+            }
+            if (missesUntil.size() >= MAX_MISSES) {
+                missesUntil.clear();
+            }
+            missesUntil.put(missKey, System.currentTimeMillis() + MISS_TTL_MILLIS);
+        } catch (SQLException e) {
+            System.out.println("SQL error occurred: " + e.getMessage());
+        } finally {
+            if (borrowed) {
+                connectionEstablisher.closeConnection(connection);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Caches the row a lookup found.
+     */
+    private interface RowReader {
+        void read(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * A two-way mapping between IDs and names.
+     */
+    private static final class NameIdMap {
+        final ConcurrentHashMap<String, Integer> idsByName = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<Integer, String> namesById = new ConcurrentHashMap<>();
+
+        void put(int id, String name) {
+            idsByName.put(key(name), id);
+            namesById.put(id, name);
+        }
+
+        Integer getId(String name) {
+            return name == null ? null : idsByName.get(key(name));
+        }
+
+        String getName(int id) {
+            return namesById.get(id);
+        }
+
+        private static String key(String name) {
+            return name.toLowerCase(Locale.ROOT);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package Database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Describes where the firm's data lives: the JDBC driver, URL and credentials to use,
+ * and the schema statements that create the tables on that engine.
+ */
+public interface StorageBackend {
+
+    // System property used to pick the backend, either "mysql" (default) or "h2"
+    String STORAGE_PROPERTY = "investment.storage";
+
+    String getName();
+
+    String getDriverClassName();
+
+    String getUrl();
+
+    String getUsername();
+
+    String getPassword();
+
+    /**
+     * Returns the statements that create the schema on this backend, in execution order.
+     *
+     * @return a list of DDL statements
+     */
+    default List<String> getSchemaStatements() {
+        return new ArrayList<>(Arrays.asList(CreateDatabase.schema.split(";\n\n")));
+    }
+
+    /**
+     * Returns the fetch size that makes the driver stream a large result set a row at a time
+     * rather than reading all of it into memory first.
+     *
+     * @return the fetch size to set on streaming statements, 0 for the driver's default
+     */
+    default int getStreamingFetchSize() {
+        return 0;
+    }
+
+    /**
+     * Opens a connection pool against this backend.
+     *
+     * @return a new connection pool
+     */
+    default ConnectionPool createConnectionPool() {
+        return new ConnectionPool(getDriverClassName(), getUrl(), getUsername(), getPassword());
+    }
+
+    /**
+     * Chooses the backend named by the investment.storage system property.
+     *
+     * @return the configured backend, MySQL when nothing is configured
+     */
+    static StorageBackend fromSystemProperties() {
+        String storage = System.getProperty(STORAGE_PROPERTY, MySqlStorageBackend.NAME);
+        if (H2StorageBackend.NAME.equalsIgnoreCase(storage)) {
+            return new H2StorageBackend();
+        }
+        if (!MySqlStorageBackend.NAME.equalsIgnoreCase(storage)) {
+            throw new IllegalArgumentException("Unknown storage backend: " + storage);
+        }
+        return new MySqlStorageBackend();
+    }
+}
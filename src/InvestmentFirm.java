@@ -1,27 +1,50 @@
+import Database.ConnectionEstablisher;
 import Database.CreateDatabase;
+import Database.PriceTable;
+import Database.ReferenceDataCache;
+import Database.StorageBackend;
 import Manager.*;
 import Reporting.*;
 import Validations.*;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 public class InvestmentFirm {
+    ConnectionEstablisher connectionEstablisher;
+    ReferenceDataCache referenceDataCache;
+    PriceTable priceTable;
+    PortfolioEvents portfolioEvents;
+    AccountValuationIndex accountValuationIndex;
+    SectorExposureIndex sectorExposureIndex;
     SectorManager sectorManager;
     StockManager stockManager;
     ProfileManager profileManager;
+    ReferenceDataLoader referenceDataLoader;
     AdvisorManager advisorManager;
     ClientManager clientManager;
     AccountManager accountManager;
     DivergentAccount divergentAccount ;
+    // Serves every tolerance, started by the first divergentAccounts call or divergence listener
+    volatile DivergenceMonitor divergenceMonitor;
+    private final Object divergenceMonitorLock = new Object();
     SectorWeights sectorWeights;
+    SectorVectorExtractor sectorVectorExtractor;
     ReportingOfSystem reportingOfSystem ;
     DividendManager dividendManager;
     RecommendationSystem recommendationSystem ;
+    HoldingsLshIndex holdingsLshIndex;
     AccountValidation accountValidation ;
     StockValidation stockValidation;
     SectorValidation sectorValidation;
@@ -32,25 +55,60 @@ public class InvestmentFirm {
     AnalysisValidation analysisValidation;
 
     public InvestmentFirm() {
-        CreateDatabase.createDatabase();
-        sectorManager = new SectorManager();
-        stockManager = new StockManager();
-        profileManager = new ProfileManager();
-        advisorManager = new AdvisorManager();
-        clientManager = new ClientManager();
-        accountManager = new AccountManager();
-        divergentAccount = new DivergentAccount();
-        sectorWeights = new SectorWeights();
-        reportingOfSystem = new ReportingOfSystem();
-        dividendManager = new DividendManager();
-        recommendationSystem = new RecommendationSystem();
+        this(new ConnectionEstablisher());
+    }
+
+    /**
+     * Creates the firm on the given storage backend, for example an embedded H2 database
+     * that lets the whole firm run in-process without a database server.
+     *
+     * @param storageBackend the backend holding the firm's data
+     */
+    public InvestmentFirm(StorageBackend storageBackend) {
+        this(new ConnectionEstablisher(storageBackend));
+    }
+
+    /**
+     * Creates the firm with every manager sharing the given connection provider.
+     *
+     * @param connectionEstablisher the pooled connection provider shared by all managers
+     */
+    public InvestmentFirm(ConnectionEstablisher connectionEstablisher) {
+        this.connectionEstablisher = connectionEstablisher;
+        CreateDatabase.createDatabase(connectionEstablisher);
+        // Symbol, sector and profile lookups and stock prices are served from memory once the existing rows are loaded
+        referenceDataCache = new ReferenceDataCache(connectionEstablisher);
+        referenceDataCache.preload();
+        priceTable = new PriceTable(connectionEstablisher);
+        priceTable.preload();
+        // Account values, advisor totals and sector exposures are kept current from the changes the managers publish
+        portfolioEvents = new PortfolioEvents();
+        accountValuationIndex = new AccountValuationIndex(connectionEstablisher, priceTable);
+        accountValuationIndex.load();
+        portfolioEvents.addListener(accountValuationIndex);
+        sectorExposureIndex = new SectorExposureIndex(connectionEstablisher, referenceDataCache, priceTable);
+        sectorExposureIndex.load();
+        portfolioEvents.addListener(sectorExposureIndex);
+        sectorManager = new SectorManager(connectionEstablisher, referenceDataCache);
+        stockManager = new StockManager(connectionEstablisher, referenceDataCache, priceTable, portfolioEvents);
+        profileManager = new ProfileManager(connectionEstablisher, referenceDataCache);
+        referenceDataLoader = new ReferenceDataLoader(connectionEstablisher, referenceDataCache, priceTable);
+        advisorManager = new AdvisorManager(connectionEstablisher, portfolioEvents);
+        clientManager = new ClientManager(connectionEstablisher);
+        accountManager = new AccountManager(connectionEstablisher, referenceDataCache, priceTable, portfolioEvents);
+        sectorWeights = new SectorWeights(connectionEstablisher, referenceDataCache, priceTable, sectorExposureIndex);
+        sectorVectorExtractor = new SectorVectorExtractor(connectionEstablisher, referenceDataCache, priceTable);
+        divergentAccount = new DivergentAccount(connectionEstablisher, sectorWeights, sectorVectorExtractor);
+        reportingOfSystem = new ReportingOfSystem(connectionEstablisher, priceTable, accountValuationIndex);
+        dividendManager = new DividendManager(connectionEstablisher, referenceDataCache, priceTable, portfolioEvents);
+        recommendationSystem = new RecommendationSystem(connectionEstablisher, referenceDataCache);
         accountValidation = new AccountValidation();
         stockValidation = new StockValidation();
         sectorValidation = new SectorValidation();
         reportingValidation = new ReportingValidation();
         profileValidation = new ProfileValidation();
         advisorClientValidation = new AdvisorClientValidation();
-        advisorGroups = new AdvisorGroups();
+        advisorGroups = new AdvisorGroups(connectionEstablisher, sectorVectorExtractor);
         analysisValidation = new AnalysisValidation();
     }
 
@@ -78,6 +136,21 @@ public class InvestmentFirm {
         return false;
     }
 
+    // Method to set the prices of many stocks at once, returning the symbols that were rejected or unknown
+    public List<String> setStockPrices(Map<String, Double> perSharePrices) {
+        List<String> rejectedSymbols = new ArrayList<>();
+        Map<String, Double> validPrices = new LinkedHashMap<>();
+        for (Map.Entry<String, Double> entry : perSharePrices.entrySet()) {
+            if (entry.getValue() != null && stockValidation.validateStockPrice(entry.getKey(), entry.getValue())) {
+                validPrices.put(entry.getKey(), entry.getValue());
+            } else {
+                rejectedSymbols.add(entry.getKey());
+            }
+        }
+        rejectedSymbols.addAll(stockManager.setStockPrices(validPrices));
+        return rejectedSymbols;
+    }
+
     // Method to define a profile
     public boolean defineProfile(String profileName, Map<String, Integer> sectorHoldings) {
         if (profileValidation.validateProfile(profileName, sectorHoldings)) {
@@ -86,6 +159,15 @@ public class InvestmentFirm {
         return true;
     }
 
+    // Method to load sectors, stocks and profiles from a CSV file, returning the line numbers that were not loaded,
+    // or null if the path is invalid; a file that cannot be read is reported by the IOException
+    public List<Integer> loadReferenceData(String filePath) throws IOException {
+        if (stockValidation.validateReferenceDataFile(filePath)) {
+            return referenceDataLoader.load(Paths.get(filePath));
+        }
+        return null;
+    }
+
     // Method to add a financial advisor
     public int addAdvisor(String advisorName) {
         if (advisorClientValidation.validateAdvisor(advisorName)) {
@@ -110,6 +192,65 @@ public class InvestmentFirm {
         return 0;
     }
 
+    // Method to add many advisors at once
+    public OnboardingResult[] addAdvisors(List<String> advisorNames) {
+        OnboardingResult[] results = new OnboardingResult[advisorNames.size()];
+        Arrays.fill(results, OnboardingResult.refused(OnboardingResult.Status.INVALID));
+        List<String> validNames = new ArrayList<>();
+        List<Integer> validPositions = new ArrayList<>();
+        for (int i = 0; i < advisorNames.size(); i++) {
+            if (advisorClientValidation.validateAdvisor(advisorNames.get(i))) {
+                validNames.add(advisorNames.get(i));
+                validPositions.add(i);
+            }
+        }
+        OnboardingResult[] added = advisorManager.addAdvisors(validNames);
+        for (int i = 0; i < added.length; i++) {
+            results[validPositions.get(i)] = added[i];
+        }
+        return results;
+    }
+
+    // Method to add many clients at once
+    public OnboardingResult[] addClients(List<String> clientNames) {
+        OnboardingResult[] results = new OnboardingResult[clientNames.size()];
+        Arrays.fill(results, OnboardingResult.refused(OnboardingResult.Status.INVALID));
+        List<String> validNames = new ArrayList<>();
+        List<Integer> validPositions = new ArrayList<>();
+        for (int i = 0; i < clientNames.size(); i++) {
+            if (advisorClientValidation.validateClient(clientNames.get(i))) {
+                validNames.add(clientNames.get(i));
+                validPositions.add(i);
+            }
+        }
+        OnboardingResult[] added = clientManager.addClients(validNames);
+        for (int i = 0; i < added.length; i++) {
+            results[validPositions.get(i)] = added[i];
+        }
+        return results;
+    }
+
+    // Method to create many accounts at once
+    public OnboardingResult[] createAccounts(List<AccountSpec> accounts) {
+        OnboardingResult[] results = new OnboardingResult[accounts.size()];
+        Arrays.fill(results, OnboardingResult.refused(OnboardingResult.Status.INVALID));
+        List<AccountSpec> validAccounts = new ArrayList<>();
+        List<Integer> validPositions = new ArrayList<>();
+        for (int i = 0; i < accounts.size(); i++) {
+            AccountSpec account = accounts.get(i);
+            if (account != null && accountValidation.validateAddAccount(account.getClientId(), account.getFinancialAdvisorId(),
+                    account.getAccountName(), account.getProfileType())) {
+                validAccounts.add(account);
+                validPositions.add(i);
+            }
+        }
+        OnboardingResult[] created = accountManager.createAccounts(validAccounts);
+        for (int i = 0; i < created.length; i++) {
+            results[validPositions.get(i)] = created[i];
+        }
+        return results;
+    }
+
     // Method to trade shares
     public boolean tradeShares(int account, String stockSymbol, int sharesExchanged) {
         if (accountValidation.validateTrade(account, stockSymbol, sharesExchanged)) {
@@ -118,6 +259,25 @@ public class InvestmentFirm {
         return false;
     }
 
+    // Method to trade shares for many orders at once
+    public boolean[] tradeSharesBatch(List<TradeOrder> orders) {
+        boolean[] results = new boolean[orders.size()];
+        List<TradeOrder> validOrders = new ArrayList<>();
+        List<Integer> validPositions = new ArrayList<>();
+        for (int i = 0; i < orders.size(); i++) {
+            TradeOrder order = orders.get(i);
+            if (order != null && accountValidation.validateTrade(order.getAccountId(), order.getStockSymbol(), order.getSharesExchanged())) {
+                validOrders.add(order);
+                validPositions.add(i);
+            }
+        }
+        boolean[] applied = accountManager.tradeSharesBatch(validOrders);
+        for (int i = 0; i < applied.length; i++) {
+            results[validPositions.get(i)] = applied[i];
+        }
+        return results;
+    }
+
     // Method to change the advisor for an account
     public boolean changeAdvisor(int accountId, int newAdvisorId) {
         if (advisorClientValidation.changeValidate(accountId, newAdvisorId)) {
@@ -133,6 +293,17 @@ public class InvestmentFirm {
         return 0;
     }
 
+    // Method to get the market value of many accounts at once
+    public Map<Integer, Double> accountValues(Collection<Integer> accountIds) {
+        List<Integer> validIds = new ArrayList<>();
+        for (Integer accountId : accountIds) {
+            if (accountId != null && reportingValidation.accountValuevalidation(accountId)) {
+                validIds.add(accountId);
+            }
+        }
+        return reportingOfSystem.accountValues(validIds);
+    }
+
     // Method to get the portfolio value for an advisor
     public double advisorPortfolioValue(int advisorId) {
         if (reportingValidation.advisorPortfolioValuevalidation(advisorId)) {
@@ -163,11 +334,47 @@ public class InvestmentFirm {
     public Set<Integer> divergentAccounts(int tolerance) {
         Set<Integer> divergence = new HashSet<>();
         if (reportingValidation.divergentAccountsValidation(tolerance)) {
+            DivergenceMonitor monitor = divergenceMonitor();
+            if (monitor != null) {
+                return monitor.divergentAccounts(tolerance);
+            }
             return divergentAccount.divergentAccounts(tolerance);
         }
         return divergence;
     }
 
+    // Method to be told when accounts start or stop diverging by more than the tolerance
+    public boolean addDivergenceListener(int tolerance, DivergenceListener listener) {
+        if (listener != null && reportingValidation.divergentAccountsValidation(tolerance)) {
+            DivergenceMonitor monitor = divergenceMonitor();
+            if (monitor != null) {
+                monitor.addListener(tolerance, listener);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Returns the divergence monitor, starting it the first time, or null if it could not be loaded
+    private DivergenceMonitor divergenceMonitor() {
+        DivergenceMonitor monitor = divergenceMonitor;
+        if (monitor == null) {
+            synchronized (divergenceMonitorLock) {
+                monitor = divergenceMonitor;
+                if (monitor == null) {
+                    monitor = new DivergenceMonitor(connectionEstablisher, divergentAccount);
+                    portfolioEvents.addListener(monitor);
+                    if (!monitor.load()) {
+                        portfolioEvents.removeListener(monitor);
+                        return null;
+                    }
+                    divergenceMonitor = monitor;
+                }
+            }
+        }
+        return monitor;
+    }
+
     // Method to disburse dividends
     public int disburseDividend(String stockSymbol, double dividendPerShare) {
         if (reportingValidation.dividendValidation(stockSymbol, dividendPerShare)) {
@@ -176,6 +383,16 @@ public class InvestmentFirm {
         return 0;
     }
 
+    // Method to finish a dividend run that was interrupted part way through
+    public int resumeDividendRun(int runId) {
+        return dividendManager.resumeDividendRun(runId);
+    }
+
+    // Method to list the dividend runs that were interrupted and can be resumed
+    public List<Integer> unfinishedDividendRuns() {
+        return dividendManager.getUnfinishedDividendRuns();
+    }
+
     // Method to get stock recommendations
     public Map<String, Boolean> stockRecommendations(int accountId, int maxRecommendations, int numComparators) {
         Map<String,Boolean> recommendations = new HashMap<>();
@@ -186,6 +403,65 @@ public class InvestmentFirm {
         return recommendations;
     }
 
+    // Method to get stock recommendations for every account of an advisor at once
+    public Map<Integer, Map<String, Boolean>> stockRecommendationsForAdvisor(int advisorId, int maxRecommendations, int numComparators) {
+        Map<Integer, Map<String, Boolean>> recommendations = new HashMap<>();
+        if(analysisValidation.advisorStockRecValidations(advisorId,maxRecommendations,numComparators)){
+            return recommendationSystem.stockRecommendationsForAdvisor(advisorId, maxRecommendations, numComparators);
+        }
+        return recommendations;
+    }
+
+    // Method to get stock recommendations for many accounts at once
+    public Map<Integer, Map<String, Boolean>> stockRecommendations(Collection<Integer> accountIds, int maxRecommendations, int numComparators) {
+        List<Integer> validIds = new ArrayList<>();
+        for (Integer accountId : accountIds) {
+            if (accountId != null && analysisValidation.stockRecValidations(accountId, maxRecommendations, numComparators)) {
+                validIds.add(accountId);
+            }
+        }
+        if (validIds.isEmpty()) {
+            return new HashMap<>();
+        }
+        return recommendationSystem.stockRecommendations(validIds, maxRecommendations, numComparators);
+    }
+
+    // Method to build the approximate comparator index; more tables raise recall, more bits per table lower latency
+    public boolean enableApproximateRecommendations(int tables, int bitsPerTable) {
+        if (tables < 1 || bitsPerTable < 1 || bitsPerTable > 30) {
+            return false;
+        }
+        HoldingsLshIndex index = new HoldingsLshIndex(connectionEstablisher, tables, bitsPerTable, HoldingsLshIndex.DEFAULT_SEED);
+        portfolioEvents.addListener(index);
+        if (!index.load()) {
+            portfolioEvents.removeListener(index);
+            return false;
+        }
+        if (holdingsLshIndex != null) {
+            portfolioEvents.removeListener(holdingsLshIndex);
+        }
+        holdingsLshIndex = index;
+        recommendationSystem.setHoldingsIndex(index);
+        return true;
+    }
+
+    // Method to get stock recommendations from the approximate comparator index, or exactly if it is not enabled
+    public Map<String, Boolean> approximateStockRecommendations(int accountId, int maxRecommendations, int numComparators) {
+        Map<String,Boolean> recommendations = new HashMap<>();
+        if(analysisValidation.stockRecValidations(accountId,maxRecommendations,numComparators)){
+            return recommendationSystem.approximateStockRecommendations(accountId, maxRecommendations, numComparators);
+        }
+        return recommendations;
+    }
+
+    // Method to measure the share of the exact comparators the approximate index finds for an account
+    public double recommendationRecall(int accountId, int numComparators) {
+        if(analysisValidation.stockRecValidations(accountId,1,numComparators)){
+            return recommendationSystem.comparatorRecall(accountId, numComparators);
+        }
+        return Double.NaN;
+    }
+
     // Method to find advisor groups
     public Set<Set<Integer>> advisorGroups(double tolerance, int maxGroups) {
         Set<Set<Integer>> groups = new HashSet<>();
@@ -195,5 +471,14 @@ public class InvestmentFirm {
         return groups;
     }
 
+    // Method to find advisor groups by mini-batch clustering, reading the accounts batchSize at a time
+    public Set<Set<Integer>> advisorGroups(double tolerance, int maxGroups, int batchSize) {
+        Set<Set<Integer>> groups = new HashSet<>();
+        if(analysisValidation.advisorgroupBatchValidations(tolerance,maxGroups,batchSize)){
+            return advisorGroups.advisorGroups(tolerance,maxGroups,batchSize);
+        }
+        return groups;
+    }
+
 
 }
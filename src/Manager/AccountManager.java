@@ -1,14 +1,38 @@
 package Manager;
 
 import Database.ConnectionEstablisher;
+import Database.Decimals;
+import Database.PriceTable;
+import Database.ReferenceDataCache;
 
 import java.sql.*;
+import java.util.*;
 
 public class AccountManager {
 
-    ConnectionEstablisher connectionEstablisher = new ConnectionEstablisher();
+    // Number of orders applied per transaction by tradeSharesBatch
+    private static final int TRADE_BATCH_CHUNK_SIZE = 1000;
+    // Largest number of values bound into a single IN (...) list
+    private static final int MAX_IN_LIST_SIZE = 1000;
+    // Number of accounts inserted per transaction by createAccounts; at most MAX_IN_LIST_SIZE
+    private static final int ACCOUNT_BATCH_CHUNK_SIZE = 1000;
+    // Vendor error codes of a duplicate key and of a foreign key without its referenced row, on MySQL and H2
+    private static final int MYSQL_DUPLICATE_KEY = 1062;
+    private static final int MYSQL_NO_REFERENCED_ROW = 1452;
+    private static final int H2_DUPLICATE_KEY = 23505;
+    private static final int H2_NO_REFERENCED_ROW = 23506;
 
-    public AccountManager() {
+    ConnectionEstablisher connectionEstablisher;
+    ReferenceDataCache referenceDataCache;
+    PriceTable priceTable;
+    PortfolioEvents portfolioEvents;
+
+    public AccountManager(ConnectionEstablisher connectionEstablisher, ReferenceDataCache referenceDataCache, PriceTable priceTable,
+                          PortfolioEvents portfolioEvents) {
+        this.connectionEstablisher = connectionEstablisher;
+        this.referenceDataCache = referenceDataCache;
+        this.priceTable = priceTable;
+        this.portfolioEvents = portfolioEvents;
     }
 
     /**
@@ -26,44 +50,41 @@ public class AccountManager {
         Connection connection = connectionEstablisher.establishConnection();
         if (connection != null) {
             try {
-                // Validate client existence
-                if (!clientExists(connection, clientId)) {
-                    throw new SQLException("Client does not exist with ID: " + clientId);
-                }
-
-                // Validate advisor existence
-                if (!advisorExists(connection, financialAdvisorId)) {
-                    throw new SQLException("Advisor does not exist with ID: " + financialAdvisorId);
-                }
-                // Get the profile ID based on profileType name
-                int profileId = getProfileIdByName(connection, profileType);
-                if (profileId == -1) {
-                    throw new SQLException("Profile type does not exist: " + profileType);
-                }
-
-                // Insert the new account
+                // Insert the new account, resolving the profile by name; the foreign keys validate the client
+                // and advisor, and the unique key on (client_id, accountName) rejects a duplicate name
                 String insertAccountSQL = "INSERT INTO Accounts (client_id, advisor_id, accountName, profile_id, reinvest) " +
-                        "SELECT ?, ?, ?, ?, ? " +
-                        "FROM DUAL " +
-                        "WHERE NOT EXISTS (" +
-                        "    SELECT 1 FROM Accounts WHERE client_id = ? AND accountName = ?" +
-                        ")";
+                        "SELECT ?, ?, ?, profile_id, ? FROM Profiles WHERE profileName = ?";
                 try (PreparedStatement insertAccountStmt = connection.prepareStatement(insertAccountSQL, Statement.RETURN_GENERATED_KEYS)) {
                     insertAccountStmt.setInt(1, clientId);
                     insertAccountStmt.setInt(2, financialAdvisorId);
                     insertAccountStmt.setString(3, accountName);
-                    insertAccountStmt.setInt(4, profileId);
-                    insertAccountStmt.setBoolean(5, reinvest);
-                    insertAccountStmt.setInt(6, clientId);
-                    insertAccountStmt.setString(7, accountName);
-                    int rowsAffected = insertAccountStmt.executeUpdate();
-                    if (rowsAffected > 0) {
-                        try (ResultSet generatedKeys = insertAccountStmt.getGeneratedKeys()) {
-                            if (generatedKeys.next()) {
-                                int accountId = generatedKeys.getInt(1);
-                                return accountId;
+                    insertAccountStmt.setBoolean(4, reinvest);
+                    insertAccountStmt.setString(5, profileType);
+                    int rowsAffected;
+                    try {
+                        rowsAffected = insertAccountStmt.executeUpdate();
+                    } catch (SQLException e) {
+                        if (isDuplicateKey(e)) {
+                            return -1; // The client already has an account with this name
+                        }
+                        if (isMissingReference(e)) {
+                            OnboardingResult.Status missing = missingReference(connection, clientId, financialAdvisorId);
+                            if (missing != null) {
+                                throw new SQLException(reason(missing,
+                                        new AccountSpec(clientId, financialAdvisorId, accountName, profileType, reinvest)), e);
                             }
                         }
+                        throw e;
+                    }
+                    if (rowsAffected == 0) {
+                        throw new SQLException("Profile type does not exist: " + profileType);
+                    }
+                    try (ResultSet generatedKeys = insertAccountStmt.getGeneratedKeys()) {
+                        if (generatedKeys.next()) {
+                            int accountId = generatedKeys.getInt(1);
+                            portfolioEvents.accountOpened(accountId, financialAdvisorId, referenceDataCache.getProfileId(connection, profileType), reinvest);
+                            return accountId;
+                        }
                     }
                 }
             } catch (SQLException e) {
@@ -77,72 +98,321 @@ public class AccountManager {
         }
         return -1; // Indicate failure
     }
-    // Method to check if a client exists
-    private boolean clientExists(Connection connection, int clientId) throws SQLException {
-        String query = "SELECT COUNT(*) AS count FROM Clients WHERE client_id = ?";
+
+    /**
+     * Checks if an error is a duplicate key, such as a second account of the same name for a client.
+     *
+     * @param e the error
+     * @return true if the error is a duplicate key on MySQL or H2
+     */
+    private static boolean isDuplicateKey(SQLException e) {
+        return e.getErrorCode() == MYSQL_DUPLICATE_KEY || e.getErrorCode() == H2_DUPLICATE_KEY;
+    }
+
+    /**
+     * Checks if an error is a foreign key whose referenced row does not exist.
+     *
+     * @param e the error
+     * @return true if the error is a missing referenced row on MySQL or H2
+     */
+    private static boolean isMissingReference(SQLException e) {
+        return e.getErrorCode() == MYSQL_NO_REFERENCED_ROW || e.getErrorCode() == H2_NO_REFERENCED_ROW;
+    }
+
+    /**
+     * Finds which of an account's client and advisor does not exist, after its insert broke a foreign key.
+     *
+     * @param connection         the database connection
+     * @param clientId           the ID of the client of the account
+     * @param financialAdvisorId the ID of the advisor of the account
+     * @return CLIENT_NOT_FOUND or ADVISOR_NOT_FOUND, or null if both exist
+     * @throws SQLException if an SQL error occurs
+     */
+    private static OnboardingResult.Status missingReference(Connection connection, int clientId, int financialAdvisorId) throws SQLException {
+        String query = "SELECT (SELECT COUNT(*) FROM Clients WHERE client_id = ?), " +
+                "(SELECT COUNT(*) FROM Advisors WHERE advisor_id = ?)";
         try (PreparedStatement stmt = connection.prepareStatement(query)) {
             stmt.setInt(1, clientId);
+            stmt.setInt(2, financialAdvisorId);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return rs.getInt("count") > 0;
+                    if (rs.getInt(1) == 0) {
+                        return OnboardingResult.Status.CLIENT_NOT_FOUND;
+                    }
+                    if (rs.getInt(2) == 0) {
+                        return OnboardingResult.Status.ADVISOR_NOT_FOUND;
+                    }
                 }
             }
         }
-        return false;
+        return null;
     }
 
-    // Method to check if an advisor exists
-    private boolean advisorExists(Connection connection, int financialAdvisorId) throws SQLException {
-        String query = "SELECT COUNT(*) AS count FROM Advisors WHERE advisor_id = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setInt(1, financialAdvisorId);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("count") > 0;
+    /**
+     * Creates many accounts at once. The accounts are inserted in chunks, each chunk in one transaction with a
+     * single JDBC batch. Before a chunk is inserted, its clients, advisors and existing account names are read
+     * with one query each, so that an account whose client, advisor or profile does not exist, or whose client
+     * already has an account of that name, is reported and skipped instead of failing the whole batch.
+     * If a chunk still fails, it is rolled back and its accounts are inserted one at a time.
+     *
+     * @param accounts the accounts to create
+     * @return the result of each account in input order, holding the new account ID or why it was not created
+     */
+    public OnboardingResult[] createAccounts(List<AccountSpec> accounts) {
+        OnboardingResult[] results = new OnboardingResult[accounts.size()];
+        Arrays.fill(results, OnboardingResult.refused(OnboardingResult.Status.FAILED));
+        if (accounts.isEmpty()) {
+            return results;
+        }
+        Connection connection = connectionEstablisher.establishConnection();
+        if (connection != null) {
+            try {
+                // The account names of each client met so far, both stored and created by this batch
+                Map<Integer, Set<String>> accountNamesByClient = new HashMap<>();
+                for (int start = 0; start < accounts.size(); start += ACCOUNT_BATCH_CHUNK_SIZE) {
+                    int end = Math.min(accounts.size(), start + ACCOUNT_BATCH_CHUNK_SIZE);
+                    createAccountChunk(accounts, start, end, accountNamesByClient, results, connection);
                 }
+            } catch (SQLException e) {
+                System.out.println("SQL error occurred: " + e.getMessage());
+            } finally {
+                connectionEstablisher.closeConnection(connection);
             }
+        } else {
+            System.out.println("Failed to establish database connection.");
         }
-        return false;
+        return results;
     }
+
     /**
-     * Retrieves the profile ID associated with the given profile name.
+     * Creates the accounts from start up to but excluding end in a single transaction.
      *
-     * @param connection  the database connection
-     * @param profileName the name of the profile
-     * @return the ID of the profile, or -1 if the profile does not exist
-     * @throws SQLException if a database error occurs
+     * @param accounts             all accounts of the batch
+     * @param start                the position of the first account of the chunk
+     * @param end                  the position just past the last account of the chunk
+     * @param accountNamesByClient the account names of each client met so far, updated with the accounts this chunk creates
+     * @param results              the result of each account, filled in by this method
+     * @param connection           the database connection
+     * @throws SQLException if the clients, advisors or account names could not be read
      */
-    private int getProfileIdByName(Connection connection, String profileName) throws SQLException {
-        String getProfileIdSQL = "SELECT profile_id FROM Profiles WHERE profileName = ?";
-        try (PreparedStatement getProfileStmt = connection.prepareStatement(getProfileIdSQL)) {
-            getProfileStmt.setString(1, profileName);
-            try (ResultSet rs = getProfileStmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("profile_id");
-                } else {
-                    return -1; // Profile not found
+    private void createAccountChunk(List<AccountSpec> accounts, int start, int end, Map<Integer, Set<String>> accountNamesByClient,
+                                    OnboardingResult[] results, Connection connection) throws SQLException {
+        Set<Integer> clientIds = new HashSet<>();
+        Set<Integer> advisorIds = new HashSet<>();
+        for (int i = start; i < end; i++) {
+            clientIds.add(accounts.get(i).getClientId());
+            advisorIds.add(accounts.get(i).getFinancialAdvisorId());
+        }
+        Set<Integer> existingClients = existingIds("Clients", "client_id", clientIds, connection);
+        Set<Integer> existingAdvisors = existingIds("Advisors", "advisor_id", advisorIds, connection);
+        loadAccountNames(clientIds, accountNamesByClient, connection);
+
+        List<Integer> positions = new ArrayList<>();
+        // The account names this chunk is about to insert, so that a name repeated within the chunk is refused
+        Map<Integer, Set<String>> pendingNamesByClient = new HashMap<>();
+        int[] profileIds = new int[end - start];
+        for (int i = start; i < end; i++) {
+            AccountSpec account = accounts.get(i);
+            profileIds[i - start] = referenceDataCache.getProfileId(connection, account.getProfileType());
+            if (!existingClients.contains(account.getClientId())) {
+                results[i] = refuse(OnboardingResult.Status.CLIENT_NOT_FOUND, account);
+            } else if (!existingAdvisors.contains(account.getFinancialAdvisorId())) {
+                results[i] = refuse(OnboardingResult.Status.ADVISOR_NOT_FOUND, account);
+            } else if (profileIds[i - start] == -1) {
+                results[i] = refuse(OnboardingResult.Status.PROFILE_NOT_FOUND, account);
+            } else if (accountNamesByClient.getOrDefault(account.getClientId(), Collections.emptySet()).contains(account.getAccountName())
+                    || !pendingNamesByClient.computeIfAbsent(account.getClientId(), id -> new HashSet<>()).add(account.getAccountName())) {
+                results[i] = refuse(OnboardingResult.Status.DUPLICATE, account);
+            } else {
+                positions.add(i);
+            }
+        }
+        if (positions.isEmpty()) {
+            return;
+        }
+
+        String insertAccountSQL = "INSERT INTO Accounts (client_id, advisor_id, accountName, profile_id, reinvest) VALUES (?, ?, ?, ?, ?)";
+        try (PreparedStatement insertAccountStmt = connection.prepareStatement(insertAccountSQL, Statement.RETURN_GENERATED_KEYS)) {
+            boolean inserted = false;
+            connection.setAutoCommit(false);
+            try {
+                for (int position : positions) {
+                    bindAccount(insertAccountStmt, accounts.get(position), profileIds[position - start]);
+                    insertAccountStmt.addBatch();
+                }
+                insertAccountStmt.executeBatch();
+                try (ResultSet generatedKeys = insertAccountStmt.getGeneratedKeys()) {
+                    for (int position : positions) {
+                        if (!generatedKeys.next()) {
+                            throw new SQLException("Creating account failed, no ID obtained.");
+                        }
+                        results[position] = OnboardingResult.created(generatedKeys.getInt(1));
+                    }
                 }
+                connection.commit();
+                inserted = true;
+            } catch (SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException rollbackError) {
+                    System.out.println("Failed to roll back account batch: " + rollbackError.getMessage());
+                }
+            } finally {
+                connection.setAutoCommit(true);
+            }
+
+            // Insert the chunk row by row, so that only the accounts that really clash are refused
+            if (!inserted) {
+                for (int position : positions) {
+                    results[position] = insertAccount(insertAccountStmt, accounts.get(position), profileIds[position - start]);
+                }
+            }
+        }
+
+        for (int position : positions) {
+            if (results[position].isCreated()) {
+                AccountSpec account = accounts.get(position);
+                accountNamesByClient.computeIfAbsent(account.getClientId(), id -> new HashSet<>()).add(account.getAccountName());
+                portfolioEvents.accountOpened(results[position].getId(), account.getFinancialAdvisorId(), profileIds[position - start],
+                        account.isReinvest());
             }
         }
     }
 
     /**
-     * Retrieves the stock ID associated with the given stock symbol.
+     * Inserts one account outside any transaction, reporting why it was refused.
      *
-     * @param connection  the database connection
-     * @param stockSymbol the symbol of the stock
-     * @return the ID of the stock, or -1 if the stock does not exist
-     * @throws SQLException if a database error occurs
+     * @param insertAccountStmt the prepared insert statement
+     * @param account           the account
+     * @param profileId         the ID of the account's profile
+     * @return the result of the account, holding the new account ID or why it was not created
      */
-    private int getStockIdByName(Connection connection, String stockSymbol) throws SQLException {
-        String getProfileIdSQL = "SELECT stock_id FROM Stocks WHERE stockSymbol = ?";
-        try (PreparedStatement getProfileStmt = connection.prepareStatement(getProfileIdSQL)) {
-            getProfileStmt.setString(1, stockSymbol);
-            try (ResultSet rs = getProfileStmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("stock_id");
-                } else {
-                    return -1; // Profile not found
+    private OnboardingResult insertAccount(PreparedStatement insertAccountStmt, AccountSpec account, int profileId) {
+        try {
+            bindAccount(insertAccountStmt, account, profileId);
+            insertAccountStmt.executeUpdate();
+            try (ResultSet generatedKeys = insertAccountStmt.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    return OnboardingResult.created(generatedKeys.getInt(1));
+                }
+            }
+        } catch (SQLException e) {
+            if (isDuplicateKey(e)) {
+                return refuse(OnboardingResult.Status.DUPLICATE, account);
+            }
+            if (isMissingReference(e)) {
+                try {
+                    // The profile ID came from the cache, so a missing row is the client or advisor unless both exist
+                    OnboardingResult.Status missing = missingReference(insertAccountStmt.getConnection(), account.getClientId(),
+                            account.getFinancialAdvisorId());
+                    return refuse(missing != null ? missing : OnboardingResult.Status.PROFILE_NOT_FOUND, account);
+                } catch (SQLException lookupError) {
+                    System.out.println("SQL error occurred: " + lookupError.getMessage());
+                    return OnboardingResult.refused(OnboardingResult.Status.FAILED);
+                }
+            }
+            System.out.println("SQL error occurred: " + e.getMessage());
+        }
+        return OnboardingResult.refused(OnboardingResult.Status.FAILED);
+    }
+
+    /**
+     * Reports why an account was not created.
+     *
+     * @param status  why the account was not created
+     * @param account the account
+     * @return the result of the account
+     */
+    private static OnboardingResult refuse(OnboardingResult.Status status, AccountSpec account) {
+        System.out.println(reason(status, account));
+        return OnboardingResult.refused(status);
+    }
+
+    /**
+     * @param status  why an account was not created
+     * @param account the account
+     * @return the message explaining the status
+     */
+    private static String reason(OnboardingResult.Status status, AccountSpec account) {
+        switch (status) {
+            case DUPLICATE:
+                return "Account already exists for client " + account.getClientId() + ": " + account.getAccountName();
+            case CLIENT_NOT_FOUND:
+                return "Client does not exist with ID: " + account.getClientId();
+            case ADVISOR_NOT_FOUND:
+                return "Advisor does not exist with ID: " + account.getFinancialAdvisorId();
+            case PROFILE_NOT_FOUND:
+                return "Profile type does not exist: " + account.getProfileType();
+            default:
+                return "Account was not created: " + account.getAccountName();
+        }
+    }
+
+    /**
+     * Binds an account to the parameters of the account insert statement.
+     */
+    private static void bindAccount(PreparedStatement insertAccountStmt, AccountSpec account, int profileId) throws SQLException {
+        insertAccountStmt.setInt(1, account.getClientId());
+        insertAccountStmt.setInt(2, account.getFinancialAdvisorId());
+        insertAccountStmt.setString(3, account.getAccountName());
+        insertAccountStmt.setInt(4, profileId);
+        insertAccountStmt.setBoolean(5, account.isReinvest());
+    }
+
+    /**
+     * Reads which of the IDs exist in a table.
+     *
+     * @param table      the table
+     * @param idColumn   the ID column of the table
+     * @param ids        the IDs to look up, at most MAX_IN_LIST_SIZE of them
+     * @param connection the database connection
+     * @return the IDs that exist
+     * @throws SQLException if an SQL error occurs
+     */
+    private Set<Integer> existingIds(String table, String idColumn, Set<Integer> ids, Connection connection) throws SQLException {
+        Set<Integer> existing = new HashSet<>();
+        String query = "SELECT " + idColumn + " FROM " + table + " WHERE " + idColumn + " IN (" + placeholders(ids.size()) + ")";
+        try (PreparedStatement stmt = connection.prepareStatement(query)) {
+            int index = 1;
+            for (int id : ids) {
+                stmt.setInt(index++, id);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    existing.add(rs.getInt(1));
+                }
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * Reads the stored account names of the clients that have not been met before.
+     *
+     * @param clientIds            the clients, at most MAX_IN_LIST_SIZE of them
+     * @param accountNamesByClient the account names of each client met so far, updated by this method
+     * @param connection           the database connection
+     * @throws SQLException if an SQL error occurs
+     */
+    private void loadAccountNames(Set<Integer> clientIds, Map<Integer, Set<String>> accountNamesByClient, Connection connection) throws SQLException {
+        List<Integer> newClients = new ArrayList<>();
+        for (int clientId : clientIds) {
+            if (!accountNamesByClient.containsKey(clientId)) {
+                accountNamesByClient.put(clientId, new HashSet<>());
+                newClients.add(clientId);
+            }
+        }
+        if (newClients.isEmpty()) {
+            return;
+        }
+        String query = "SELECT client_id, accountName FROM Accounts WHERE client_id IN (" + placeholders(newClients.size()) + ")";
+        try (PreparedStatement stmt = connection.prepareStatement(query)) {
+            for (int i = 0; i < newClients.size(); i++) {
+                stmt.setInt(i + 1, newClients.get(i));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    accountNamesByClient.get(rs.getInt("client_id")).add(rs.getString("accountName"));
                 }
             }
         }
@@ -150,6 +420,8 @@ public class AccountManager {
 
     /**
      * Initiates a share trading transaction for the specified account.
+     * The cash and share movements of a trade run in a single transaction, and each is a conditional
+     * update, so concurrent trades on the same account can never overdraw cash or oversell shares.
      *
      * @param accountId       the ID of the account involved in the transaction
      * @param stockSymbol     the symbol of the stock being traded, or "cash" for a cash transaction
@@ -162,35 +434,49 @@ public class AccountManager {
             try {
                 // Handle "cash" transaction separately
                 if ("cash".equalsIgnoreCase(stockSymbol)) {
-                    updateCashBalance(accountId, sharesExchanged, connection);
+                    if (!updateCashBalance(accountId, sharesExchanged, connection)) {
+                        System.out.println("Account does not exist with ID: " + accountId);
+                        return false;
+                    }
+                    portfolioEvents.cashChanged(accountId, sharesExchanged);
                     return true;
                 }
 
-                double sharePrice = getLastRecordedTradePrice(stockSymbol, connection);
-                double transactionAmount = sharePrice * sharesExchanged;
-                int stockId = getStockIdByName(connection, stockSymbol);
-
+                int stockId = referenceDataCache.getStockId(connection, stockSymbol);
                 if (stockId == -1) {
                     throw new SQLException("Stock symbol does not exist: " + stockId);
                 }
-                // Check if buying shares - must have enough cash in the account
-                if (sharesExchanged > 0 && !hasSufficientCash(accountId, transactionAmount, connection)) {
-                    System.out.println("Not enough cash in the account to complete the purchase.");
-                    return false;
-                }
+                double sharePrice = priceTable.getPrice(connection, stockId);
+                double transactionAmount = sharePrice * sharesExchanged;
 
-                // Check if selling shares - must have the specified stock in the account
-                if (sharesExchanged < 0 && !hasSufficientShares(accountId, stockId, Math.abs(sharesExchanged), connection)) {
-                    System.out.println("Account does not have enough shares to sell.");
-                    return false;
+                connection.setAutoCommit(false);
+                try {
+                    if (sharesExchanged > 0) {
+                        // Buying shares - the cash is only taken if the account can cover it
+                        if (!withdrawCashIfSufficient(accountId, transactionAmount, connection)) {
+                            connection.rollback();
+                            System.out.println("Not enough cash in the account to complete the purchase.");
+                            return false;
+                        }
+                        addSharesAndUpdateACB(accountId, stockId, sharesExchanged, sharePrice, connection);
+                    } else {
+                        // Selling shares - the shares are only removed if the account holds enough of them
+                        if (!removeSharesIfSufficient(accountId, stockId, Math.abs(sharesExchanged), connection)) {
+                            connection.rollback();
+                            System.out.println("Account does not have enough shares to sell.");
+                            return false;
+                        }
+                        updateCashBalance(accountId, -transactionAmount, connection); // Negative amount, so selling adds cash
+                    }
+                    connection.commit();
+                    portfolioEvents.positionChanged(accountId, stockId, sharesExchanged);
+                    portfolioEvents.cashChanged(accountId, -transactionAmount);
+                    return true;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
                 }
 
-                // Proceed with buying or selling shares
-                updateCashBalance(accountId, -transactionAmount, connection); // Negative because buying shares decreases cash balance
-                String transactionType = sharesExchanged > 0 ? "buy" : "sell";
-                updateShareBalanceAndACB(accountId, stockId, Math.abs(sharesExchanged), sharePrice, transactionType, connection);
-                return true;
-
             } catch (SQLException e) {
                 System.out.println("SQL error occurred: " + e.getMessage());
             } finally {
@@ -203,191 +489,417 @@ public class AccountManager {
     }
 
     /**
-     * Checks if the account has sufficient shares of the specified stock for selling.
+     * Takes cash out of the account only when the balance covers the amount, in a single statement.
+     *
+     * @param accountId  the ID of the account
+     * @param amount     the amount of cash needed for the transaction
+     * @param connection the database connection
+     * @return true if the cash was withdrawn, false if the balance was insufficient or the account does not exist
+     * @throws SQLException if a database error occurs
+     */
+    private boolean withdrawCashIfSufficient(int accountId, double amount, Connection connection) throws SQLException {
+        String update = "UPDATE Accounts SET cash_balance = cash_balance - ? WHERE account_id = ? AND cash_balance >= ?";
+        try (PreparedStatement stmt = connection.prepareStatement(update)) {
+            stmt.setDouble(1, amount);
+            stmt.setInt(2, accountId);
+            stmt.setDouble(3, amount);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Removes shares from the account only when it holds at least that many, in a single statement.
      *
      * @param accountId    the ID of the account
      * @param stockId      the ID of the stock
      * @param sharesToSell the number of shares to sell
      * @param connection   the database connection
-     * @return true if the account has sufficient shares, false otherwise
+     * @return true if the shares were removed, false if the account does not hold enough of them
      * @throws SQLException if a database error occurs
      */
-    private boolean hasSufficientShares(int accountId, int stockId, int sharesToSell, Connection connection) throws SQLException {
-        String sql = "SELECT quantity FROM Investments WHERE account_id = ? AND stock_id = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+    private boolean removeSharesIfSufficient(int accountId, int stockId, int sharesToSell, Connection connection) throws SQLException {
+        String update = "UPDATE Investments SET quantity = quantity - ? WHERE account_id = ? AND stock_id = ? AND quantity >= ?";
+        try (PreparedStatement stmt = connection.prepareStatement(update)) {
+            stmt.setInt(1, sharesToSell);
+            stmt.setInt(2, accountId);
+            stmt.setInt(3, stockId);
+            stmt.setInt(4, sharesToSell);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Adds bought shares to the account's position, creating it if needed, and folds the purchase
+     * into the average cost basis (ACB) in the same statement.
+     *
+     * @param accountId     the ID of the account
+     * @param stockId       the ID of the stock
+     * @param sharesBought  the number of shares bought
+     * @param pricePerShare the price paid per share
+     * @param connection    the database connection
+     * @throws SQLException if a database error occurs
+     */
+    private void addSharesAndUpdateACB(int accountId, int stockId, int sharesBought, double pricePerShare, Connection connection) throws SQLException {
+        // The acb assignment comes first so it still sees the quantity held before this purchase.
+        // The purchase cost is cast so engines that type bare parameters as integers keep the cents.
+        String upsert = "INSERT INTO Investments (account_id, stock_id, quantity, acb) VALUES (?, ?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE acb = (acb * quantity + CAST(? AS DECIMAL(24,6))) / (quantity + ?), quantity = quantity + ?";
+        try (PreparedStatement stmt = connection.prepareStatement(upsert)) {
             stmt.setInt(1, accountId);
             stmt.setInt(2, stockId);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                int quantity = rs.getInt("quantity");
-                return quantity >= sharesToSell;
+            stmt.setInt(3, sharesBought);
+            stmt.setDouble(4, pricePerShare);
+            stmt.setDouble(5, pricePerShare * sharesBought);
+            stmt.setInt(6, sharesBought);
+            stmt.setInt(7, sharesBought);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Applies a batch of trades. Orders are grouped by account and applied in chunks of whole accounts.
+     * Each chunk is one transaction that locks its accounts and positions, replays every account's orders
+     * in input order against the locked balances with the same rules as tradeShares, and writes the
+     * resulting cash balances and positions back with JDBC batches. Orders for accounts that do not
+     * exist fail, and a chunk that hits a database error is rolled back and all of its orders fail.
+     *
+     * @param orders the trades to apply, in the order they should take effect
+     * @return one flag per order, in input order, true if that order was applied
+     */
+    public boolean[] tradeSharesBatch(List<TradeOrder> orders) {
+        boolean[] results = new boolean[orders.size()];
+        if (orders.isEmpty()) {
+            return results;
+        }
+        Map<String, StockQuote> quotes = getStockQuotes(orders);
+        Connection connection = connectionEstablisher.establishConnection();
+        if (connection != null) {
+            try {
+
+                // Group the orders by account, keeping each account's orders in input order
+                Map<Integer, List<Integer>> ordersByAccount = new LinkedHashMap<>();
+                for (int i = 0; i < orders.size(); i++) {
+                    ordersByAccount.computeIfAbsent(orders.get(i).getAccountId(), id -> new ArrayList<>()).add(i);
+                }
+
+                connection.setAutoCommit(false);
+                List<Integer> chunkAccounts = new ArrayList<>();
+                int chunkOrders = 0;
+                for (Map.Entry<Integer, List<Integer>> entry : ordersByAccount.entrySet()) {
+                    chunkAccounts.add(entry.getKey());
+                    chunkOrders += entry.getValue().size();
+                    if (chunkOrders >= TRADE_BATCH_CHUNK_SIZE || chunkAccounts.size() >= MAX_IN_LIST_SIZE) {
+                        applyTradeChunk(chunkAccounts, ordersByAccount, orders, quotes, results, connection);
+                        chunkAccounts.clear();
+                        chunkOrders = 0;
+                    }
+                }
+                if (!chunkAccounts.isEmpty()) {
+                    applyTradeChunk(chunkAccounts, ordersByAccount, orders, quotes, results, connection);
+                }
+            } catch (SQLException e) {
+                System.out.println("SQL error occurred: " + e.getMessage());
+            } finally {
+                connectionEstablisher.closeConnection(connection);
             }
+        } else {
+            System.out.println("Failed to establish database connection.");
         }
-        return false; // Stock not found in account's holdings
+        return results;
     }
 
     /**
-     * Checks if the account has sufficient cash for the specified amount.
+     * Applies the orders of one chunk of accounts in a single transaction.
      *
-     * @param accountId    the ID of the account
-     * @param amountNeeded the amount of cash needed for the transaction
-     * @param connection   the database connection
-     * @return true if the account has sufficient cash, false otherwise
-     * @throws SQLException if a database error occurs
+     * @param accountIds      the accounts in this chunk
+     * @param ordersByAccount the positions in the order list of each account's orders
+     * @param orders          all orders of the batch
+     * @param quotes          the stock ID and price of every traded symbol
+     * @param results         the per-order results, set to true for orders applied by this chunk
+     * @param connection      the database connection, with auto-commit disabled
      */
-    private boolean hasSufficientCash(int accountId, double amountNeeded, Connection connection) throws SQLException {
-        String query = "SELECT cash_balance FROM Accounts WHERE account_id = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setInt(1, accountId);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                double cashBalance = rs.getDouble("cash_balance");
-                return cashBalance >= amountNeeded;
+    private void applyTradeChunk(List<Integer> accountIds, Map<Integer, List<Integer>> ordersByAccount, List<TradeOrder> orders,
+                                 Map<String, StockQuote> quotes, boolean[] results, Connection connection) {
+        List<Integer> applied = new ArrayList<>();
+        try {
+            Map<Integer, BatchAccount> accounts = lockAccounts(accountIds, connection);
+            for (Integer accountId : accountIds) {
+                BatchAccount account = accounts.get(accountId);
+                if (account == null) {
+                    continue; // Account does not exist, so none of its orders can be applied
+                }
+                for (int index : ordersByAccount.get(accountId)) {
+                    if (account.apply(orders.get(index), quotes)) {
+                        applied.add(index);
+                    }
+                }
+            }
+            writeBatchAccounts(accounts.values(), connection);
+            connection.commit();
+            for (int index : applied) {
+                results[index] = true;
+                publishTrade(orders.get(index), quotes);
             }
+        } catch (SQLException e) {
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackError) {
+                System.out.println("Failed to roll back trade batch: " + rollbackError.getMessage());
+            }
+            System.out.println("SQL error occurred while applying trade batch: " + e.getMessage());
         }
-        return false;
     }
 
     /**
-     * Updates the share balance for the specified account and stock.
+     * Tells the portfolio listeners about a committed order of a batch.
      *
-     * @param accountId       the ID of the account
-     * @param sharesExchanged the number of shares being exchanged
-     * @param connection      the database connection
-     * @param stock_id        the ID of the stock
-     * @throws SQLException if a database error occurs
+     * @param order  the order that was applied
+     * @param quotes the stock ID and price of every traded symbol
      */
-    private void updateShareBalance(int accountId, int sharesExchanged, Connection connection, int stock_id) throws SQLException {
-        String update = "INSERT INTO Investments (account_id,stock_id,quantity) VALUES (?, ?, ?)";
-        try (PreparedStatement stmt = connection.prepareStatement(update)) {
-            stmt.setInt(1, accountId);
-            stmt.setInt(2, stock_id);
-            stmt.setInt(3, sharesExchanged);
-            stmt.executeUpdate();
+    private void publishTrade(TradeOrder order, Map<String, StockQuote> quotes) {
+        int sharesExchanged = order.getSharesExchanged();
+        if ("cash".equalsIgnoreCase(order.getStockSymbol())) {
+            portfolioEvents.cashChanged(order.getAccountId(), sharesExchanged);
+            return;
         }
+        StockQuote quote = quotes.get(order.getStockSymbol());
+        portfolioEvents.positionChanged(order.getAccountId(), quote.stockId, sharesExchanged);
+        portfolioEvents.cashChanged(order.getAccountId(), -quote.price * sharesExchanged);
     }
 
     /**
-     * Updates the cash balance for the specified account.
+     * Looks up the ID and current price of every stock traded in the batch.
      *
-     * @param accountId  the ID of the account
-     * @param amount     the amount to be added or subtracted from the cash balance
-     * @param connection the database connection
-     * @throws SQLException if a database error occurs
+     * @param orders the orders of the batch
+     * @return the quotes keyed by stock symbol
      */
-    private void updateCashBalance(int accountId, double amount, Connection connection) throws SQLException {
-        String update = "UPDATE Accounts SET cash_balance = cash_balance + ? WHERE account_id = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(update)) {
-            stmt.setDouble(1, amount);
-            stmt.setInt(2, accountId);
-            stmt.executeUpdate();
+    private Map<String, StockQuote> getStockQuotes(List<TradeOrder> orders) {
+        // Symbols compare like the database collation does, ignoring case
+        Map<String, StockQuote> quotes = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (TradeOrder order : orders) {
+            String stockSymbol = order.getStockSymbol();
+            if ("cash".equalsIgnoreCase(stockSymbol) || quotes.containsKey(stockSymbol)) {
+                continue;
+            }
+            int stockId = referenceDataCache.getStockId(stockSymbol);
+            if (stockId != -1) {
+                quotes.put(stockSymbol, new StockQuote(stockId, priceTable.getPrice(stockId)));
+            }
         }
+        return quotes;
     }
 
     /**
-     * Retrieves the last recorded trade price of the specified stock.
+     * Locks the given accounts and their positions for the rest of the transaction and loads their balances.
      *
-     * @param stockSymbol the symbol of the stock
-     * @param connection  the database connection
-     * @return the last recorded trade price of the stock
+     * @param accountIds the accounts to lock
+     * @param connection the database connection, with auto-commit disabled
+     * @return the current state of every account that exists, keyed by account ID
      * @throws SQLException if a database error occurs
      */
-    private double getLastRecordedTradePrice(String stockSymbol, Connection connection) throws SQLException {
-        // Assuming there's a table "StockPrices" where prices are recorded
-        String query = "SELECT perShare_price FROM Stocks WHERE stockSymbol = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, stockSymbol);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return rs.getDouble("perShare_price");
-            } else {
-                return 1.0; // Default price if no trades have occurred
+    private Map<Integer, BatchAccount> lockAccounts(List<Integer> accountIds, Connection connection) throws SQLException {
+        Map<Integer, BatchAccount> accounts = new LinkedHashMap<>();
+        // Rows are locked in account_id order so concurrent batches cannot deadlock on each other
+        String accountsSQL = "SELECT account_id, cash_balance FROM Accounts WHERE account_id IN (" + placeholders(accountIds.size()) + ") " +
+                "ORDER BY account_id FOR UPDATE";
+        try (PreparedStatement stmt = connection.prepareStatement(accountsSQL)) {
+            for (int i = 0; i < accountIds.size(); i++) {
+                stmt.setInt(i + 1, accountIds.get(i));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    accounts.put(rs.getInt("account_id"), new BatchAccount(rs.getInt("account_id"), rs.getDouble("cash_balance")));
+                }
             }
         }
+        String positionsSQL = "SELECT account_id, stock_id, quantity, acb FROM Investments WHERE account_id IN (" + placeholders(accountIds.size()) + ") " +
+                "ORDER BY account_id, stock_id FOR UPDATE";
+        try (PreparedStatement stmt = connection.prepareStatement(positionsSQL)) {
+            for (int i = 0; i < accountIds.size(); i++) {
+                stmt.setInt(i + 1, accountIds.get(i));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    BatchAccount account = accounts.get(rs.getInt("account_id"));
+                    if (account != null) {
+                        account.positions.put(rs.getInt("stock_id"), new BatchPosition(rs.getDouble("quantity"), rs.getDouble("acb")));
+                    }
+                }
+            }
+        }
+        return accounts;
     }
 
     /**
-     * Updates the share balance and average cost basis (ACB) for the specified account and stock after a transaction.
+     * Writes the changed cash balances and positions of a chunk back with one JDBC batch each.
      *
-     * @param accountId       the ID of the account
-     * @param stockId         the ID of the stock
-     * @param sharesExchanged the number of shares being exchanged
-     * @param pricePerShare   the price per share of the stock
-     * @param transactionType the type of transaction (buy or sell)
-     * @param connection      the database connection
+     * @param accounts   the accounts of the chunk after their orders were replayed
+     * @param connection the database connection, with auto-commit disabled
      * @throws SQLException if a database error occurs
      */
-    private void updateShareBalanceAndACB(int accountId, int stockId, int sharesExchanged, double pricePerShare, String transactionType, Connection connection) throws SQLException {
-        // Check if an investment entry already exists for this account and stock
-        String checkInvestmentSQL = "SELECT quantity, acb FROM Investments WHERE account_id = ? AND stock_id = ?";
-        try (PreparedStatement checkStmt = connection.prepareStatement(checkInvestmentSQL)) {
-            checkStmt.setInt(1, accountId);
-            checkStmt.setInt(2, stockId);
-            ResultSet rs = checkStmt.executeQuery();
-            if (rs.next()) {
-                int existingQuantity = rs.getInt("quantity");
-                double existingACB = rs.getDouble("acb");
-                double updatedACB;
-
-                if ("buy".equalsIgnoreCase(transactionType)) {
-                    int newQuantity = existingQuantity + sharesExchanged;
-                    // Calculate total cost of all shares before this purchase
-                    double totalCostBeforePurchase = existingACB * existingQuantity;
-                    // Calculate total cost of new purchase
-                    double purchaseCost = pricePerShare * sharesExchanged;
-                    // Update ACB to reflect new average
-                    updatedACB = (totalCostBeforePurchase + purchaseCost) / newQuantity;
-                    updateInvestment(accountId, stockId, newQuantity, updatedACB, connection); // Multiply ACB by newQuantity to store total cost, not per-share cost
-                } else if ("sell".equalsIgnoreCase(transactionType)) {
-                    int newQuantity = existingQuantity - sharesExchanged;
-                    updateInvestment(accountId, stockId, newQuantity, existingACB, connection);
+    private void writeBatchAccounts(Collection<BatchAccount> accounts, Connection connection) throws SQLException {
+        String updateCashSQL = "UPDATE Accounts SET cash_balance = ? WHERE account_id = ?";
+        String upsertPositionSQL = "INSERT INTO Investments (account_id, stock_id, quantity, acb) VALUES (?, ?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE quantity = ?, acb = ?";
+        try (PreparedStatement cashStmt = connection.prepareStatement(updateCashSQL);
+             PreparedStatement positionStmt = connection.prepareStatement(upsertPositionSQL)) {
+            int cashUpdates = 0;
+            int positionUpdates = 0;
+            for (BatchAccount account : accounts) {
+                if (account.cashChanged) {
+                    cashStmt.setDouble(1, account.cash);
+                    cashStmt.setInt(2, account.accountId);
+                    cashStmt.addBatch();
+                    cashUpdates++;
                 }
-            } else if ("buy".equalsIgnoreCase(transactionType)) {
-                insertNewInvestment(accountId, stockId, sharesExchanged, pricePerShare, connection);
+                for (Map.Entry<Integer, BatchPosition> entry : account.positions.entrySet()) {
+                    BatchPosition position = entry.getValue();
+                    if (position.changed) {
+                        positionStmt.setInt(1, account.accountId);
+                        positionStmt.setInt(2, entry.getKey());
+                        positionStmt.setDouble(3, position.quantity);
+                        positionStmt.setDouble(4, position.acb);
+                        positionStmt.setDouble(5, position.quantity);
+                        positionStmt.setDouble(6, position.acb);
+                        positionStmt.addBatch();
+                        positionUpdates++;
+                    }
+                }
+            }
+            if (cashUpdates > 0) {
+                cashStmt.executeBatch();
+            }
+            if (positionUpdates > 0) {
+                positionStmt.executeBatch();
             }
-            // Note: If selling but no existing investment found, throw an error or do nothing
         }
     }
 
     /**
-     * Updates the investment entry for the specified account and stock.
+     * Builds a comma separated list of n JDBC placeholders for an IN (...) clause.
+     */
+    private static String placeholders(int n) {
+        return String.join(", ", Collections.nCopies(n, "?"));
+    }
+
+    /**
+     * The ID and current price of a stock traded in a batch.
+     */
+    private static final class StockQuote {
+        final int stockId;
+        final double price;
+
+        StockQuote(int stockId, double price) {
+            this.stockId = stockId;
+            this.price = price;
+        }
+    }
+
+    /**
+     * A locked position of an account while a batch is replayed.
+     */
+    private static final class BatchPosition {
+        double quantity;
+        double acb;
+        boolean changed = false;
+
+        BatchPosition(double quantity, double acb) {
+            this.quantity = quantity;
+            this.acb = acb;
+        }
+    }
+
+    /**
+     * A locked account while a batch is replayed, with its cash balance and positions.
+     */
+    private static final class BatchAccount {
+        final int accountId;
+        final Map<Integer, BatchPosition> positions = new HashMap<>();
+        double cash;
+        boolean cashChanged = false;
+
+        BatchAccount(int accountId, double cash) {
+            this.accountId = accountId;
+            this.cash = cash;
+        }
+
+        /**
+         * Applies one order to this account with the same rules as tradeShares.
+         *
+         * @param order  the order to apply
+         * @param quotes the stock ID and price of every traded symbol
+         * @return true if the order was applied, false if it was rejected
+         */
+        boolean apply(TradeOrder order, Map<String, StockQuote> quotes) {
+            int sharesExchanged = order.getSharesExchanged();
+            if ("cash".equalsIgnoreCase(order.getStockSymbol())) {
+                cash = Decimals.roundToCents(cash + sharesExchanged);
+                cashChanged = true;
+                return true;
+            }
+            StockQuote quote = quotes.get(order.getStockSymbol());
+            if (quote == null) {
+                return false; // Stock symbol does not exist
+            }
+            double transactionAmount = quote.price * sharesExchanged;
+            BatchPosition position = positions.get(quote.stockId);
+            if (sharesExchanged > 0) {
+                if (cash < transactionAmount) {
+                    return false; // Not enough cash to complete the purchase
+                }
+                if (position == null) {
+                    position = new BatchPosition(0, 0);
+                    positions.put(quote.stockId, position);
+                }
+                position.acb = Decimals.roundToCents((position.acb * position.quantity + transactionAmount) / (position.quantity + sharesExchanged));
+                position.quantity = Decimals.roundToCents(position.quantity + sharesExchanged);
+            } else {
+                if (position == null || position.quantity < -sharesExchanged) {
+                    return false; // Not enough shares to sell
+                }
+                position.quantity = Decimals.roundToCents(position.quantity + sharesExchanged);
+            }
+            cash = Decimals.roundToCents(cash - transactionAmount);
+            cashChanged = true;
+            position.changed = true;
+            return true;
+        }
+    }
+
+    /**
+     * Updates the share balance for the specified account and stock.
      *
-     * @param accountId   the ID of the account
-     * @param stockId     the ID of the stock
-     * @param newQuantity the new quantity of shares
-     * @param newACB      the new average cost basis (ACB)
-     * @param connection  the database connection
+     * @param accountId       the ID of the account
+     * @param sharesExchanged the number of shares being exchanged
+     * @param connection      the database connection
+     * @param stock_id        the ID of the stock
      * @throws SQLException if a database error occurs
      */
-    private void updateInvestment(int accountId, int stockId, int newQuantity, double newACB, Connection connection) throws SQLException {
-        String updateSQL = "UPDATE Investments SET quantity = ?, acb = ? WHERE account_id = ? AND stock_id = ?";
-        try (PreparedStatement updateStmt = connection.prepareStatement(updateSQL)) {
-            updateStmt.setInt(1, newQuantity);
-            updateStmt.setDouble(2, newACB);
-            updateStmt.setInt(3, accountId);
-            updateStmt.setInt(4, stockId);
-            updateStmt.executeUpdate();
+    private void updateShareBalance(int accountId, int sharesExchanged, Connection connection, int stock_id) throws SQLException {
+        String update = "INSERT INTO Investments (account_id,stock_id,quantity) VALUES (?, ?, ?)";
+        try (PreparedStatement stmt = connection.prepareStatement(update)) {
+            stmt.setInt(1, accountId);
+            stmt.setInt(2, stock_id);
+            stmt.setInt(3, sharesExchanged);
+            stmt.executeUpdate();
         }
     }
 
     /**
-     * Inserts a new investment entry for the specified account and stock.
+     * Updates the cash balance for the specified account.
      *
      * @param accountId  the ID of the account
-     * @param stockId    the ID of the stock
-     * @param quantity   the quantity of shares
-     * @param acb        the average cost basis (ACB)
+     * @param amount     the amount to be added or subtracted from the cash balance
      * @param connection the database connection
+     * @return true if the balance was updated, false if the account does not exist
      * @throws SQLException if a database error occurs
      */
-    private void insertNewInvestment(int accountId, int stockId, int quantity, double acb, Connection connection) throws SQLException {
-        String insertSQL = "INSERT INTO Investments (account_id, stock_id, quantity, acb) VALUES (?, ?, ?, ?)";
-        try (PreparedStatement insertStmt = connection.prepareStatement(insertSQL)) {
-            insertStmt.setInt(1, accountId);
-            insertStmt.setInt(2, stockId);
-            insertStmt.setInt(3, quantity);
-            insertStmt.setDouble(4, acb);
-            insertStmt.executeUpdate();
+    private boolean updateCashBalance(int accountId, double amount, Connection connection) throws SQLException {
+        String update = "UPDATE Accounts SET cash_balance = cash_balance + ? WHERE account_id = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(update)) {
+            stmt.setDouble(1, amount);
+            stmt.setInt(2, accountId);
+            return stmt.executeUpdate() > 0;
         }
     }
 
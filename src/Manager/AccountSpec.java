@@ -0,0 +1,48 @@
+package Manager;
+
+/**
+ * A single account in a batch of new accounts: the same arguments createAccount takes for one account.
+ */
+public class AccountSpec {
+
+    private final int clientId;
+    private final int financialAdvisorId;
+    private final String accountName;
+    private final String profileType;
+    private final boolean reinvest;
+
+    /**
+     * @param clientId           the ID of the client associated with the account
+     * @param financialAdvisorId the ID of the financial advisor associated with the account
+     * @param accountName        the name of the account
+     * @param profileType        the type of profile associated with the account
+     * @param reinvest           indicates whether the account reinvests
+     */
+    public AccountSpec(int clientId, int financialAdvisorId, String accountName, String profileType, boolean reinvest) {
+        this.clientId = clientId;
+        this.financialAdvisorId = financialAdvisorId;
+        this.accountName = accountName;
+        this.profileType = profileType;
+        this.reinvest = reinvest;
+    }
+
+    public int getClientId() {
+        return clientId;
+    }
+
+    public int getFinancialAdvisorId() {
+        return financialAdvisorId;
+    }
+
+    public String getAccountName() {
+        return accountName;
+    }
+
+    public String getProfileType() {
+        return profileType;
+    }
+
+    public boolean isReinvest() {
+        return reinvest;
+    }
+}
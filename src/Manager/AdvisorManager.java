@@ -3,15 +3,19 @@ package Manager;
 import Database.ConnectionEstablisher;
 
 import java.sql.*;
+import java.util.List;
 
 public class AdvisorManager {
 
     /**
      * The connection establisher used for connecting to the database.
      */
-    ConnectionEstablisher connectionEstablisher = new ConnectionEstablisher();
+    ConnectionEstablisher connectionEstablisher;
+    PortfolioEvents portfolioEvents;
 
-    public AdvisorManager() {
+    public AdvisorManager(ConnectionEstablisher connectionEstablisher, PortfolioEvents portfolioEvents) {
+        this.connectionEstablisher = connectionEstablisher;
+        this.portfolioEvents = portfolioEvents;
     }
 
     /**
@@ -56,6 +60,17 @@ public class AdvisorManager {
         }
     }
 
+    /**
+     * Adds many advisors at once, inserting them in chunks with one JDBC batch per transaction.
+     * A name that already exists, or that appears earlier in the list, is reported and not added.
+     *
+     * @param advisorNames the names of the advisors to add
+     * @return the result of each advisor in input order, holding the new ID or why it was not added
+     */
+    public OnboardingResult[] addAdvisors(List<String> advisorNames) {
+        return new NameBatchInserter(connectionEstablisher, "Advisors", "advisorName", "Advisor").insertAll(advisorNames);
+    }
+
     /**
      * Changes the advisor associated with a specified account.
      *
@@ -84,6 +99,7 @@ public class AdvisorManager {
 
                     // Check if the update was successful
                     if (rowsAffected > 0) {
+                        portfolioEvents.advisorChanged(accountId, newAdvisorId);
                         return true;
                     } else {
                         return false;
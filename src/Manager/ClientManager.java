@@ -3,16 +3,17 @@ package Manager;
 import Database.ConnectionEstablisher;
 
 import java.sql.*;
+import java.util.List;
 
 public class ClientManager {
 
     /**
      * The connection establisher used for connecting to the database.
      */
-    ConnectionEstablisher connectionEstablisher = new ConnectionEstablisher();
-
-    public ClientManager() {
+    ConnectionEstablisher connectionEstablisher;
 
+    public ClientManager(ConnectionEstablisher connectionEstablisher) {
+        this.connectionEstablisher = connectionEstablisher;
     }
 
 
@@ -58,4 +59,15 @@ public class ClientManager {
         }
     }
 
+    /**
+     * Adds many clients at once, inserting them in chunks with one JDBC batch per transaction.
+     * A name that already exists, or that appears earlier in the list, is reported and not added.
+     *
+     * @param clientNames the names of the clients to add
+     * @return the result of each client in input order, holding the new ID or why it was not added
+     */
+    public OnboardingResult[] addClients(List<String> clientNames) {
+        return new NameBatchInserter(connectionEstablisher, "Clients", "clientName", "Client").insertAll(clientNames);
+    }
+
 }
@@ -1,69 +1,290 @@
 package Manager;
 
 import Database.ConnectionEstablisher;
+import Database.PriceTable;
+import Database.ReferenceDataCache;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class DividendManager {
-    ConnectionEstablisher connectionEstablisher = new ConnectionEstablisher();
-    AccountManager accountManager = new AccountManager();
 
-    public DividendManager() {
+    // Number of holder accounts paid per committed chunk
+    private static final int DIVIDEND_CHUNK_SIZE = 1000;
+    // Number of threads a dividend run is spread across; each holds one pooled connection while it works
+    public static final int DEFAULT_DIVIDEND_WORKERS = 4;
+
+    private static final String RUN_RUNNING = "RUNNING";
+    private static final String RUN_COMPLETED = "COMPLETED";
+
+    ConnectionEstablisher connectionEstablisher;
+    ReferenceDataCache referenceDataCache;
+    PriceTable priceTable;
+    PortfolioEvents portfolioEvents;
+
+    public DividendManager(ConnectionEstablisher connectionEstablisher, ReferenceDataCache referenceDataCache, PriceTable priceTable,
+                           PortfolioEvents portfolioEvents) {
+        this.connectionEstablisher = connectionEstablisher;
+        this.referenceDataCache = referenceDataCache;
+        this.priceTable = priceTable;
+        this.portfolioEvents = portfolioEvents;
     }
 
     /**
-     * Disburses dividends to client accounts and the firm for a given stock.
+     * Disburses dividends to client accounts and the firm for a given stock, using the default number of workers.
      *
      * @param stockSymbol      the symbol of the stock for which dividends are disbursed
      * @param dividendPerShare the dividend amount per share
      * @return the number of fractional shares added to the firm due to dividend reinvestment
      */
     public int disburseDividend(String stockSymbol, double dividendPerShare) {
-        double sharesToBuyForCompany = 0.0;
+        return disburseDividend(stockSymbol, dividendPerShare, DEFAULT_DIVIDEND_WORKERS);
+    }
+
+    /**
+     * Disburses dividends to client accounts and the firm for a given stock.
+     * The run is recorded in DividendRuns, and the holders are split into account ID ranges, one per worker.
+     * Each worker pays its range in account_id order, one page of DIVIDEND_CHUNK_SIZE accounts per transaction,
+     * and every page commits together with the range's checkpoint. An interrupted run can therefore be
+     * finished with resumeDividendRun without paying any account twice. The firm's pool of fractional
+     * shares is settled once every range has been paid.
+     *
+     * @param stockSymbol      the symbol of the stock for which dividends are disbursed
+     * @param dividendPerShare the dividend amount per share
+     * @param workers          the number of threads to spread the holders across
+     * @return the number of fractional shares added to the firm due to dividend reinvestment,
+     * or 0 if the run failed or was interrupted
+     */
+    public int disburseDividend(String stockSymbol, double dividendPerShare, int workers) {
+        int runId = startDividendRun(stockSymbol, dividendPerShare, Math.max(1, workers));
+        if (runId == -1) {
+            return 0;
+        }
+        return processDividendRun(runId);
+    }
+
+    /**
+     * Finishes a dividend run that was interrupted, paying only the accounts its checkpoints have not reached.
+     * The dividend and share price recorded when the run started are used, so a resumed run pays the same
+     * amounts as an uninterrupted one. Resuming a completed run just returns its result.
+     *
+     * @param runId the ID of the dividend run
+     * @return the number of fractional shares added to the firm due to dividend reinvestment,
+     * or 0 if the run failed again or does not exist
+     */
+    public int resumeDividendRun(int runId) {
+        return processDividendRun(runId);
+    }
+
+    /**
+     * @return the IDs of the dividend runs that were started but have not completed
+     */
+    public List<Integer> getUnfinishedDividendRuns() {
+        List<Integer> runIds = new ArrayList<>();
+        Connection connection = connectionEstablisher.establishConnection();
+        if (connection != null) {
+            String sql = "SELECT run_id FROM DividendRuns WHERE status = ? ORDER BY run_id";
+            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                stmt.setString(1, RUN_RUNNING);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        runIds.add(rs.getInt("run_id"));
+                    }
+                }
+            } catch (SQLException e) {
+                System.out.println("SQL error occurred: " + e.getMessage());
+            } finally {
+                connectionEstablisher.closeConnection(connection);
+            }
+        } else {
+            System.out.println("Failed to establish database connection.");
+        }
+        return runIds;
+    }
+
+    /**
+     * Records a new dividend run and splits the holders of the stock into account ID ranges.
+     * Small runs get a single range so they are paid on the calling thread.
+     *
+     * @param stockSymbol      the symbol of the stock for which dividends are disbursed
+     * @param dividendPerShare the dividend amount per share
+     * @param workers          the largest number of ranges to create
+     * @return the ID of the new run, or -1 if it could not be started
+     */
+    private int startDividendRun(String stockSymbol, double dividendPerShare, int workers) {
         Connection connection = connectionEstablisher.establishConnection();
         if (connection != null) {
             try {
-                int stockId = fetchStockId(stockSymbol, connection);
+                int stockId = referenceDataCache.getStockId(connection, stockSymbol);
                 if (stockId == -1) {
                     throw new SQLException("Stock Symbol does not exist");
                 }
+                double currentPricePerShare = priceTable.getPrice(connection, stockId);
 
-                // Process dividends for each account holding this stock
-                String sql = "SELECT i.account_id, i.quantity, a.reinvest " +
-                        "FROM Investments i " +
-                        "JOIN Accounts a ON i.account_id = a.account_id " +
-                        "WHERE i.stock_id = ?";
-                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-                    stmt.setInt(1, stockId);
-                    ResultSet rs = stmt.executeQuery();
+                connection.setAutoCommit(false);
+                try {
+                    int holders = 0;
+                    int lowestAccountId = 0;
+                    int highestAccountId = 0;
+                    String holdersSql = "SELECT COUNT(*) AS holders, MIN(account_id) AS lowest, MAX(account_id) AS highest " +
+                            "FROM Investments WHERE stock_id = ?";
+                    try (PreparedStatement stmt = connection.prepareStatement(holdersSql)) {
+                        stmt.setInt(1, stockId);
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            if (rs.next() && rs.getInt("holders") > 0) {
+                                holders = rs.getInt("holders");
+                                lowestAccountId = rs.getInt("lowest") - 1;
+                                highestAccountId = rs.getInt("highest");
+                            }
+                        }
+                    }
 
-                    while (rs.next()) {
-                        int accountId = rs.getInt("account_id");
-                        double quantity = rs.getDouble("quantity");
-                        boolean reinvest = rs.getBoolean("reinvest");
-                        double totalDividend = quantity * dividendPerShare;
-                        double currentPricePerShare = fetchCurrentPricePerShare(stockId, connection);
-                        double sharesToBuy = totalDividend / currentPricePerShare;
-                        if (reinvest) {
-
-                            int wholeSharesToBuy = (int) sharesToBuy; // Extract whole part
-                            double fractionalSharesToBuy = sharesToBuy - wholeSharesToBuy; // Extract fractional part
-                            sharesToBuyForCompany += fractionalSharesToBuy;
-
-                            // Buy whole shares
-                            purchaseSharesForAccount(accountId, stockId, sharesToBuy, connection);
-                            // Manage fractional shares for the firm
-                        } else {
-                            // Update cash balance directly if not reinvesting
-                            updateCashBalance(accountId, totalDividend, connection);
+                    int runId = -1;
+                    String insertRunSql = "INSERT INTO DividendRuns (stock_id, dividend_per_share, price_per_share, status) VALUES (?, ?, ?, ?)";
+                    try (PreparedStatement stmt = connection.prepareStatement(insertRunSql, Statement.RETURN_GENERATED_KEYS)) {
+                        stmt.setInt(1, stockId);
+                        stmt.setDouble(2, dividendPerShare);
+                        stmt.setDouble(3, currentPricePerShare);
+                        stmt.setString(4, RUN_RUNNING);
+                        stmt.executeUpdate();
+                        try (ResultSet rs = stmt.getGeneratedKeys()) {
+                            if (rs.next()) {
+                                runId = rs.getInt(1);
+                            }
                         }
                     }
-                    return manageFirmFractionalShares(stockId, sharesToBuyForCompany, connection);
+                    if (runId == -1) {
+                        throw new SQLException("Failed to record the dividend run.");
+                    }
+
+                    // Each range covers (last_account_id, range_end]; a range's checkpoint starts at its lower bound
+                    int partitions = Math.max(1, Math.min(workers, (holders + DIVIDEND_CHUNK_SIZE - 1) / DIVIDEND_CHUNK_SIZE));
+                    long span = (long) highestAccountId - lowestAccountId;
+                    String insertPartitionSql = "INSERT INTO DividendRunPartitions (run_id, partition_no, range_end, last_account_id) VALUES (?, ?, ?, ?)";
+                    try (PreparedStatement stmt = connection.prepareStatement(insertPartitionSql)) {
+                        for (int partition = 0; partition < partitions; partition++) {
+                            stmt.setInt(1, runId);
+                            stmt.setInt(2, partition);
+                            stmt.setInt(3, (int) (lowestAccountId + span * (partition + 1) / partitions));
+                            stmt.setInt(4, (int) (lowestAccountId + span * partition / partitions));
+                            stmt.addBatch();
+                        }
+                        stmt.executeBatch();
+                    }
+                    connection.commit();
+                    return runId;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
                 }
+            } catch (SQLException e) {
+                System.out.println("SQL error occurred: " + e.getMessage());
+            } finally {
+                connectionEstablisher.closeConnection(connection);
+            }
+        } else {
+            System.out.println("Failed to establish database connection.");
+        }
+        return -1;
+    }
 
+    /**
+     * Pays every range of a run that is not finished yet, then settles the firm's fractional shares.
+     *
+     * @param runId the ID of the dividend run
+     * @return the number of whole shares added to the firm, or 0 if the run could not be finished
+     */
+    private int processDividendRun(int runId) {
+        DividendRun run = loadDividendRun(runId);
+        if (run == null) {
+            return 0;
+        }
+        if (RUN_COMPLETED.equals(run.status)) {
+            return run.firmShares;
+        }
+
+        boolean allPaid = true;
+        if (run.openPartitions.size() == 1) {
+            allPaid = payPartition(run, run.openPartitions.get(0));
+        } else if (!run.openPartitions.isEmpty()) {
+            ExecutorService workers = Executors.newFixedThreadPool(run.openPartitions.size(), runnable -> {
+                Thread thread = new Thread(runnable, "dividend-run-" + runId);
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                List<Callable<Boolean>> tasks = new ArrayList<>();
+                for (int partition : run.openPartitions) {
+                    tasks.add(() -> payPartition(run, partition));
+                }
+                for (Future<Boolean> result : workers.invokeAll(tasks)) {
+                    allPaid &= result.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                allPaid = false;
+            } catch (ExecutionException e) {
+                System.out.println("Dividend worker failed: " + e.getCause());
+                allPaid = false;
+            } finally {
+                workers.shutdownNow();
+            }
+        }
+
+        if (!allPaid) {
+            System.out.println("Dividend run " + runId + " was interrupted and can be resumed.");
+            return 0;
+        }
+        return settleDividendRun(run);
+    }
+
+    /**
+     * Loads a dividend run and the ranges it still has to pay.
+     *
+     * @param runId the ID of the dividend run
+     * @return the run, or null if it does not exist or could not be read
+     */
+    private DividendRun loadDividendRun(int runId) {
+        Connection connection = connectionEstablisher.establishConnection();
+        if (connection != null) {
+            try {
+                DividendRun run = null;
+                String runSql = "SELECT stock_id, dividend_per_share, price_per_share, status, firm_shares FROM DividendRuns WHERE run_id = ?";
+                try (PreparedStatement stmt = connection.prepareStatement(runSql)) {
+                    stmt.setInt(1, runId);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next()) {
+                            run = new DividendRun(runId, rs.getInt("stock_id"), rs.getDouble("dividend_per_share"),
+                                    rs.getDouble("price_per_share"), rs.getString("status"), rs.getInt("firm_shares"));
+                        }
+                    }
+                }
+                if (run == null) {
+                    throw new SQLException("Dividend run does not exist: " + runId);
+                }
+                String partitionsSql = "SELECT partition_no FROM DividendRunPartitions WHERE run_id = ? AND completed = FALSE ORDER BY partition_no";
+                try (PreparedStatement stmt = connection.prepareStatement(partitionsSql)) {
+                    stmt.setInt(1, runId);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            run.openPartitions.add(rs.getInt("partition_no"));
+                        }
+                    }
+                }
+                return run;
             } catch (SQLException e) {
                 System.out.println("SQL error occurred: " + e.getMessage());
             } finally {
@@ -72,71 +293,258 @@ public class DividendManager {
         } else {
             System.out.println("Failed to establish database connection.");
         }
-        return 0;
+        return null;
     }
 
     /**
-     * Fetches the stock ID for a given stock symbol from the database.
+     * Pays one range of a run, page by page, on a connection of its own.
      *
-     * @param stockSymbol the symbol of the stock
-     * @param connection  the database connection
-     * @return the ID of the stock, or -1 if the stock is not found
-     * @throws SQLException if a database access error occurs
+     * @param run       the dividend run
+     * @param partition the number of the range to pay
+     * @return true if the whole range has been paid, false if it stopped on an error
      */
-    private int fetchStockId(String stockSymbol, Connection connection) throws SQLException {
-        String sql = "SELECT stock_id FROM Stocks WHERE stockSymbol = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, stockSymbol);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return rs.getInt("stock_id");
+    private boolean payPartition(DividendRun run, int partition) {
+        Connection connection = connectionEstablisher.establishConnection();
+        if (connection != null) {
+            try {
+                connection.setAutoCommit(false);
+                while (payNextPage(run, partition, connection)) {
+                    // Keep paying until the range's checkpoint reaches its end
+                }
+                return true;
+            } catch (SQLException e) {
+                System.out.println("SQL error occurred while paying dividend run " + run.runId + ": " + e.getMessage());
+            } finally {
+                connectionEstablisher.closeConnection(connection);
             }
+        } else {
+            System.out.println("Failed to establish database connection.");
         }
-        return -1; // Return an invalid ID if stock not found
+        return false;
     }
 
     /**
-     * Fetches the current price per share for a given stock ID from the database.
+     * Pays the next page of holders after a range's checkpoint and moves the checkpoint past them,
+     * all in one transaction. The checkpoint row is locked first, so two resumptions of the same run
+     * can never pay the same page.
      *
-     * @param stockId    the ID of the stock
-     * @param connection the database connection
-     * @return the current price per share of the stock, or 1.0 if not found
-     * @throws SQLException if a database access error occurs
+     * @param run        the dividend run
+     * @param partition  the number of the range to pay
+     * @param connection the database connection, with auto-commit disabled
+     * @return true if there may be more holders left in the range
+     * @throws SQLException if a database access error occurs; the page is rolled back
      */
-    private double fetchCurrentPricePerShare(int stockId, Connection connection) throws SQLException {
-        String sql = "SELECT perShare_price FROM Stocks WHERE stock_id = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, stockId);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                return rs.getDouble("perShare_price");
+    private boolean payNextPage(DividendRun run, int partition, Connection connection) throws SQLException {
+        try {
+            int rangeEnd;
+            int lastAccountId;
+            double fractionalShares;
+            String checkpointSql = "SELECT range_end, last_account_id, fractional_shares, completed FROM DividendRunPartitions " +
+                    "WHERE run_id = ? AND partition_no = ? FOR UPDATE";
+            try (PreparedStatement stmt = connection.prepareStatement(checkpointSql)) {
+                stmt.setInt(1, run.runId);
+                stmt.setInt(2, partition);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next() || rs.getBoolean("completed")) {
+                        connection.commit();
+                        return false;
+                    }
+                    rangeEnd = rs.getInt("range_end");
+                    lastAccountId = rs.getInt("last_account_id");
+                    fractionalShares = rs.getDouble("fractional_shares");
+                }
+            }
+
+            // Keyset page: the next holders after the checkpoint, in account_id order, locked until the page commits
+            Map<Integer, Double> holdings = new LinkedHashMap<>();
+            int pageEnd = lastAccountId;
+            String pageSql = "SELECT account_id, quantity FROM Investments WHERE stock_id = ? AND account_id > ? AND account_id <= ? " +
+                    "ORDER BY account_id LIMIT ? FOR UPDATE";
+            try (PreparedStatement stmt = connection.prepareStatement(pageSql)) {
+                stmt.setInt(1, run.stockId);
+                stmt.setInt(2, lastAccountId);
+                stmt.setInt(3, rangeEnd);
+                stmt.setInt(4, DIVIDEND_CHUNK_SIZE);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        pageEnd = rs.getInt("account_id");
+                        holdings.put(pageEnd, rs.getDouble("quantity"));
+                    }
+                }
+            }
+            int holders = holdings.size();
+
+            Map<Integer, Double> reinvested = new HashMap<>();
+            if (holders > 0) {
+                creditCashDividends(run, lastAccountId, pageEnd, connection);
+                fractionalShares = reinvestDividends(run, lastAccountId, pageEnd, fractionalShares, reinvested, connection);
+            }
+            boolean rangePaid = holders < DIVIDEND_CHUNK_SIZE;
+            String advanceSql = "UPDATE DividendRunPartitions SET last_account_id = ?, fractional_shares = ?, completed = ? " +
+                    "WHERE run_id = ? AND partition_no = ?";
+            try (PreparedStatement stmt = connection.prepareStatement(advanceSql)) {
+                stmt.setInt(1, pageEnd);
+                stmt.setDouble(2, fractionalShares);
+                stmt.setBoolean(3, rangePaid);
+                stmt.setInt(4, run.runId);
+                stmt.setInt(5, partition);
+                stmt.executeUpdate();
             }
+            connection.commit();
+
+            for (Map.Entry<Integer, Double> holding : holdings.entrySet()) {
+                Double sharesBought = reinvested.get(holding.getKey());
+                if (sharesBought != null) {
+                    portfolioEvents.positionChanged(holding.getKey(), run.stockId, sharesBought);
+                } else {
+                    portfolioEvents.cashChanged(holding.getKey(), holding.getValue() * run.dividendPerShare);
+                }
+            }
+            return !rangePaid;
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
         }
-        return 1.0; // Default price if not found
     }
 
     /**
-     * Purchases shares for a specific account and updates the database accordingly.
+     * Pays the dividend in cash to every account in a page that holds the stock and does not reinvest, in one statement.
      *
-     * @param accountId   the ID of the account
-     * @param stockId     the ID of the stock
-     * @param sharesToBuy the number of shares to purchase
-     * @param connection  the database connection
+     * @param run            the dividend run
+     * @param afterAccount   the page covers account IDs above this one
+     * @param throughAccount the page covers account IDs up to and including this one
+     * @param connection     the database connection
      * @throws SQLException if a database access error occurs
      */
-    private void purchaseSharesForAccount(int accountId, int stockId, double sharesToBuy, Connection connection) throws SQLException {
-        // Assuming an Investments table that tracks the number of shares per account per stock
-        String sql = "INSERT INTO Investments (account_id, stock_id, quantity) VALUES (?, ?, ?) " +
-                "ON DUPLICATE KEY UPDATE quantity = quantity + ?";
+    private void creditCashDividends(DividendRun run, int afterAccount, int throughAccount, Connection connection) throws SQLException {
+        // A correlated subquery rather than UPDATE ... JOIN, so the statement also runs on the embedded backend
+        String sql = "UPDATE Accounts SET cash_balance = cash_balance + ? * " +
+                "(SELECT i.quantity FROM Investments i WHERE i.account_id = Accounts.account_id AND i.stock_id = ?) " +
+                "WHERE reinvest = FALSE AND account_id > ? AND account_id <= ? " +
+                "AND account_id IN (SELECT account_id FROM Investments WHERE stock_id = ?)";
         try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, accountId);
-            stmt.setInt(2, stockId);
-            stmt.setDouble(3, sharesToBuy);
-            stmt.setDouble(4, sharesToBuy); // For the UPDATE case
+            stmt.setDouble(1, run.dividendPerShare);
+            stmt.setInt(2, run.stockId);
+            stmt.setInt(3, afterAccount);
+            stmt.setInt(4, throughAccount);
+            stmt.setInt(5, run.stockId);
             stmt.executeUpdate();
         }
     }
 
+    /**
+     * Buys shares with the dividend for every account in a page that holds the stock and reinvests.
+     * The positions are locked while they are read, and the purchases are written back as one batch.
+     *
+     * @param run              the dividend run
+     * @param afterAccount     the page covers account IDs above this one
+     * @param throughAccount   the page covers account IDs up to and including this one
+     * @param fractionalShares the fractional shares accumulated by the range's earlier pages
+     * @param reinvested       filled with the shares bought for each reinvesting account
+     * @param connection       the database connection
+     * @return the fractional shares accumulated including this page, which the firm covers from its own holdings
+     * @throws SQLException if a database access error occurs
+     */
+    private double reinvestDividends(DividendRun run, int afterAccount, int throughAccount, double fractionalShares,
+                                     Map<Integer, Double> reinvested, Connection connection) throws SQLException {
+        double sharesToBuyForCompany = fractionalShares;
+        String selectSql = "SELECT account_id, quantity FROM Investments " +
+                "WHERE stock_id = ? AND account_id > ? AND account_id <= ? " +
+                "AND account_id IN (SELECT account_id FROM Accounts WHERE reinvest = TRUE) " +
+                "ORDER BY account_id FOR UPDATE";
+        String upsertSql = "INSERT INTO Investments (account_id, stock_id, quantity) VALUES (?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE quantity = quantity + ?";
+        try (PreparedStatement selectStmt = connection.prepareStatement(selectSql);
+             PreparedStatement upsertStmt = connection.prepareStatement(upsertSql)) {
+            selectStmt.setInt(1, run.stockId);
+            selectStmt.setInt(2, afterAccount);
+            selectStmt.setInt(3, throughAccount);
+            int purchases = 0;
+            try (ResultSet rs = selectStmt.executeQuery()) {
+                while (rs.next()) {
+                    double totalDividend = rs.getDouble("quantity") * run.dividendPerShare;
+                    double sharesToBuy = totalDividend / run.pricePerShare;
+                    int wholeSharesToBuy = (int) sharesToBuy; // Extract whole part
+                    sharesToBuyForCompany += sharesToBuy - wholeSharesToBuy; // Extract fractional part
+
+                    reinvested.put(rs.getInt("account_id"), sharesToBuy);
+                    upsertStmt.setInt(1, rs.getInt("account_id"));
+                    upsertStmt.setInt(2, run.stockId);
+                    upsertStmt.setDouble(3, sharesToBuy);
+                    upsertStmt.setDouble(4, sharesToBuy); // For the UPDATE case
+                    upsertStmt.addBatch();
+                    purchases++;
+                }
+            }
+            if (purchases > 0) {
+                upsertStmt.executeBatch();
+            }
+        }
+        return sharesToBuyForCompany;
+    }
+
+    /**
+     * Settles the firm's fractional shares for a run whose ranges have all been paid and marks it completed.
+     *
+     * @param run the dividend run
+     * @return the number of whole shares added to the firm, or 0 if the run could not be settled
+     */
+    private int settleDividendRun(DividendRun run) {
+        Connection connection = connectionEstablisher.establishConnection();
+        if (connection != null) {
+            try {
+                connection.setAutoCommit(false);
+                try {
+                    // Lock the run so a concurrent resumption cannot settle the firm's shares a second time
+                    String runSql = "SELECT status, firm_shares FROM DividendRuns WHERE run_id = ? FOR UPDATE";
+                    try (PreparedStatement stmt = connection.prepareStatement(runSql)) {
+                        stmt.setInt(1, run.runId);
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            if (rs.next() && RUN_COMPLETED.equals(rs.getString("status"))) {
+                                int firmShares = rs.getInt("firm_shares");
+                                connection.commit();
+                                return firmShares;
+                            }
+                        }
+                    }
+
+                    double sharesToBuyForCompany = 0.0;
+                    String partitionsSql = "SELECT fractional_shares FROM DividendRunPartitions WHERE run_id = ? ORDER BY partition_no";
+                    try (PreparedStatement stmt = connection.prepareStatement(partitionsSql)) {
+                        stmt.setInt(1, run.runId);
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            while (rs.next()) {
+                                sharesToBuyForCompany += rs.getDouble("fractional_shares");
+                            }
+                        }
+                    }
+                    // Manage fractional shares for the firm
+                    int firmShares = manageFirmFractionalShares(run.stockId, sharesToBuyForCompany, connection);
+
+                    String completeSql = "UPDATE DividendRuns SET status = ?, firm_shares = ? WHERE run_id = ?";
+                    try (PreparedStatement stmt = connection.prepareStatement(completeSql)) {
+                        stmt.setString(1, RUN_COMPLETED);
+                        stmt.setInt(2, firmShares);
+                        stmt.setInt(3, run.runId);
+                        stmt.executeUpdate();
+                    }
+                    connection.commit();
+                    return firmShares;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                System.out.println("SQL error occurred: " + e.getMessage());
+            } finally {
+                connectionEstablisher.closeConnection(connection);
+            }
+        } else {
+            System.out.println("Failed to establish database connection.");
+        }
+        return 0;
+    }
+
     /**
      * Manages fractional shares for the firm and updates the database accordingly.
      *
@@ -147,7 +555,7 @@ public class DividendManager {
      * @throws SQLException if a database access error occurs
      */
     private int manageFirmFractionalShares(int stockId, double fractionalSharesToAdd, Connection connection) throws SQLException {
-        String sql = "SELECT stocks_owned FROM FirmStockHoldings WHERE stock_id = ?";
+        String sql = "SELECT stocks_owned FROM FirmStockHoldings WHERE stock_id = ? FOR UPDATE";
         try (PreparedStatement selectStmt = connection.prepareStatement(sql)) {
             selectStmt.setInt(1, stockId);
             ResultSet rs = selectStmt.executeQuery();
@@ -187,26 +595,24 @@ public class DividendManager {
     }
 
     /**
-     * Updates the cash balance of an account in the database.
-     *
-     * @param accountId  the ID of the account
-     * @param amount     the amount to update the cash balance by
-     * @param connection the database connection
-     * @throws SQLException if a database access error occurs
+     * A dividend run as recorded in DividendRuns, with the ranges it still has to pay.
      */
-    private void updateCashBalance(int accountId, double amount, Connection connection) throws SQLException {
-        String sql = "UPDATE Accounts SET cash_balance = cash_balance + ? WHERE account_id = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setDouble(1, amount);
-            stmt.setInt(2, accountId);
-            int updatedRows = stmt.executeUpdate();
-            if (updatedRows > 0) {
-                System.out.println("Cash balance updated successfully for account ID: " + accountId);
-            } else {
-                System.out.println("Failed to update cash balance for account ID: " + accountId);
-            }
+    private static final class DividendRun {
+        final int runId;
+        final int stockId;
+        final double dividendPerShare;
+        final double pricePerShare;
+        final String status;
+        final int firmShares;
+        final List<Integer> openPartitions = new ArrayList<>();
+
+        DividendRun(int runId, int stockId, double dividendPerShare, double pricePerShare, String status, int firmShares) {
+            this.runId = runId;
+            this.stockId = stockId;
+            this.dividendPerShare = dividendPerShare;
+            this.pricePerShare = pricePerShare;
+            this.status = status;
+            this.firmShares = firmShares;
         }
     }
-
-
 }
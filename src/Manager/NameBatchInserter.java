@@ -0,0 +1,183 @@
+package Manager;
+
+import Database.ConnectionEstablisher;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * Inserts many rows into a table that holds a generated ID and a unique name, such as Clients or Advisors.
+ * The names are inserted in chunks, one transaction and one JDBC batch per chunk, and the generated IDs are
+ * returned in the order of the names, together with why any name was not added. A name that already exists, or that appears earlier in the same input,
+ * is reported and skipped before the batch runs, so one duplicate does not fail the rest of its chunk.
+ */
+class NameBatchInserter {
+
+    // Number of names inserted per transaction
+    private static final int CHUNK_SIZE = 1000;
+
+    private final ConnectionEstablisher connectionEstablisher;
+    private final String table;
+    private final String nameColumn;
+    private final String kind;
+
+    /**
+     * @param connectionEstablisher the connection provider
+     * @param table                 the table to insert into
+     * @param nameColumn            the unique name column of the table
+     * @param kind                  what a row is called in messages, such as "Client"
+     */
+    NameBatchInserter(ConnectionEstablisher connectionEstablisher, String table, String nameColumn, String kind) {
+        this.connectionEstablisher = connectionEstablisher;
+        this.table = table;
+        this.nameColumn = nameColumn;
+        this.kind = kind;
+    }
+
+    /**
+     * Inserts the names.
+     *
+     * @param names the names to insert
+     * @return the result of each name in input order, holding its generated ID or why it was not added
+     */
+    OnboardingResult[] insertAll(List<String> names) {
+        OnboardingResult[] results = new OnboardingResult[names.size()];
+        Arrays.fill(results, OnboardingResult.refused(OnboardingResult.Status.FAILED));
+        if (names.isEmpty()) {
+            return results;
+        }
+        Connection connection = connectionEstablisher.establishConnection();
+        if (connection != null) {
+            Set<String> seen = new HashSet<>();
+            try {
+                for (int start = 0; start < names.size(); start += CHUNK_SIZE) {
+                    insertChunk(names, start, Math.min(names.size(), start + CHUNK_SIZE), seen, results, connection);
+                }
+            } catch (SQLException e) {
+                System.out.println("SQL error occurred: " + e.getMessage());
+            } finally {
+                connectionEstablisher.closeConnection(connection);
+            }
+        } else {
+            System.out.println("Failed to establish database connection.");
+        }
+        return results;
+    }
+
+    /**
+     * Inserts the names from start up to but excluding end in one transaction. If the batch fails, for example
+     * because another connection added one of the names meanwhile, the chunk is rolled back and its names are
+     * inserted one at a time instead.
+     *
+     * @param names      the names to insert
+     * @param start      the position of the first name of the chunk
+     * @param end        the position just past the last name of the chunk
+     * @param seen       the names of the input met so far
+     * @param results    the result of each name, filled in by this method
+     * @param connection the database connection
+     * @throws SQLException if the existing names could not be read
+     */
+    private void insertChunk(List<String> names, int start, int end, Set<String> seen, OnboardingResult[] results,
+                             Connection connection) throws SQLException {
+        Set<String> existing = existingNames(names.subList(start, end), connection);
+        List<Integer> positions = new ArrayList<>();
+        for (int i = start; i < end; i++) {
+            String name = names.get(i);
+            if (existing.contains(name) || !seen.add(name)) {
+                System.out.println(kind + " already exists: " + name);
+                results[i] = OnboardingResult.refused(OnboardingResult.Status.DUPLICATE);
+            } else {
+                positions.add(i);
+            }
+        }
+        if (positions.isEmpty()) {
+            return;
+        }
+
+        String insertSQL = "INSERT INTO " + table + " (" + nameColumn + ") VALUES (?)";
+        try (PreparedStatement insertStmt = connection.prepareStatement(insertSQL, Statement.RETURN_GENERATED_KEYS)) {
+            connection.setAutoCommit(false);
+            try {
+                for (int position : positions) {
+                    insertStmt.setString(1, names.get(position));
+                    insertStmt.addBatch();
+                }
+                insertStmt.executeBatch();
+                try (ResultSet generatedKeys = insertStmt.getGeneratedKeys()) {
+                    for (int position : positions) {
+                        if (!generatedKeys.next()) {
+                            throw new SQLException("Creating " + kind.toLowerCase() + " failed, no ID obtained.");
+                        }
+                        results[position] = OnboardingResult.created(generatedKeys.getInt(1));
+                    }
+                }
+                connection.commit();
+                return;
+            } catch (SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException rollbackError) {
+                    System.out.println("Failed to roll back " + kind.toLowerCase() + " batch: " + rollbackError.getMessage());
+                }
+            } finally {
+                connection.setAutoCommit(true);
+            }
+
+            // Insert the chunk row by row, so that only the names that really clash are refused
+            for (int position : positions) {
+                results[position] = insertOne(names.get(position), insertStmt);
+            }
+        }
+    }
+
+    /**
+     * Inserts one name outside any transaction.
+     *
+     * @param name       the name
+     * @param insertStmt the prepared insert statement
+     * @return the result of the name, holding its generated ID or why it was not added
+     */
+    private OnboardingResult insertOne(String name, PreparedStatement insertStmt) {
+        try {
+            insertStmt.setString(1, name);
+            insertStmt.executeUpdate();
+            try (ResultSet generatedKeys = insertStmt.getGeneratedKeys()) {
+                if (generatedKeys.next()) {
+                    return OnboardingResult.created(generatedKeys.getInt(1));
+                }
+            }
+        } catch (SQLException e) {
+            if (e.getSQLState() != null && e.getSQLState().startsWith("23")) { // Unique constraint violation
+                System.out.println(kind + " already exists: " + name);
+                return OnboardingResult.refused(OnboardingResult.Status.DUPLICATE);
+            }
+            System.out.println("SQL error occurred: " + e.getMessage());
+        }
+        return OnboardingResult.refused(OnboardingResult.Status.FAILED);
+    }
+
+    /**
+     * Reads which of the names are already in the table.
+     *
+     * @param names      the names to look up, at most CHUNK_SIZE of them
+     * @param connection the database connection
+     * @return the names that exist
+     * @throws SQLException if an SQL error occurs
+     */
+    private Set<String> existingNames(List<String> names, Connection connection) throws SQLException {
+        Set<String> existing = new HashSet<>();
+        String query = "SELECT " + nameColumn + " FROM " + table + " WHERE " + nameColumn + " IN (" +
+                String.join(", ", Collections.nCopies(names.size(), "?")) + ")";
+        try (PreparedStatement stmt = connection.prepareStatement(query)) {
+            for (int i = 0; i < names.size(); i++) {
+                stmt.setString(i + 1, names.get(i));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    existing.add(rs.getString(1));
+                }
+            }
+        }
+        return existing;
+    }
+}
@@ -0,0 +1,69 @@
+package Manager;
+
+/**
+ * The outcome of a single row of a bulk onboarding call such as addClients or createAccounts: the ID of the new
+ * client, advisor or account, or the reason it was not created.
+ */
+public class OnboardingResult {
+
+    /**
+     * Whether a row was created, and if not, why.
+     */
+    public enum Status {
+        CREATED,
+        // The name already exists, or appears earlier in the same batch
+        DUPLICATE,
+        CLIENT_NOT_FOUND,
+        ADVISOR_NOT_FOUND,
+        PROFILE_NOT_FOUND,
+        // The row failed validation before it reached the database
+        INVALID,
+        // The database refused the row for another reason, or could not be reached
+        FAILED
+    }
+
+    private final int id;
+    private final Status status;
+
+    /**
+     * @param id     the ID of the new row, or -1 if it was not created
+     * @param status whether the row was created, and if not, why
+     */
+    public OnboardingResult(int id, Status status) {
+        this.id = id;
+        this.status = status;
+    }
+
+    /**
+     * @param id the ID of the new row
+     * @return the result of a created row
+     */
+    static OnboardingResult created(int id) {
+        return new OnboardingResult(id, Status.CREATED);
+    }
+
+    /**
+     * @param status why the row was not created
+     * @return the result of a row that was not created
+     */
+    public static OnboardingResult refused(Status status) {
+        return new OnboardingResult(-1, status);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isCreated() {
+        return status == Status.CREATED;
+    }
+
+    @Override
+    public String toString() {
+        return isCreated() ? status + " " + id : status.toString();
+    }
+}
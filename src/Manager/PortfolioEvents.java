@@ -0,0 +1,61 @@
+package Manager;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Passes every portfolio change from the managers on to the registered listeners.
+ */
+public class PortfolioEvents implements PortfolioListener {
+
+    private final List<PortfolioListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param listener the listener to notify of every later change
+     */
+    public void addListener(PortfolioListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener the listener to stop notifying
+     */
+    public void removeListener(PortfolioListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void accountOpened(int accountId, int advisorId, int profileId, boolean reinvest) {
+        for (PortfolioListener listener : listeners) {
+            listener.accountOpened(accountId, advisorId, profileId, reinvest);
+        }
+    }
+
+    @Override
+    public void advisorChanged(int accountId, int advisorId) {
+        for (PortfolioListener listener : listeners) {
+            listener.advisorChanged(accountId, advisorId);
+        }
+    }
+
+    @Override
+    public void cashChanged(int accountId, double amount) {
+        for (PortfolioListener listener : listeners) {
+            listener.cashChanged(accountId, amount);
+        }
+    }
+
+    @Override
+    public void positionChanged(int accountId, int stockId, double quantityDelta) {
+        for (PortfolioListener listener : listeners) {
+            listener.positionChanged(accountId, stockId, quantityDelta);
+        }
+    }
+
+    @Override
+    public void priceChanged(int stockId, double perSharePrice) {
+        for (PortfolioListener listener : listeners) {
+            listener.priceChanged(stockId, perSharePrice);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package Manager;
+
+/**
+ * Receives the changes the managers make to accounts, positions and prices, so in-memory views of the
+ * portfolio can stay current without reading the database again. Callbacks run on the thread that made
+ * the change, after its transaction has committed, and must not block.
+ * Quantities and amounts are deltas; listeners round them to cents the way the DECIMAL columns do.
+ */
+public interface PortfolioListener {
+
+    /**
+     * @param accountId the ID of the new account
+     * @param advisorId the ID of the account's advisor
+     * @param profileId the ID of the account's investment profile
+     * @param reinvest  whether the account reinvests dividends
+     */
+    default void accountOpened(int accountId, int advisorId, int profileId, boolean reinvest) {
+    }
+
+    /**
+     * @param accountId the ID of the account
+     * @param advisorId the ID of the account's new advisor
+     */
+    default void advisorChanged(int accountId, int advisorId) {
+    }
+
+    /**
+     * @param accountId the ID of the account
+     * @param amount    the cash added to the account, negative if cash was taken out
+     */
+    default void cashChanged(int accountId, double amount) {
+    }
+
+    /**
+     * @param accountId     the ID of the account
+     * @param stockId       the ID of the stock
+     * @param quantityDelta the shares added to the position, negative if shares were sold
+     */
+    default void positionChanged(int accountId, int stockId, double quantityDelta) {
+    }
+
+    /**
+     * @param stockId       the ID of the stock
+     * @param perSharePrice the new price per share
+     */
+    default void priceChanged(int stockId, double perSharePrice) {
+    }
+}
@@ -1,16 +1,19 @@
 package Manager;
 
 import Database.ConnectionEstablisher;
+import Database.ReferenceDataCache;
 
 import java.sql.*;
 import java.util.Map;
 
 public class ProfileManager {
 
-    ConnectionEstablisher connectionEstablisher = new ConnectionEstablisher();
-
-    public ProfileManager() {
+    ConnectionEstablisher connectionEstablisher;
+    ReferenceDataCache referenceDataCache;
 
+    public ProfileManager(ConnectionEstablisher connectionEstablisher, ReferenceDataCache referenceDataCache) {
+        this.connectionEstablisher = connectionEstablisher;
+        this.referenceDataCache = referenceDataCache;
     }
 
     /**
@@ -58,19 +61,20 @@ public class ProfileManager {
                         try (ResultSet rs = insertProfileStmt.getGeneratedKeys()) {
                             if (rs.next()) {
                                 profileId = rs.getInt(1); // Retrieve the generated profile_id
+                                referenceDataCache.putProfile(profileId, profileName);
                             }
                         }
                         success = true;
                     }
                 }
-                if (!sectorHoldings.containsKey("cash")) {
-                    sectorHoldings.put("cash", 0);
+                if (!sectorHoldings.containsKey(ReferenceDataCache.CASH_SECTOR)) {
+                    sectorHoldings.put(ReferenceDataCache.CASH_SECTOR, 0);
                 }
                 // Then, insert sector holdings for this profile
                 String insertHoldingsSQL = "INSERT INTO Profile_Sector_Holdings (profile_id, sector_id, percentage) VALUES (?, ?, ?)";
                 try (PreparedStatement insertHoldingsStmt = connection.prepareStatement(insertHoldingsSQL)) {
                     for (Map.Entry<String, Integer> entry : sectorHoldings.entrySet()) {
-                        int sectorId = getSectorIdByName(connection, entry.getKey());
+                        int sectorId = referenceDataCache.getSectorId(connection, entry.getKey());
                         if (sectorId != -1) {
                             insertHoldingsStmt.setInt(1, profileId);
                             insertHoldingsStmt.setInt(2, sectorId);
@@ -103,65 +107,12 @@ public class ProfileManager {
      * @return true if all sectors are valid, false otherwise
      */
     private boolean areAllSectorsValid(Map<String, Integer> sectorHoldings) {
-        Connection connection = connectionEstablisher.establishConnection();
-        if (connection != null) {
-            try {
-                for (String sectorName : sectorHoldings.keySet()) {
-                    if (!isSectorValid(connection, sectorName)) {
-                        return false;
-                    }
-                }
-            } finally {
-                connectionEstablisher.closeConnection(connection);
+        for (String sectorName : sectorHoldings.keySet()) {
+            if (referenceDataCache.getSectorId(sectorName) == -1) {
+                return false;
             }
-        } else {
-            System.out.println("Failed to establish database connection.");
         }
         return true;
     }
 
-    /**
-     * Checks if a sector with the given name exists in the database.
-     *
-     * @param connection the database connection
-     * @param sectorName the name of the sector to check
-     * @return true if the sector exists, false otherwise
-     */
-    private boolean isSectorValid(Connection connection, String sectorName) {
-        String query = "SELECT COUNT(*) AS count FROM Sectors WHERE sectorName = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, sectorName);
-            ResultSet rs = stmt.executeQuery();
-            if (rs.next()) {
-                int count = rs.getInt("count");
-                return count > 0;
-            }
-        } catch (SQLException e) {
-            System.out.println("SQL error occurred: " + e.getMessage());
-        }
-        return false;
-    }
-
-    /**
-     * Retrieves the ID of a sector by its name from the database.
-     *
-     * @param connection the database connection
-     * @param sectorName the name of the sector
-     * @return the ID of the sector if found, or -1 if not found
-     * @throws SQLException if a database access error occurs
-     */
-    private int getSectorIdByName(Connection connection, String sectorName) throws SQLException {
-        String getSectorIdSQL = "SELECT sector_id FROM Sectors WHERE sectorName = ?";
-        try (PreparedStatement getSectorStmt = connection.prepareStatement(getSectorIdSQL)) {
-            getSectorStmt.setString(1, sectorName);
-            try (ResultSet rs = getSectorStmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("sector_id");
-                } else {
-                    return -1; // Sector not found
-                }
-            }
-        }
-    }
-
 }
@@ -0,0 +1,517 @@
+package Manager;
+
+import Database.ConnectionEstablisher;
+import Database.PriceTable;
+import Database.ReferenceDataCache;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Loads sectors, stocks and profiles in bulk from a CSV file, one record per line:
+ * <pre>
+ * sector,&lt;sectorName&gt;
+ * stock,&lt;companyName&gt;,&lt;stockSymbol&gt;,&lt;sectorName&gt;[,&lt;perSharePrice&gt;]
+ * holding,&lt;profileName&gt;,&lt;sectorName&gt;,&lt;percentage&gt;
+ * </pre>
+ * A profile is defined by all of its holding lines. Blank lines and lines starting with # are skipped, and a
+ * field holding a comma is written in double quotes.
+ * The file is read line by line, and the records are written after it has been read, sectors first, so that the
+ * records may come in any order. Names are resolved against the reference data cache, which is preloaded once,
+ * and each kind of record is written in chunks, one transaction and one JDBC batch per chunk. A chunk that fails
+ * is written again one record at a time, so that only the records the database refuses are rejected.
+ * A record is checked the same way defineSector, defineStock and defineProfile check it, and a record that
+ * would fail, such as a stock that already exists, is reported with its line number and skipped.
+ */
+public class ReferenceDataLoader {
+
+    // Number of records written per transaction
+    private static final int CHUNK_SIZE = 1000;
+    // The price a stock gets when the file gives none, as the Stocks table defaults it
+    private static final double DEFAULT_PRICE = 1;
+
+    ConnectionEstablisher connectionEstablisher;
+    ReferenceDataCache referenceDataCache;
+    PriceTable priceTable;
+
+    public ReferenceDataLoader(ConnectionEstablisher connectionEstablisher, ReferenceDataCache referenceDataCache, PriceTable priceTable) {
+        this.connectionEstablisher = connectionEstablisher;
+        this.referenceDataCache = referenceDataCache;
+        this.priceTable = priceTable;
+    }
+
+    /**
+     * Loads the sectors, stocks and profiles of a file.
+     *
+     * @param path the CSV file
+     * @return the line numbers of the records that were not loaded, in ascending order
+     * @throws IOException if the file could not be read
+     */
+    public List<Integer> load(Path path) throws IOException {
+        List<Integer> rejectedLines = new ArrayList<>();
+        List<SectorRecord> sectors = new ArrayList<>();
+        List<StockRecord> stocks = new ArrayList<>();
+        Map<String, ProfileRecord> profiles = new LinkedHashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                if (!parseRecord(lineNumber, splitFields(line), sectors, stocks, profiles)) {
+                    reject(rejectedLines, lineNumber, "Malformed record: " + line);
+                }
+            }
+        }
+
+        if (!referenceDataCache.preload()) {
+            System.out.println("Failed to load reference data; nothing was loaded.");
+            rejectedLines.addAll(allLines(sectors, stocks, profiles));
+            Collections.sort(rejectedLines);
+            return rejectedLines;
+        }
+        Connection connection = connectionEstablisher.establishConnection();
+        if (connection != null) {
+            try {
+                loadSectors(sectors, rejectedLines, connection);
+                loadStocks(stocks, rejectedLines, connection);
+                loadProfiles(new ArrayList<>(profiles.values()), rejectedLines, connection);
+            } finally {
+                connectionEstablisher.closeConnection(connection);
+            }
+        } else {
+            System.out.println("Failed to establish database connection.");
+            rejectedLines.addAll(allLines(sectors, stocks, profiles));
+        }
+        Collections.sort(rejectedLines);
+        return rejectedLines;
+    }
+
+    /**
+     * Adds one record to the records of its kind.
+     *
+     * @return false if the record is malformed
+     */
+    private boolean parseRecord(int lineNumber, List<String> fields, List<SectorRecord> sectors, List<StockRecord> stocks,
+                                Map<String, ProfileRecord> profiles) {
+        for (String field : fields) {
+            if (field.isEmpty()) {
+                return false;
+            }
+        }
+        try {
+            switch (fields.get(0).toLowerCase(Locale.ROOT)) {
+                case "sector":
+                    if (fields.size() != 2) {
+                        return false;
+                    }
+                    sectors.add(new SectorRecord(lineNumber, fields.get(1)));
+                    return true;
+                case "stock":
+                    if (fields.size() != 4 && fields.size() != 5) {
+                        return false;
+                    }
+                    double price = fields.size() == 5 ? Double.parseDouble(fields.get(4)) : DEFAULT_PRICE;
+                    if (!(price > 0)) {
+                        return false;
+                    }
+                    stocks.add(new StockRecord(lineNumber, fields.get(1), fields.get(2), fields.get(3), price));
+                    return true;
+                case "holding":
+                    if (fields.size() != 4) {
+                        return false;
+                    }
+                    profiles.computeIfAbsent(fields.get(1).toLowerCase(Locale.ROOT), key -> new ProfileRecord(fields.get(1)))
+                            .add(lineNumber, fields.get(2), Integer.parseInt(fields.get(3)));
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the new sectors.
+     */
+    private void loadSectors(List<SectorRecord> records, List<Integer> rejectedLines, Connection connection) {
+        List<SectorRecord> newSectors = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (SectorRecord record : records) {
+            if (referenceDataCache.getCachedSectorId(record.sectorName) != -1 || !seen.add(record.sectorName.toLowerCase(Locale.ROOT))) {
+                reject(rejectedLines, record.lineNumber, "Sector already exists: " + record.sectorName);
+            } else {
+                newSectors.add(record);
+            }
+        }
+
+        loadInChunks(newSectors, this::insertSectors, this::cacheSectors, rejectedLines, connection);
+    }
+
+    private int[] insertSectors(List<SectorRecord> records, Connection connection) throws SQLException {
+        int[] sectorIds = new int[records.size()];
+        String insertSectorSQL = "INSERT INTO Sectors (sectorName) VALUES (?)";
+        try (PreparedStatement insertSectorStmt = connection.prepareStatement(insertSectorSQL, Statement.RETURN_GENERATED_KEYS)) {
+            for (SectorRecord record : records) {
+                insertSectorStmt.setString(1, record.sectorName);
+                insertSectorStmt.addBatch();
+            }
+            insertSectorStmt.executeBatch();
+            readGeneratedKeys(insertSectorStmt, sectorIds);
+        }
+        return sectorIds;
+    }
+
+    private void cacheSectors(List<SectorRecord> records, int[] sectorIds) {
+        for (int i = 0; i < records.size(); i++) {
+            referenceDataCache.putSector(sectorIds[i], records.get(i).sectorName);
+        }
+    }
+
+    /**
+     * Writes the new stocks, resolving each sector from the cache.
+     */
+    private void loadStocks(List<StockRecord> records, List<Integer> rejectedLines, Connection connection) {
+        List<StockRecord> newStocks = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (StockRecord record : records) {
+            record.sectorId = referenceDataCache.getCachedSectorId(record.sectorName);
+            if (record.sectorId == -1) {
+                reject(rejectedLines, record.lineNumber, "Sector does not exist: " + record.sectorName);
+            } else if (referenceDataCache.getCachedStockId(record.stockSymbol) != -1 || !seen.add(record.stockSymbol.toLowerCase(Locale.ROOT))) {
+                reject(rejectedLines, record.lineNumber, "Stock already exists: " + record.companyName + " (" + record.stockSymbol + ")");
+            } else {
+                newStocks.add(record);
+            }
+        }
+
+        loadInChunks(newStocks, this::insertStocks, this::cacheStocks, rejectedLines, connection);
+    }
+
+    private int[] insertStocks(List<StockRecord> records, Connection connection) throws SQLException {
+        int[] stockIds = new int[records.size()];
+        String insertStockSQL = "INSERT INTO Stocks (stockName, stockSymbol, sector_id, perShare_price) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement insertStockStmt = connection.prepareStatement(insertStockSQL, Statement.RETURN_GENERATED_KEYS)) {
+            for (StockRecord record : records) {
+                insertStockStmt.setString(1, record.companyName);
+                insertStockStmt.setString(2, record.stockSymbol);
+                insertStockStmt.setInt(3, record.sectorId);
+                insertStockStmt.setDouble(4, record.perSharePrice);
+                insertStockStmt.addBatch();
+            }
+            insertStockStmt.executeBatch();
+            readGeneratedKeys(insertStockStmt, stockIds);
+        }
+        return stockIds;
+    }
+
+    private void cacheStocks(List<StockRecord> records, int[] stockIds) {
+        for (int i = 0; i < records.size(); i++) {
+            StockRecord record = records.get(i);
+            referenceDataCache.putStock(stockIds[i], record.stockSymbol, record.sectorId);
+            priceTable.setPrice(stockIds[i], record.perSharePrice);
+        }
+    }
+
+    /**
+     * Writes the new profiles with their sector holdings, each profile in the same transaction as its holdings.
+     */
+    private void loadProfiles(List<ProfileRecord> records, List<Integer> rejectedLines, Connection connection) {
+        List<ProfileRecord> newProfiles = new ArrayList<>();
+        int cashSectorId = referenceDataCache.getCachedSectorId(ReferenceDataCache.CASH_SECTOR);
+        for (ProfileRecord record : records) {
+            String reason = resolveHoldings(record, cashSectorId);
+            if (reason != null) {
+                for (int lineNumber : record.lineNumbers) {
+                    reject(rejectedLines, lineNumber, reason);
+                }
+            } else {
+                newProfiles.add(record);
+            }
+        }
+
+        loadInChunks(newProfiles, this::insertProfiles, this::cacheProfiles, rejectedLines, connection);
+    }
+
+    private int[] insertProfiles(List<ProfileRecord> records, Connection connection) throws SQLException {
+        int[] profileIds = new int[records.size()];
+        String insertProfileSQL = "INSERT INTO Profiles (profileName) VALUES (?)";
+        String insertHoldingsSQL = "INSERT INTO Profile_Sector_Holdings (profile_id, sector_id, percentage) VALUES (?, ?, ?)";
+        try (PreparedStatement insertProfileStmt = connection.prepareStatement(insertProfileSQL, Statement.RETURN_GENERATED_KEYS);
+             PreparedStatement insertHoldingsStmt = connection.prepareStatement(insertHoldingsSQL)) {
+            for (ProfileRecord record : records) {
+                insertProfileStmt.setString(1, record.profileName);
+                insertProfileStmt.addBatch();
+            }
+            insertProfileStmt.executeBatch();
+            readGeneratedKeys(insertProfileStmt, profileIds);
+            for (int i = 0; i < records.size(); i++) {
+                for (Map.Entry<Integer, Integer> holding : records.get(i).percentagesBySector.entrySet()) {
+                    insertHoldingsStmt.setInt(1, profileIds[i]);
+                    insertHoldingsStmt.setInt(2, holding.getKey());
+                    insertHoldingsStmt.setInt(3, holding.getValue());
+                    insertHoldingsStmt.addBatch();
+                }
+            }
+            insertHoldingsStmt.executeBatch();
+        }
+        return profileIds;
+    }
+
+    private void cacheProfiles(List<ProfileRecord> records, int[] profileIds) {
+        for (int i = 0; i < records.size(); i++) {
+            referenceDataCache.putProfile(profileIds[i], records.get(i).profileName);
+        }
+    }
+
+    /**
+     * Writes records in chunks, each chunk in one transaction. If a chunk fails, for example because another
+     * connection added one of its names meanwhile, it is rolled back and its records are written one at a time
+     * instead, so that only the records that really fail are rejected.
+     *
+     * @param records       the records to write
+     * @param inserter      inserts a list of records without committing and returns their generated IDs
+     * @param cacher        adds committed records and their IDs to the caches
+     * @param rejectedLines the line numbers of the records that were not loaded, added to by this method
+     * @param connection    the database connection
+     */
+    private <R extends CsvRecord> void loadInChunks(List<R> records, RecordInserter<R> inserter, BiConsumer<List<R>, int[]> cacher,
+                                                 List<Integer> rejectedLines, Connection connection) {
+        for (int start = 0; start < records.size(); start += CHUNK_SIZE) {
+            List<R> chunk = records.subList(start, Math.min(records.size(), start + CHUNK_SIZE));
+            if (write(chunk, inserter, cacher, connection) == null) {
+                continue;
+            }
+            for (R record : chunk) {
+                SQLException e = write(Collections.singletonList(record), inserter, cacher, connection);
+                if (e != null) {
+                    for (int lineNumber : record.lineNumbers()) {
+                        reject(rejectedLines, lineNumber, "SQL error occurred: " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes records in one transaction, rolling it back if it fails.
+     *
+     * @return null if the records were written, or the error that stopped them
+     */
+    private static <R> SQLException write(List<R> records, RecordInserter<R> inserter, BiConsumer<List<R>, int[]> cacher,
+                                          Connection connection) {
+        try {
+            connection.setAutoCommit(false);
+            int[] ids = inserter.insert(records, connection);
+            connection.commit();
+            cacher.accept(records, ids);
+            return null;
+        } catch (SQLException e) {
+            rollback(connection);
+            return e;
+        }
+    }
+
+    /**
+     * Resolves the sector of each holding of a profile and checks the profile as defineProfile does.
+     * A profile without a cash holding gets one of 0 percent.
+     *
+     * @param record       the profile
+     * @param cashSectorId the ID of the cash sector, or -1 if there is none
+     * @return the reason the profile cannot be defined, or null if it can
+     */
+    private String resolveHoldings(ProfileRecord record, int cashSectorId) {
+        if (referenceDataCache.getCachedProfileId(record.profileName) != -1) {
+            return "profileName already exists: " + record.profileName;
+        }
+        int totalPercentage = 0;
+        for (int i = 0; i < record.sectorNames.size(); i++) {
+            int sectorId = referenceDataCache.getCachedSectorId(record.sectorNames.get(i));
+            if (sectorId == -1) {
+                return "Sector does not exist: " + record.sectorNames.get(i);
+            }
+            if (record.percentagesBySector.put(sectorId, record.percentages.get(i)) != null) {
+                return "Sector listed twice in profile " + record.profileName + ": " + record.sectorNames.get(i);
+            }
+            totalPercentage += record.percentages.get(i);
+        }
+        if (totalPercentage != 100) {
+            return "The total of sector holdings percentages must equal 100.";
+        }
+        if (cashSectorId != -1) {
+            record.percentagesBySector.putIfAbsent(cashSectorId, 0);
+        }
+        return null;
+    }
+
+    /**
+     * Reads the keys generated by a batch insert, one per inserted row in insert order.
+     *
+     * @param stmt the statement that ran the batch
+     * @param ids  the array to write the keys to, one per inserted row
+     * @throws SQLException if fewer keys than rows were generated
+     */
+    private static void readGeneratedKeys(PreparedStatement stmt, int[] ids) throws SQLException {
+        try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+            for (int i = 0; i < ids.length; i++) {
+                if (!generatedKeys.next()) {
+                    throw new SQLException("Loading reference data failed, no ID obtained.");
+                }
+                ids[i] = generatedKeys.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * Rolls back the current transaction after it failed.
+     */
+    private static void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException rollbackError) {
+            System.out.println("Failed to roll back reference data load: " + rollbackError.getMessage());
+        }
+    }
+
+    private static void reject(List<Integer> rejectedLines, int lineNumber, String reason) {
+        System.out.println("Line " + lineNumber + ": " + reason);
+        rejectedLines.add(lineNumber);
+    }
+
+    private static List<Integer> allLines(List<SectorRecord> sectors, List<StockRecord> stocks, Map<String, ProfileRecord> profiles) {
+        List<Integer> lineNumbers = new ArrayList<>();
+        sectors.forEach(record -> lineNumbers.add(record.lineNumber));
+        stocks.forEach(record -> lineNumbers.add(record.lineNumber));
+        profiles.values().forEach(record -> lineNumbers.addAll(record.lineNumbers));
+        return lineNumbers;
+    }
+
+    /**
+     * Splits a CSV line into its trimmed fields. A field in double quotes may hold commas, and a doubled
+     * double quote inside it stands for one.
+     */
+    private static List<String> splitFields(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    /**
+     * Inserts records of one kind without committing them.
+     */
+    private interface RecordInserter<R> {
+        /**
+         * @return the generated ID of each record, in the order of the records
+         */
+        int[] insert(List<R> records, Connection connection) throws SQLException;
+    }
+
+    /**
+     * A record read from the file.
+     */
+    private interface CsvRecord {
+        /**
+         * @return the lines the record was read from
+         */
+        List<Integer> lineNumbers();
+    }
+
+    private static final class SectorRecord implements CsvRecord {
+        final int lineNumber;
+        final String sectorName;
+
+        SectorRecord(int lineNumber, String sectorName) {
+            this.lineNumber = lineNumber;
+            this.sectorName = sectorName;
+        }
+
+        @Override
+        public List<Integer> lineNumbers() {
+            return Collections.singletonList(lineNumber);
+        }
+    }
+
+    private static final class StockRecord implements CsvRecord {
+        final int lineNumber;
+        final String companyName;
+        final String stockSymbol;
+        final String sectorName;
+        final double perSharePrice;
+        int sectorId;
+
+        StockRecord(int lineNumber, String companyName, String stockSymbol, String sectorName, double perSharePrice) {
+            this.lineNumber = lineNumber;
+            this.companyName = companyName;
+            this.stockSymbol = stockSymbol;
+            this.sectorName = sectorName;
+            this.perSharePrice = perSharePrice;
+        }
+
+        @Override
+        public List<Integer> lineNumbers() {
+            return Collections.singletonList(lineNumber);
+        }
+    }
+
+    /**
+     * A profile and its holdings, gathered from all of its lines.
+     */
+    private static final class ProfileRecord implements CsvRecord {
+        final String profileName;
+        final List<Integer> lineNumbers = new ArrayList<>();
+        final List<String> sectorNames = new ArrayList<>();
+        final List<Integer> percentages = new ArrayList<>();
+        // Filled in once the sectors are resolved
+        final Map<Integer, Integer> percentagesBySector = new LinkedHashMap<>();
+
+        ProfileRecord(String profileName) {
+            this.profileName = profileName;
+        }
+
+        void add(int lineNumber, String sectorName, int percentage) {
+            lineNumbers.add(lineNumber);
+            sectorNames.add(sectorName);
+            percentages.add(percentage);
+        }
+
+        @Override
+        public List<Integer> lineNumbers() {
+            return lineNumbers;
+        }
+    }
+}
@@ -1,16 +1,23 @@
 package Manager;
 
 import Database.ConnectionEstablisher;
+import Database.ReferenceDataCache;
 
 import java.sql.*;
 
 public class SectorManager {
-    ConnectionEstablisher connectionEstablisher = new ConnectionEstablisher();
+    ConnectionEstablisher connectionEstablisher;
+    ReferenceDataCache referenceDataCache;
 
     /**
      * Constructor to initialize the SectorManager and ensure the existence of the "cash" sector.
+     *
+     * @param connectionEstablisher the shared provider of database connections
+     * @param referenceDataCache    the cache that new sectors are written through to
      */
-    public SectorManager() {
+    public SectorManager(ConnectionEstablisher connectionEstablisher, ReferenceDataCache referenceDataCache) {
+        this.connectionEstablisher = connectionEstablisher;
+        this.referenceDataCache = referenceDataCache;
         ensureCashSectorExists();
     }
 
@@ -20,18 +27,20 @@ public class SectorManager {
     private void ensureCashSectorExists() {
         // Check if the "cash" sector exists
         Connection connection = connectionEstablisher.establishConnection();
+        boolean cashSectorMissing = false;
         String checkSectorSQL = "SELECT COUNT(*) AS count FROM Sectors WHERE sectorName = 'cash'";
         try (PreparedStatement checkSectorStmt = connection.prepareStatement(checkSectorSQL)) {
             ResultSet rs = checkSectorStmt.executeQuery();
-            if (rs.next() && rs.getInt("count") == 0) {
-                // If not exists, insert the "cash" sector
-                addSector("cash");
-            }
+            cashSectorMissing = rs.next() && rs.getInt("count") == 0;
         } catch (SQLException e) {
             System.out.println("SQL error occurred while ensuring 'cash' sector exists: " + e.getMessage());
         } finally {
             connectionEstablisher.closeConnection(connection);
         }
+        // Insert after releasing the connection so the check never holds two pooled connections at once
+        if (cashSectorMissing) {
+            addSector(ReferenceDataCache.CASH_SECTOR);
+        }
     }
 
     /**
@@ -44,10 +53,15 @@ public class SectorManager {
         Connection connection = connectionEstablisher.establishConnection();
         if (connection != null) {
             String insertSectorSQL = "INSERT INTO Sectors (sectorName) VALUES (?)";
-            try (PreparedStatement insertSectorStmt = connection.prepareStatement(insertSectorSQL)) {
+            try (PreparedStatement insertSectorStmt = connection.prepareStatement(insertSectorSQL, Statement.RETURN_GENERATED_KEYS)) {
                 insertSectorStmt.setString(1, sectorName);
                 int rowsAffected = insertSectorStmt.executeUpdate();
                 if (rowsAffected > 0) {
+                    try (ResultSet rs = insertSectorStmt.getGeneratedKeys()) {
+                        if (rs.next()) {
+                            referenceDataCache.putSector(rs.getInt(1), sectorName);
+                        }
+                    }
                     return true;
                 }
             } catch (SQLException e) {
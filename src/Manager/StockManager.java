@@ -1,17 +1,31 @@
 package Manager;
 
 import Database.ConnectionEstablisher;
+import Database.PriceTable;
+import Database.ReferenceDataCache;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 public class StockManager {
-    ConnectionEstablisher connectionEstablisher = new ConnectionEstablisher();
-
-    public StockManager() {
-
+    ConnectionEstablisher connectionEstablisher;
+    ReferenceDataCache referenceDataCache;
+    PriceTable priceTable;
+    PortfolioEvents portfolioEvents;
+
+    public StockManager(ConnectionEstablisher connectionEstablisher, ReferenceDataCache referenceDataCache, PriceTable priceTable,
+                        PortfolioEvents portfolioEvents) {
+        this.connectionEstablisher = connectionEstablisher;
+        this.referenceDataCache = referenceDataCache;
+        this.priceTable = priceTable;
+        this.portfolioEvents = portfolioEvents;
     }
 
     /**
@@ -24,25 +38,27 @@ public class StockManager {
      */
 
     public boolean addStock(String companyName, String stockSymbol, String sectorName) {
+        // First, get the sector ID based on the sector name
+        int sectorId = referenceDataCache.getSectorId(sectorName);
+        if (sectorId == -1) {
+            System.out.println("Sector does not exist: " + sectorName);
+            return false;
+        }
         Connection connection = connectionEstablisher.establishConnection();
         if (connection != null) {
-            try {
-                // First, get the sector ID based on the sector name
-                int sectorId = getSectorIdByName(connection, sectorName);
-                if (sectorId == -1) {
-                    System.out.println("Sector does not exist: " + sectorName);
-                    return false;
-                }
-                String insertStockSQL = "INSERT INTO Stocks (stockName, stockSymbol, sector_id) VALUES (?, ?, ?)";
-
-                try (PreparedStatement insertStockStmt = connection.prepareStatement(insertStockSQL)) {
-                    insertStockStmt.setString(1, companyName);
-                    insertStockStmt.setString(2, stockSymbol);
-                    insertStockStmt.setInt(3, sectorId);
-                    int rowsAffected = insertStockStmt.executeUpdate();
-                    if (rowsAffected > 0) {
-                        return true;
+            String insertStockSQL = "INSERT INTO Stocks (stockName, stockSymbol, sector_id) VALUES (?, ?, ?)";
+            try (PreparedStatement insertStockStmt = connection.prepareStatement(insertStockSQL, Statement.RETURN_GENERATED_KEYS)) {
+                insertStockStmt.setString(1, companyName);
+                insertStockStmt.setString(2, stockSymbol);
+                insertStockStmt.setInt(3, sectorId);
+                int rowsAffected = insertStockStmt.executeUpdate();
+                if (rowsAffected > 0) {
+                    try (ResultSet rs = insertStockStmt.getGeneratedKeys()) {
+                        if (rs.next()) {
+                            referenceDataCache.putStock(rs.getInt(1), stockSymbol, sectorId);
+                        }
                     }
+                    return true;
                 }
             } catch (SQLException e) {
                 if (e.getSQLState().startsWith("23")) {
@@ -60,68 +76,32 @@ public class StockManager {
     }
 
     /**
-     * Retrieves the sector ID based on the sector name.
-     *
-     * @param connection the database connection
-     * @param sectorName the name of the sector
-     * @return the sector ID if found, -1 otherwise
-     * @throws SQLException if a SQL error occurs
-     */
-    private int getSectorIdByName(Connection connection, String sectorName) throws SQLException {
-        String getSectorIdSQL = "SELECT sector_id FROM Sectors WHERE sectorName = ?";
-        try (PreparedStatement getSectorStmt = connection.prepareStatement(getSectorIdSQL)) {
-            getSectorStmt.setString(1, sectorName);
-            try (ResultSet rs = getSectorStmt.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("sector_id");
-                } else {
-                    return -1; // Sector not found
-                }
-            }
-        }
-    }
-
-    /**
-     * Sets the price per share for a stock.
+     * Sets the price per share for a stock. The in-memory price table is updated once the database row is.
      *
      * @param stockSymbol   the symbol of the stock
      * @param perSharePrice the price per share to set
      * @return true if the stock price is successfully updated, false otherwise
+     * @throws SQLException if the stock does not exist
      */
     public boolean setStockPrice(String stockSymbol, double perSharePrice) throws SQLException {
+        // Check if the stock symbol exists
+        int stockId = referenceDataCache.getStockId(stockSymbol);
+        if (stockId == -1) {
+            throw new SQLException("Stock does not exist: " + stockSymbol);
+        }
         Connection connection = connectionEstablisher.establishConnection();
-
         if (connection != null) {
-            // Check if the stock symbol exists
-            boolean stockExists = false;
-            String checkStockExistsSQL = "SELECT COUNT(*) FROM Stocks WHERE stockSymbol = ?";
-
-            try (PreparedStatement checkStockStmt = connection.prepareStatement(checkStockExistsSQL)) {
-                checkStockStmt.setString(1, stockSymbol);
-                ResultSet resultSet = checkStockStmt.executeQuery();
-                if (resultSet.next()) {
-                    int count = resultSet.getInt(1);
-                    stockExists = (count > 0);
-                }
-            } catch (SQLException e) {
-                return false; // Return false if an error occurs during validation
-            }
-
-            if (!stockExists) {
-                throw new SQLException("Stock does not exist: " + stockSymbol);
-            }
-            String updateStockPriceSQL = "UPDATE Stocks SET perShare_price = ? WHERE stockSymbol = ?";
-
+            String updateStockPriceSQL = "UPDATE Stocks SET perShare_price = ? WHERE stock_id = ?";
             try (PreparedStatement updateStockStmt = connection.prepareStatement(updateStockPriceSQL)) {
                 updateStockStmt.setDouble(1, perSharePrice);
-                updateStockStmt.setString(2, stockSymbol);
-
+                updateStockStmt.setInt(2, stockId);
                 int rowsAffected = updateStockStmt.executeUpdate();
                 if (rowsAffected > 0) {
+                    priceTable.setPrice(stockId, perSharePrice);
+                    portfolioEvents.priceChanged(stockId, perSharePrice);
                     return true;
-                } else {
-                    return false;
                 }
+                return false;
             } catch (SQLException e) {
                 System.out.println("SQL error occurred: " + e.getMessage());
             } finally {
@@ -133,6 +113,59 @@ public class StockManager {
         return false; // Return false if database connection failed
     }
 
+    /**
+     * Sets the price per share of many stocks at once. All updates are sent as one JDBC batch in a
+     * single transaction, and the in-memory price table is updated once that transaction commits.
+     *
+     * @param perSharePrices the new price per share of each stock, keyed by stock symbol
+     * @return the symbols whose price was not updated: symbols of stocks that do not exist,
+     * or every symbol if the batch failed
+     */
+    public List<String> setStockPrices(Map<String, Double> perSharePrices) {
+        List<String> rejectedSymbols = new ArrayList<>();
+        Map<Integer, Double> pricesByStockId = new LinkedHashMap<>();
+        for (Map.Entry<String, Double> entry : perSharePrices.entrySet()) {
+            int stockId = referenceDataCache.getStockId(entry.getKey());
+            if (stockId == -1) {
+                rejectedSymbols.add(entry.getKey());
+            } else {
+                pricesByStockId.put(stockId, entry.getValue());
+            }
+        }
+        if (pricesByStockId.isEmpty()) {
+            return rejectedSymbols;
+        }
 
-
+        Connection connection = connectionEstablisher.establishConnection();
+        if (connection != null) {
+            String updateStockPriceSQL = "UPDATE Stocks SET perShare_price = ? WHERE stock_id = ?";
+            try (PreparedStatement updateStockStmt = connection.prepareStatement(updateStockPriceSQL)) {
+                connection.setAutoCommit(false);
+                for (Map.Entry<Integer, Double> entry : pricesByStockId.entrySet()) {
+                    updateStockStmt.setDouble(1, entry.getValue());
+                    updateStockStmt.setInt(2, entry.getKey());
+                    updateStockStmt.addBatch();
+                }
+                updateStockStmt.executeBatch();
+                connection.commit();
+                for (Map.Entry<Integer, Double> entry : pricesByStockId.entrySet()) {
+                    priceTable.setPrice(entry.getKey(), entry.getValue());
+                    portfolioEvents.priceChanged(entry.getKey(), entry.getValue());
+                }
+                return rejectedSymbols;
+            } catch (SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException rollbackError) {
+                    System.out.println("Failed to roll back price update: " + rollbackError.getMessage());
+                }
+                System.out.println("SQL error occurred: " + e.getMessage());
+            } finally {
+                connectionEstablisher.closeConnection(connection);
+            }
+        } else {
+            System.out.println("Failed to establish database connection.");
+        }
+        return new ArrayList<>(perSharePrices.keySet()); // Nothing was updated
+    }
 }
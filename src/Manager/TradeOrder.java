@@ -0,0 +1,34 @@
+package Manager;
+
+/**
+ * A single order in a batch of trades: the same arguments tradeShares takes for one trade.
+ */
+public class TradeOrder {
+
+    private final int accountId;
+    private final String stockSymbol;
+    private final int sharesExchanged;
+
+    /**
+     * @param accountId       the ID of the account involved in the transaction
+     * @param stockSymbol     the symbol of the stock being traded, or "cash" for a cash transaction
+     * @param sharesExchanged the number of shares being exchanged (positive for buying, negative for selling)
+     */
+    public TradeOrder(int accountId, String stockSymbol, int sharesExchanged) {
+        this.accountId = accountId;
+        this.stockSymbol = stockSymbol;
+        this.sharesExchanged = sharesExchanged;
+    }
+
+    public int getAccountId() {
+        return accountId;
+    }
+
+    public String getStockSymbol() {
+        return stockSymbol;
+    }
+
+    public int getSharesExchanged() {
+        return sharesExchanged;
+    }
+}
@@ -0,0 +1,257 @@
+package Reporting;
+
+import Database.ConnectionEstablisher;
+import Database.Decimals;
+import Database.PriceTable;
+import Manager.PortfolioListener;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The running market value and cash of every account, and the total of every advisor, held in memory.
+ * The index is loaded once at startup and then kept current from the portfolio events of the managers:
+ * a trade or dividend adjusts the accounts involved, and a price change applies the whole shares held
+ * times the change in price to every holder of the stock. Reading a value takes no SQL.
+ */
+public class AccountValuationIndex implements PortfolioListener {
+
+    ConnectionEstablisher connectionEstablisher;
+    PriceTable priceTable;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, AccountValuation> accounts = new HashMap<>();
+    private final Map<Integer, Set<Integer>> holdersByStock = new HashMap<>();
+    private final Map<Integer, Double> advisorValues = new HashMap<>();
+    // The price each position is currently valued at, which a price change is measured against
+    private final Map<Integer, Double> prices = new HashMap<>();
+    private boolean loaded;
+
+    public AccountValuationIndex(ConnectionEstablisher connectionEstablisher, PriceTable priceTable) {
+        this.connectionEstablisher = connectionEstablisher;
+        this.priceTable = priceTable;
+    }
+
+    /**
+     * Loads the cash and positions of every account from the database.
+     *
+     * @return true if the index was loaded, false otherwise
+     */
+    public boolean load() {
+        Connection connection = connectionEstablisher.establishConnection();
+        if (connection != null) {
+            lock.writeLock().lock();
+            try (Statement stmt = connection.createStatement()) {
+                accounts.clear();
+                holdersByStock.clear();
+                advisorValues.clear();
+                prices.clear();
+                try (ResultSet rs = stmt.executeQuery("SELECT account_id, advisor_id, cash_balance FROM Accounts")) {
+                    while (rs.next()) {
+                        AccountValuation account = new AccountValuation(rs.getInt("advisor_id"));
+                        account.cash = rs.getDouble("cash_balance");
+                        accounts.put(rs.getInt("account_id"), account);
+                    }
+                }
+                try (ResultSet rs = stmt.executeQuery("SELECT account_id, stock_id, quantity FROM Investments")) {
+                    while (rs.next()) {
+                        AccountValuation account = accounts.get(rs.getInt("account_id"));
+                        if (account != null) {
+                            int stockId = rs.getInt("stock_id");
+                            double quantity = rs.getDouble("quantity");
+                            if (quantity != 0) {
+                                account.quantities.put(stockId, quantity);
+                                account.investmentValue += wholeShares(quantity) * priceOf(connection, stockId);
+                                holdersByStock.computeIfAbsent(stockId, id -> new HashSet<>()).add(rs.getInt("account_id"));
+                            }
+                        }
+                    }
+                }
+                for (AccountValuation account : accounts.values()) {
+                    advisorValues.merge(account.advisorId, account.value(), Double::sum);
+                }
+                loaded = true;
+                return true;
+            } catch (SQLException e) {
+                System.out.println("SQL error occurred while loading account values: " + e.getMessage());
+            } finally {
+                lock.writeLock().unlock();
+                connectionEstablisher.closeConnection(connection);
+            }
+        } else {
+            System.out.println("Failed to establish database connection.");
+        }
+        return false;
+    }
+
+    /**
+     * @param accountId the ID of the account
+     * @return the market value of the account, or NaN if the account is not in the index
+     */
+    public double getAccountValue(int accountId) {
+        lock.readLock().lock();
+        try {
+            AccountValuation account = loaded ? accounts.get(accountId) : null;
+            return account == null ? Double.NaN : account.value();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param advisorId the ID of the advisor
+     * @return the total market value of the advisor's accounts, or NaN if the advisor has no accounts in the index
+     */
+    public double getAdvisorValue(int advisorId) {
+        lock.readLock().lock();
+        try {
+            Double value = loaded ? advisorValues.get(advisorId) : null;
+            return value == null ? Double.NaN : value;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void accountOpened(int accountId, int advisorId, int profileId, boolean reinvest) {
+        lock.writeLock().lock();
+        try {
+            if (loaded && !accounts.containsKey(accountId)) {
+                accounts.put(accountId, new AccountValuation(advisorId));
+                advisorValues.merge(advisorId, 0.0, Double::sum);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void advisorChanged(int accountId, int advisorId) {
+        lock.writeLock().lock();
+        try {
+            AccountValuation account = accounts.get(accountId);
+            if (account != null && account.advisorId != advisorId) {
+                double value = account.value();
+                advisorValues.merge(account.advisorId, -value, Double::sum);
+                advisorValues.merge(advisorId, value, Double::sum);
+                account.advisorId = advisorId;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void cashChanged(int accountId, double amount) {
+        lock.writeLock().lock();
+        try {
+            AccountValuation account = accounts.get(accountId);
+            if (account != null) {
+                double cash = Decimals.roundToCents(account.cash + amount);
+                advisorValues.merge(account.advisorId, cash - account.cash, Double::sum);
+                account.cash = cash;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void positionChanged(int accountId, int stockId, double quantityDelta) {
+        lock.writeLock().lock();
+        try {
+            AccountValuation account = accounts.get(accountId);
+            if (account != null) {
+                double before = account.quantities.getOrDefault(stockId, 0.0);
+                double after = Decimals.roundToCents(before + quantityDelta);
+                if (after == 0) {
+                    // Sold out, so the account no longer follows the price of the stock
+                    account.quantities.remove(stockId);
+                    Set<Integer> holders = holdersByStock.get(stockId);
+                    if (holders != null && holders.remove(accountId) && holders.isEmpty()) {
+                        holdersByStock.remove(stockId);
+                    }
+                } else {
+                    account.quantities.put(stockId, after);
+                    holdersByStock.computeIfAbsent(stockId, id -> new HashSet<>()).add(accountId);
+                }
+                double change = (wholeShares(after) - wholeShares(before)) * priceOf(null, stockId);
+                account.investmentValue += change;
+                advisorValues.merge(account.advisorId, change, Double::sum);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void priceChanged(int stockId, double perSharePrice) {
+        lock.writeLock().lock();
+        try {
+            Double previous = prices.put(stockId, perSharePrice);
+            if (previous == null) {
+                // No position of the stock has been valued yet, so there is nothing to adjust
+                return;
+            }
+            double priceChange = perSharePrice - previous;
+            for (int accountId : holdersByStock.getOrDefault(stockId, Set.of())) {
+                AccountValuation account = accounts.get(accountId);
+                double change = wholeShares(account.quantities.getOrDefault(stockId, 0.0)) * priceChange;
+                account.investmentValue += change;
+                advisorValues.merge(account.advisorId, change, Double::sum);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the price positions of a stock are valued at, taking it from the price table the first time. Must be called
+     * while holding the write lock.
+     *
+     * @param connection a connection the caller already holds, or null if it holds none
+     * @param stockId    the ID of the stock
+     * @return the price per share
+     */
+    private double priceOf(Connection connection, int stockId) {
+        Double price = prices.get(stockId);
+        if (price == null) {
+            price = priceTable.getPrice(connection, stockId);
+            prices.put(stockId, price);
+        }
+        return price;
+    }
+
+    /**
+     * @param quantity the quantity of a position
+     * @return the whole shares of the position, which is what its market value is based on
+     */
+    private static int wholeShares(double quantity) {
+        return (int) quantity;
+    }
+
+    /**
+     * The cash, positions and value of the positions of one account.
+     */
+    private static final class AccountValuation {
+        int advisorId;
+        double cash;
+        double investmentValue;
+        final Map<Integer, Double> quantities = new HashMap<>();
+
+        AccountValuation(int advisorId) {
+            this.advisorId = advisorId;
+        }
+
+        double value() {
+            return investmentValue + cash;
+        }
+    }
+}
@@ -1,22 +1,41 @@
 package Reporting;
 
 import Database.ConnectionEstablisher;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.stream.IntStream;
 
 public class AdvisorGroups {
-    public AdvisorGroups() {
 
+    // How far the number of accounts may move, as a share, before the last run's centroids are no longer a good start
+    private static final double WARM_START_MAX_POPULATION_CHANGE = 0.1;
+
+    public AdvisorGroups(ConnectionEstablisher connectionEstablisher, SectorVectorExtractor sectorVectorExtractor) {
+        this.connectionEstablisher = connectionEstablisher;
+        this.sectorVectorExtractor = sectorVectorExtractor;
     }
 
-    ConnectionEstablisher connectionEstablisher = new ConnectionEstablisher();
-    SectorWeights newsectorWeights = new SectorWeights();
+    ConnectionEstablisher connectionEstablisher;
+    SectorVectorExtractor sectorVectorExtractor;
+
+    private long seed = KMeans.DEFAULT_SEED;
 
     /**
      * Clusters advisor accounts based on sector difference vectors.
+     * Each account's difference vector is scaled to unit length and the accounts are clustered by spherical k-means,
+     * starting with 1 group and adding one group at a time until every account is within the tolerance of its group,
+     * measured as the cosine distance (1 minus the cosine similarity) between the account's vector and the group's
+     * centroid, or until maxGroups groups are used. An account with no difference from its targets is within
+     * any tolerance of any group.
+     * The centroids found for every number of groups are saved, and the next run starts from them instead of seeding
+     * when the number of accounts has changed by no more than a tenth, so a regrouping after small changes converges
+     * in a few iterations. The assignment step uses Hamerly's bounds to skip most distance computations.
      *
      * @param tolerance the maximum allowed distance for convergence
      * @param maxGroups the maximum number of advisor groups to create
@@ -24,277 +43,298 @@ public class AdvisorGroups {
      * Reference for the concept: https://en.wikipedia.org/wiki/K-means_clustering
      */
     public Set<Set<Integer>> advisorGroups(double tolerance, int maxGroups) {
-        Map<Integer, Map<String, Integer>> sectorDifferenceVectors = extractSectorDifferenceVectors();
+        SectorVectorExtractor.SectorVectors sectorDifferenceVectors = sectorVectorExtractor.extract();
         Set<Set<Integer>> groups = new HashSet<>();
+        if (sectorDifferenceVectors == null || sectorDifferenceVectors.size() == 0) {
+            return groups;
+        }
+        double[][] vectors = sectorDifferenceVectors.matrix();
+        for (double[] vector : vectors) {
+            KMeans.normalize(vector);
+        }
 
+        int[] sectorIds = IntStream.range(0, sectorDifferenceVectors.sectors()).map(sectorDifferenceVectors::sectorId).toArray();
+        Map<Integer, double[][]> previousCentroids = loadCentroids(sectorIds, vectors.length);
+        KMeans kMeans = new KMeans(seed, KMeans.DEFAULT_MAX_ITERATIONS, KMeans.DEFAULT_CONVERGENCE_TOLERANCE, true, true);
+        int limit = Math.min(maxGroups, vectors.length);
+        Map<Integer, double[][]> centroidsByGroupCount = new HashMap<>();
+        KMeans.Clustering clustering = null;
         // Start with 1 group and gradually increase until reaching maxGroups or convergence
-        int k = 1;
-        while (k <= maxGroups) {
-            //random generated data points.
-            List<Map<String, Integer>> clusterRepresentatives = initializeClusterRepresentatives(k);
-            int converged = 0;
-            Map<Integer, Integer> assignment = null;
-            while (converged!=4) {
-                assignment = assignToClosestCluster(sectorDifferenceVectors, clusterRepresentatives);
-                converged++;
-            }
-            double maxDistance = calculateMaxDistance(sectorDifferenceVectors, assignment, clusterRepresentatives);
-            if (maxDistance <= tolerance) {
+        for (int k = 1; k <= limit; k++) {
+            clustering = kMeans.cluster(vectors, k, previousCentroids.get(k));
+            centroidsByGroupCount.put(k, clustering.centroids());
+            if (maxCosineDistance(vectors, clustering) <= tolerance) {
                 break;
             }
-            Set<Integer> group = new HashSet<>();
-            for (Map.Entry<Integer, Integer> entry : assignment.entrySet()) {
-                if (entry.getValue()+1 == k) {
-                    group.add(entry.getKey());
-                }
-            }
-            groups.add(group);
-            // Check if all accounts have been assigned to clusters
-            if (assignment.size() == sectorDifferenceVectors.size()) {
-                break; // Stop clustering if all accounts are assigned
-            }
-            k++; // Increment k for the next iteration
         }
+        saveCentroids(centroidsByGroupCount, sectorIds, vectors.length);
+
+        Map<Integer, Set<Integer>> groupsByCluster = new HashMap<>();
+        for (int row = 0; row < vectors.length; row++) {
+            groupsByCluster.computeIfAbsent(clustering.assignment(row), cluster -> new HashSet<>())
+                    .add(sectorDifferenceVectors.accountId(row));
+        }
+        groups.addAll(groupsByCluster.values());
         return groups;
     }
 
     /**
-     * Extracts sector difference vectors for all advisor accounts.
+     * Clusters advisor accounts the same way as advisorGroups, but by mini-batch k-means, for more accounts than
+     * fit on the heap. The difference vectors are read from the database once into a temporary memory-mapped file.
+     * When no centroids are saved for a number of groups, k-means on a random sample of one batch seeds them.
+     * The centroids are then trained from the file a batch at a time, and a final pass over the file assigns every
+     * account to its group and checks the tolerance. Apart from the groups returned, memory is bounded by the centroids
+     * and one batch, whatever the number of accounts.
      *
-     * @return a map containing sector difference vectors for each advisor account
+     * @param tolerance the maximum allowed distance for convergence
+     * @param maxGroups the maximum number of advisor groups to create
+     * @param batchSize the number of accounts read at a time
+     * @return a set of sets, where each inner set represents an advisor group
      */
-    private Map<Integer, Map<String, Integer>> extractSectorDifferenceVectors() {
-        Map<Integer, Map<String, Integer>> sectorDifferenceVectors = new HashMap<>();
-
-        // Get sector weights for each account
-        List<Integer> accountIds = getAllAccountIds(); // Implement this method to fetch all account IDs
-        for (Integer accountId : accountIds) {
-            Map<String, Integer> sectorWeights = newsectorWeights.profileSectorWeights(accountId);
-            Map<String, Integer> initialWeights = getInitialSectorWeights(accountId); // Implement this method to fetch initial sector weights
-            Map<String, Integer> differenceVector = calculateDifferenceVector(sectorWeights, initialWeights);
-            sectorDifferenceVectors.put(accountId, differenceVector);
+    public Set<Set<Integer>> advisorGroups(double tolerance, int maxGroups, int batchSize) {
+        Path path = null;
+        try {
+            path = Files.createTempFile("sector-vectors", ".bin");
+            SectorVectorFile vectorFile = SectorVectorFile.write(sectorVectorExtractor.stream(), path, batchSize);
+            return advisorGroups(vectorFile, tolerance, maxGroups, batchSize);
+        } catch (IOException e) {
+            System.out.println("Failed to write the sector vector file: " + e.getMessage());
+        } finally {
+            if (path != null) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    System.out.println("Failed to delete the sector vector file: " + e.getMessage());
+                }
+            }
         }
-
-        return sectorDifferenceVectors;
+        return new HashSet<>();
     }
 
-
     /**
-     * Calculates the difference vector between sector weights and initial weights.
+     * Clusters the accounts of a vector file by mini-batch k-means.
      *
-     * @param sectorWeights  the sector weights for an account
-     * @param initialWeights the initial sector weights for an account
-     * @return the difference vector between sector weights and initial weights
+     * @param vectorFile the sector difference vectors of every account
+     * @param tolerance  the maximum allowed distance for convergence
+     * @param maxGroups  the maximum number of advisor groups to create
+     * @param batchSize  the number of accounts read at a time
+     * @return a set of sets, where each inner set represents an advisor group
      */
-    // Method to calculate the difference between sector weights and initial weights
-    private Map<String, Integer> calculateDifferenceVector(Map<String, Integer> sectorWeights, Map<String, Integer> initialWeights) {
-        Map<String, Integer> differenceVector = new HashMap<>();
-        for (Map.Entry<String, Integer> entry : sectorWeights.entrySet()) {
-            String sectorName = entry.getKey();
-            Integer sectorWeight = entry.getValue();
-            Integer initialWeight = initialWeights.getOrDefault(sectorName, 0);
-            Integer difference = sectorWeight - initialWeight;
-            differenceVector.put(sectorName, difference);
+    private Set<Set<Integer>> advisorGroups(SectorVectorFile vectorFile, double tolerance, int maxGroups, int batchSize) {
+        Set<Set<Integer>> groups = new HashSet<>();
+        // Every vector is scaled to unit length as it is read
+        KMeans.PointSource unitVectors = (size, consumer) -> vectorFile.forEachBatch(size, (ids, points, count) -> {
+            for (int i = 0; i < count; i++) {
+                KMeans.normalize(points[i]);
+            }
+            consumer.accept(ids, points, count);
+        });
+        KMeans kMeans = new KMeans(seed, KMeans.DEFAULT_MAX_ITERATIONS, KMeans.DEFAULT_CONVERGENCE_TOLERANCE, true, true);
+        KMeans.Sample sample = kMeans.sample(unitVectors, Math.max(batchSize, maxGroups));
+        if (sample == null || sample.population() == 0) {
+            return groups;
         }
-        return differenceVector;
-    }
 
-    /**
-     * Retrieves all account IDs from the database.
-     *
-     * @return a list of all account IDs
-     */
-    private List<Integer> getAllAccountIds() {
-        List<Integer> accountIds = new ArrayList<>();
-        Connection connection = null;
-        try {
-            connection = connectionEstablisher.establishConnection();
-            String query = "SELECT account_id FROM Accounts";
-            try (PreparedStatement statement = connection.prepareStatement(query);
-                 ResultSet resultSet = statement.executeQuery()) {
-                while (resultSet.next()) {
-                    int accountId = resultSet.getInt("account_id");
-                    accountIds.add(accountId);
-                }
+        int[] sectorIds = IntStream.range(0, vectorFile.sectors()).map(vectorFile::sectorId).toArray();
+        Map<Integer, double[][]> previousCentroids = loadCentroids(sectorIds, sample.population());
+        int limit = (int) Math.min(maxGroups, sample.population());
+        Map<Integer, double[][]> centroidsByGroupCount = new HashMap<>();
+        Map<Integer, Set<Integer>> groupsByCluster = new HashMap<>();
+        // Start with 1 group and gradually increase until reaching maxGroups or convergence
+        for (int k = 1; k <= limit; k++) {
+            double[][] initialCentroids = previousCentroids.get(k);
+            if (initialCentroids == null) {
+                initialCentroids = kMeans.cluster(sample.points(), k).centroids();
+            }
+            double[][] centroids = kMeans.clusterMiniBatch(unitVectors, initialCentroids, batchSize);
+            if (centroids == null) {
+                return groups;
+            }
+            centroidsByGroupCount.put(k, centroids);
+            groupsByCluster = new HashMap<>();
+            double maxDistance = assignGroups(unitVectors, centroids, batchSize, groupsByCluster);
+            if (Double.isNaN(maxDistance)) {
+                return groups;
+            }
+            if (maxDistance <= tolerance) {
+                break;
             }
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
-        } finally {
-            connectionEstablisher.closeConnection(connection);
         }
-        return accountIds;
+        saveCentroids(centroidsByGroupCount, sectorIds, sample.population());
+        groups.addAll(groupsByCluster.values());
+        return groups;
     }
 
     /**
-     * Retrieves the initial sector weights for a given account.
+     * Assigns every account of a source to the group with the nearest centroid, a batch at a time.
      *
-     * @param accountId the ID of the account
-     * @return the initial sector weights for the account
+     * @param unitVectors     the unit difference vectors of every account
+     * @param centroids       the centroids of the groups
+     * @param batchSize       the number of accounts read at a time
+     * @param groupsByCluster the account IDs of every group, filled in by this method
+     * @return the largest cosine distance between an account and the centroid of its group,
+     *         or NaN if the accounts could not be read
      */
-    private Map<String, Integer> getInitialSectorWeights(int accountId) {
-        Map<String, Integer> initialSectorWeights = new HashMap<>();
-        Connection connection = null;
-        try {
-            connection = connectionEstablisher.establishConnection();
-            String query = "SELECT Sectors.sectorName, Profile_Sector_Holdings.percentage " +
-                    "FROM Profile_Sector_Holdings " +
-                    "JOIN Sectors ON Profile_Sector_Holdings.sector_id = Sectors.sector_id " +
-                    "JOIN Profiles ON Profile_Sector_Holdings.profile_id = Profiles.profile_id " +
-                    "JOIN Accounts ON Profiles.profile_id = Accounts.profile_id " +
-                    "WHERE Accounts.account_id = ?";
-            try (PreparedStatement statement = connection.prepareStatement(query)) {
-                statement.setInt(1, accountId);
-                try (ResultSet resultSet = statement.executeQuery()) {
-                    while (resultSet.next()) {
-                        String sectorName = resultSet.getString("sectorName");
-                        Integer percentage = resultSet.getInt("percentage");
-                        initialSectorWeights.put(sectorName, percentage);
-                    }
-                }
+    private double assignGroups(KMeans.PointSource unitVectors, double[][] centroids, int batchSize,
+                                Map<Integer, Set<Integer>> groupsByCluster) {
+        int[] assignments = new int[batchSize];
+        double[] maxDistance = {0.0};
+        boolean read = unitVectors.forEachBatch(batchSize, (ids, points, count) -> {
+            maxDistance[0] = Math.max(maxDistance[0], IntStream.range(0, count).parallel().mapToDouble(i -> {
+                assignments[i] = KMeans.nearestCentroid(points[i], centroids);
+                return cosineDistance(points[i], centroids[assignments[i]]);
+            }).max().orElse(0.0));
+            for (int i = 0; i < count; i++) {
+                groupsByCluster.computeIfAbsent(assignments[i], cluster -> new HashSet<>()).add(ids[i]);
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        } finally {
-            connectionEstablisher.closeConnection(connection);
-        }
-        return initialSectorWeights;
+        });
+        return read ? maxDistance[0] : Double.NaN;
     }
 
     /**
-     * Initializes cluster representatives with random values.
+     * Sets the seed of the random number generator the clustering is seeded from, so that a run without saved
+     * centroids to start from can be repeated.
      *
-     * @param k the number of clusters
-     * @return a list of cluster representatives
+     * @param seed the seed
      */
-    private List<Map<String, Integer>> initializeClusterRepresentatives(int k) {
-        List<Map<String, Integer>> clusterRepresentatives = new ArrayList<>();
-        Random random = new Random();
-        List<String> sectorNames = getAllSectorNames(); // Assuming you have a method to get all sector names
-        for (int i = 0; i < k; i++) {
-            Map<String, Integer> cluster = new HashMap<>();
-            for (String sectorName : sectorNames) {
-                int randomNumber = random.nextInt(101); // Random value in the range [0, 100]
-                cluster.put(sectorName, randomNumber);
-            }
-            clusterRepresentatives.add(cluster);
-        }
-        return clusterRepresentatives;
+    public void setSeed(long seed) {
+        this.seed = seed;
     }
 
     /**
-     * Retrieves all sector names from the database.
+     * Loads the centroids saved by earlier runs that were clustering about as many accounts as there are now,
+     * lined up with the sectors of the current vectors. A sector added since is 0 in every centroid.
      *
-     * @return a list of all sector names
+     * @param sectorIds    the ID of the sector in each column of the current vectors
+     * @param accountCount the number of accounts now
+     * @return the saved centroids keyed by the number of groups, empty if there are none or they could not be read
      */
-    private List<String> getAllSectorNames() {
-        List<String> sectorNames = new ArrayList<>();
-        Connection connection = null;
-        try {
-            connection = connectionEstablisher.establishConnection();
-            String query = "SELECT sectorName FROM Sectors";
-            try (PreparedStatement statement = connection.prepareStatement(query);
-                 ResultSet resultSet = statement.executeQuery()) {
-                while (resultSet.next()) {
-                    String sectorName = resultSet.getString("sectorName");
-                    sectorNames.add(sectorName);
+    private Map<Integer, double[][]> loadCentroids(int[] sectorIds, long accountCount) {
+        Map<Integer, double[][]> centroidsByGroupCount = new HashMap<>();
+        Map<Integer, Integer> columnsBySector = new HashMap<>();
+        for (int column = 0; column < sectorIds.length; column++) {
+            columnsBySector.put(sectorIds[column], column);
+        }
+        Connection connection = connectionEstablisher.establishConnection();
+        if (connection != null) {
+            String query = "SELECT group_count, group_index, sector_id, component, account_count FROM AdvisorGroupCentroids";
+            try (PreparedStatement stmt = connection.prepareStatement(query);
+                 ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int groupCount = rs.getInt("group_count");
+                    int groupIndex = rs.getInt("group_index");
+                    int savedAccountCount = rs.getInt("account_count");
+                    Integer column = columnsBySector.get(rs.getInt("sector_id"));
+                    if (column == null || groupIndex >= groupCount
+                            || Math.abs(accountCount - savedAccountCount) > WARM_START_MAX_POPULATION_CHANGE * savedAccountCount) {
+                        continue;
+                    }
+                    centroidsByGroupCount.computeIfAbsent(groupCount, count -> new double[count][sectorIds.length])
+                            [groupIndex][column] = rs.getDouble("component");
                 }
+            } catch (SQLException e) {
+                System.out.println("SQL error occurred: " + e.getMessage());
+                return new HashMap<>();
+            } finally {
+                connectionEstablisher.closeConnection(connection);
+            }
+        } else {
+            System.out.println("Failed to establish database connection.");
+        }
+        for (double[][] centroids : centroidsByGroupCount.values()) {
+            for (double[] centroid : centroids) {
+                KMeans.normalize(centroid);
             }
-        } catch (SQLException e) {
-            System.out.println(e.getMessage());
-        } finally {
-            connectionEstablisher.closeConnection(connection);
         }
-        return sectorNames;
+        return centroidsByGroupCount;
     }
 
-
     /**
-     * Assigns each account to the closest cluster based on sector difference vectors.
+     * Replaces the saved centroids for every number of groups clustered in this run.
      *
-     * @param sectorDifferenceVectors the sector difference vectors for all accounts
-     * @param clusterRepresentatives  the cluster representatives
-     * @return a map containing the assignment of each account to a cluster
+     * @param centroidsByGroupCount the centroids of this run keyed by the number of groups
+     * @param sectorIds             the ID of the sector in each column of the centroids
+     * @param accountCount          the number of accounts that were clustered
      */
-    private Map<Integer, Integer> assignToClosestCluster(Map<Integer, Map<String, Integer>> sectorDifferenceVectors, List<Map<String, Integer>> clusterRepresentatives) {
-        Map<Integer, Integer> assignment = new HashMap<>();
-        for (Map.Entry<Integer, Map<String, Integer>> entry : sectorDifferenceVectors.entrySet()) {
-            int accountId = entry.getKey();
-            Map<String, Integer> differenceVector = entry.getValue();
-            int closestClusterIndex = findClosestCluster(differenceVector, clusterRepresentatives);
-            assignment.put(accountId, closestClusterIndex);
+    private void saveCentroids(Map<Integer, double[][]> centroidsByGroupCount, int[] sectorIds, long accountCount) {
+        Connection connection = connectionEstablisher.establishConnection();
+        if (connection != null) {
+            String deleteSQL = "DELETE FROM AdvisorGroupCentroids WHERE group_count = ?";
+            String insertSQL = "INSERT INTO AdvisorGroupCentroids (group_count, group_index, sector_id, component, account_count) " +
+                    "VALUES (?, ?, ?, ?, ?)";
+            try (PreparedStatement deleteStmt = connection.prepareStatement(deleteSQL);
+                 PreparedStatement insertStmt = connection.prepareStatement(insertSQL)) {
+                connection.setAutoCommit(false);
+                for (Map.Entry<Integer, double[][]> entry : centroidsByGroupCount.entrySet()) {
+                    deleteStmt.setInt(1, entry.getKey());
+                    deleteStmt.addBatch();
+                    for (int groupIndex = 0; groupIndex < entry.getKey(); groupIndex++) {
+                        double[] centroid = entry.getValue()[groupIndex];
+                        for (int column = 0; column < centroid.length; column++) {
+                            insertStmt.setInt(1, entry.getKey());
+                            insertStmt.setInt(2, groupIndex);
+                            insertStmt.setInt(3, sectorIds[column]);
+                            insertStmt.setDouble(4, centroid[column]);
+                            insertStmt.setInt(5, (int) accountCount);
+                            insertStmt.addBatch();
+                        }
+                    }
+                }
+                deleteStmt.executeBatch();
+                insertStmt.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                try {
+                    connection.rollback();
+                } catch (SQLException rollbackError) {
+                    System.out.println("Failed to roll back advisor group centroids: " + rollbackError.getMessage());
+                }
+                System.out.println("SQL error occurred: " + e.getMessage());
+            } finally {
+                connectionEstablisher.closeConnection(connection);
+            }
+        } else {
+            System.out.println("Failed to establish database connection.");
         }
-        return assignment;
     }
 
     /**
-     * Finds the closest cluster to a given difference vector.
+     * Calculates the largest cosine distance between an account's unit difference vector and the centroid of its group.
      *
-     * @param differenceVector       the difference vector for an account
-     * @param clusterRepresentatives the cluster representatives
-     * @return the index of the closest cluster
+     * @param vectors    the unit difference vectors of all accounts
+     * @param clustering the clustering of the accounts
+     * @return the maximum cosine distance
      */
-    private int findClosestCluster(Map<String, Integer> differenceVector, List<Map<String, Integer>> clusterRepresentatives) {
-        int closestClusterIndex = -1;
-        double minDistance = Double.MAX_VALUE;
-        for (int i = 0; i < clusterRepresentatives.size(); i++) {
-            Map<String, Integer> cluster = clusterRepresentatives.get(i);
-            double distance = calculateCosineSimilarity(differenceVector, cluster);
-            if (distance < minDistance) {
-                minDistance = distance;
-                closestClusterIndex = i;
-            }
-        }
-        return closestClusterIndex;
+    private double maxCosineDistance(double[][] vectors, KMeans.Clustering clustering) {
+        return IntStream.range(0, vectors.length).parallel()
+                .mapToDouble(row -> cosineDistance(vectors[row], clustering.centroid(clustering.assignment(row))))
+                .max().orElse(0.0);
     }
 
     /**
-     * Calculates the cosine similarity between two vectors.
+     * Calculates the cosine distance, 1 minus the cosine similarity, between an account's difference vector and a
+     * centroid. An account with no difference from its targets is at no distance from any centroid.
      *
-     * @param vector1 the first vector
-     * @param vector2 the second vector
-     * @return the cosine similarity between the two vectors
+     * @param vector   the difference vector of the account
+     * @param centroid the centroid
+     * @return the cosine distance
      */
-    private double calculateCosineSimilarity(Map<String, Integer> vector1, Map<String, Integer> vector2) {
+    private static double cosineDistance(double[] vector, double[] centroid) {
         double dotProduct = 0.0;
-        double magnitude1 = 0.0;
-        double magnitude2 = 0.0;
-        for (Map.Entry<String, Integer> entry : vector1.entrySet()) {
-            String sectorName = entry.getKey();
-            int difference1 = entry.getValue();
-            double difference2 = vector2.getOrDefault(sectorName, 0);
-            dotProduct += difference1 * difference2;
-            magnitude1 += Math.pow(difference1, 2);
-            magnitude2 += Math.pow(difference2, 2);
+        double vectorNorm = 0.0;
+        double centroidNorm = 0.0;
+        for (int d = 0; d < vector.length; d++) {
+            dotProduct += vector[d] * centroid[d];
+            vectorNorm += vector[d] * vector[d];
+            centroidNorm += centroid[d] * centroid[d];
         }
-        magnitude1 = Math.sqrt(magnitude1);
-        magnitude2 = Math.sqrt(magnitude2);
-        if (magnitude1 == 0 || magnitude2 == 0) {
-            return 0.0; // Handle division by zero
+        if (vectorNorm == 0) {
+            return 0.0;
         }
-        return dotProduct / (magnitude1 * magnitude2);
-    }
-
-    /**
-     * Calculates the maximum distance between sector difference vectors and cluster representatives.
-     *
-     * @param sectorDifferenceVectors the sector difference vectors for all accounts
-     * @param assignment              the assignment of each account to a cluster
-     * @param clusterRepresentatives  the cluster representatives
-     * @return the maximum distance between sector difference vectors and cluster representatives
-     */
-    private double calculateMaxDistance(Map<Integer, Map<String, Integer>> sectorDifferenceVectors, Map<Integer, Integer> assignment, List<Map<String, Integer>> clusterRepresentatives) {
-        double maxDistance = 0.0;
-        for (Map.Entry<Integer, Map<String, Integer>> entry : sectorDifferenceVectors.entrySet()) {
-            int accountId = entry.getKey();
-            int clusterIndex = assignment.get(accountId);
-            Map<String, Integer> differenceVector = entry.getValue();
-            Map<String, Integer> clusterRepresentative = clusterRepresentatives.get(clusterIndex);
-            double distance = calculateCosineSimilarity(differenceVector, clusterRepresentative);
-            if (distance > maxDistance) {
-                maxDistance = distance;
-            }
+        if (centroidNorm == 0) {
+            return 1.0;
         }
-        return maxDistance;
+        return 1.0 - dotProduct / Math.sqrt(vectorNorm * centroidNorm);
     }
 
 }
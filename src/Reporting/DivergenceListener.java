@@ -0,0 +1,18 @@
+package Reporting;
+
+/**
+ * Receives the accounts that cross the tolerance of a DivergenceMonitor.
+ * Callbacks run on the thread that refreshes the monitor and must not block.
+ */
+public interface DivergenceListener {
+
+    /**
+     * @param accountId the ID of the account that now diverges from its profile by more than the tolerance
+     */
+    void accountDiverged(int accountId);
+
+    /**
+     * @param accountId the ID of the account that is back within the tolerance of its profile
+     */
+    void accountConverged(int accountId);
+}
@@ -0,0 +1,245 @@
+package Reporting;
+
+import Database.ConnectionEstablisher;
+import Database.Decimals;
+import Manager.PortfolioListener;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the divergent accounts for every tolerance current without rescanning the firm.
+ * Every account is checked once when the monitor is loaded. After that the monitor listens to the portfolio
+ * events and marks an account dirty when it trades, receives a dividend, changes advisor or holds a stock
+ * whose price moved. A refresh checks only the dirty accounts against the cached targets of their profiles.
+ * The monitor keeps the largest divergence of each account rather than a yes or no for one tolerance, so one
+ * monitor answers every tolerance, and it tells the listeners of each tolerance about every account that crossed it.
+ */
+public class DivergenceMonitor implements PortfolioListener {
+
+    // Divergences are whole percentage points; larger ones share the last bucket, which diverges at every tolerance
+    private static final int MAX_DIVERGENCE = 101;
+
+    ConnectionEstablisher connectionEstablisher;
+    DivergentAccount divergentAccount;
+
+    private final Map<Integer, List<DivergenceListener>> listenersByTolerance = new ConcurrentHashMap<>();
+    private final Map<Integer, Integer> profileIdsByAccount = new ConcurrentHashMap<>();
+    // The quantity of every stock each account holds, and the accounts that hold each stock; sold-out positions are dropped
+    private final Map<Integer, Map<Integer, Double>> quantitiesByAccount = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<Integer>> holdersByStock = new ConcurrentHashMap<>();
+    private final Set<Integer> dirtyAccounts = ConcurrentHashMap.newKeySet();
+    // The largest divergence of each checked account, and the accounts of each divergence
+    private final Map<Integer, Integer> divergenceByAccount = new ConcurrentHashMap<>();
+    private final List<Set<Integer>> accountsByDivergence = new ArrayList<>();
+    private volatile Map<Integer, Map<String, Integer>> targetDistributionsByProfile = Collections.emptyMap();
+
+    public DivergenceMonitor(ConnectionEstablisher connectionEstablisher, DivergentAccount divergentAccount) {
+        this.connectionEstablisher = connectionEstablisher;
+        this.divergentAccount = divergentAccount;
+        for (int divergence = 0; divergence <= MAX_DIVERGENCE; divergence++) {
+            accountsByDivergence.add(ConcurrentHashMap.newKeySet());
+        }
+    }
+
+    /**
+     * @param tolerance the allowed tolerance for divergence
+     * @param listener  the listener to notify when an account crosses the tolerance
+     */
+    public void addListener(int tolerance, DivergenceListener listener) {
+        listenersByTolerance.computeIfAbsent(tolerance, t -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    /**
+     * Loads the profile of every account, the targets of every profile and the holders of every stock,
+     * and checks every account once. The monitor should already be receiving portfolio events, so that
+     * no change made while it loads is missed.
+     *
+     * @return true if the monitor was loaded, false otherwise
+     */
+    public boolean load() {
+        Connection connection = connectionEstablisher.establishConnection();
+        if (connection != null) {
+            try {
+                profileIdsByAccount.putAll(divergentAccount.fetchAccountProfiles(connection));
+                targetDistributionsByProfile = divergentAccount.fetchTargetDistributions(connection);
+                String query = "SELECT account_id, stock_id, quantity FROM Investments WHERE quantity <> 0";
+                try (PreparedStatement stmt = connection.prepareStatement(query);
+                     ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        int accountId = rs.getInt("account_id");
+                        int stockId = rs.getInt("stock_id");
+                        quantitiesOf(accountId).put(stockId, rs.getDouble("quantity"));
+                        addHolder(stockId, accountId);
+                    }
+                }
+            } catch (SQLException e) {
+                System.out.println("SQL error occurred while loading divergence monitor: " + e.getMessage());
+                return false;
+            } finally {
+                connectionEstablisher.closeConnection(connection);
+            }
+        } else {
+            System.out.println("Failed to establish database connection.");
+            return false;
+        }
+        dirtyAccounts.addAll(profileIdsByAccount.keySet());
+        refresh();
+        return true;
+    }
+
+    /**
+     * Checks the accounts that changed since the last refresh and returns the accounts that diverge.
+     *
+     * @param tolerance the allowed tolerance for divergence
+     * @return a set of divergent account IDs
+     */
+    public Set<Integer> divergentAccounts(int tolerance) {
+        refresh();
+        Set<Integer> divergent = new HashSet<>();
+        for (int divergence = Math.max(tolerance + 1, 0); divergence <= MAX_DIVERGENCE; divergence++) {
+            divergent.addAll(accountsByDivergence.get(divergence));
+        }
+        return divergent;
+    }
+
+    /**
+     * Checks every dirty account against the target of its profile, in parallel, and notifies the listeners
+     * of every tolerance the account crossed. An account marked dirty again while it is being checked
+     * stays dirty for the next refresh.
+     */
+    public synchronized void refresh() {
+        List<Integer> accountIds = new ArrayList<>();
+        for (Integer accountId : dirtyAccounts) {
+            if (dirtyAccounts.remove(accountId)) {
+                accountIds.add(accountId);
+            }
+        }
+        if (accountIds.isEmpty()) {
+            return;
+        }
+        for (int accountId : accountIds) {
+            Integer profileId = profileIdsByAccount.get(accountId);
+            if (profileId != null && !targetDistributionsByProfile.containsKey(profileId)) {
+                // The account was opened on a profile defined after the targets were cached
+                reloadTargetDistributions();
+                break;
+            }
+        }
+        Map<Integer, Map<String, Integer>> targets = targetDistributionsByProfile;
+        Map<Integer, Integer> divergences = accountIds.parallelStream()
+                .filter(profileIdsByAccount::containsKey)
+                .collect(Collectors.toConcurrentMap(accountId -> accountId, accountId -> Math.min(MAX_DIVERGENCE,
+                        divergentAccount.maxDivergence(accountId, targets.getOrDefault(profileIdsByAccount.get(accountId), Collections.emptyMap())))));
+
+        for (Map.Entry<Integer, Integer> entry : divergences.entrySet()) {
+            int accountId = entry.getKey();
+            int divergence = entry.getValue();
+            Integer previous = divergenceByAccount.put(accountId, divergence);
+            int before = previous == null ? 0 : previous;
+            if (before == divergence) {
+                continue;
+            }
+            if (previous != null) {
+                accountsByDivergence.get(before).remove(accountId);
+            }
+            accountsByDivergence.get(divergence).add(accountId);
+            for (Map.Entry<Integer, List<DivergenceListener>> listeners : listenersByTolerance.entrySet()) {
+                int tolerance = listeners.getKey();
+                if (before <= tolerance && divergence > tolerance) {
+                    for (DivergenceListener listener : listeners.getValue()) {
+                        listener.accountDiverged(accountId);
+                    }
+                } else if (before > tolerance && divergence <= tolerance) {
+                    for (DivergenceListener listener : listeners.getValue()) {
+                        listener.accountConverged(accountId);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void accountOpened(int accountId, int advisorId, int profileId, boolean reinvest) {
+        profileIdsByAccount.put(accountId, profileId);
+        dirtyAccounts.add(accountId);
+    }
+
+    @Override
+    public void advisorChanged(int accountId, int advisorId) {
+        dirtyAccounts.add(accountId);
+    }
+
+    @Override
+    public void cashChanged(int accountId, double amount) {
+        dirtyAccounts.add(accountId);
+    }
+
+    @Override
+    public void positionChanged(int accountId, int stockId, double quantityDelta) {
+        quantitiesOf(accountId).compute(stockId, (id, before) -> {
+            double after = Decimals.roundToCents((before == null ? 0.0 : before) + quantityDelta);
+            if (after == 0) {
+                // Sold out, so the account no longer follows the price of the stock
+                removeHolder(stockId, accountId);
+                return null;
+            }
+            addHolder(stockId, accountId);
+            return after;
+        });
+        dirtyAccounts.add(accountId);
+    }
+
+    @Override
+    public void priceChanged(int stockId, double perSharePrice) {
+        dirtyAccounts.addAll(holdersByStock.getOrDefault(stockId, Collections.emptySet()));
+    }
+
+    private Map<Integer, Double> quantitiesOf(int accountId) {
+        return quantitiesByAccount.computeIfAbsent(accountId, id -> new ConcurrentHashMap<>());
+    }
+
+    private void addHolder(int stockId, int accountId) {
+        holdersByStock.compute(stockId, (id, holders) -> {
+            Set<Integer> updated = holders != null ? holders : ConcurrentHashMap.newKeySet();
+            updated.add(accountId);
+            return updated;
+        });
+    }
+
+    private void removeHolder(int stockId, int accountId) {
+        holdersByStock.computeIfPresent(stockId, (id, holders) -> {
+            holders.remove(accountId);
+            return holders.isEmpty() ? null : holders;
+        });
+    }
+
+    /**
+     * Reads the targets of every profile again.
+     */
+    private void reloadTargetDistributions() {
+        Connection connection = connectionEstablisher.establishConnection();
+        if (connection != null) {
+            try {
+                targetDistributionsByProfile = divergentAccount.fetchTargetDistributions(connection);
+            } catch (SQLException e) {
+                System.out.println("SQL error occurred: " + e.getMessage());
+            } finally {
+                connectionEstablisher.closeConnection(connection);
+            }
+        } else {
+            System.out.println("Failed to establish database connection.");
+        }
+    }
+}
@@ -10,108 +10,131 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class DivergentAccount {
 
-    ConnectionEstablisher connectionEstablisher = new ConnectionEstablisher();
-    SectorWeights sectorWeights = new SectorWeights();
-
-    public DivergentAccount() {
+    ConnectionEstablisher connectionEstablisher;
+    SectorWeights sectorWeights;
+    SectorVectorExtractor sectorVectorExtractor;
 
+    public DivergentAccount(ConnectionEstablisher connectionEstablisher, SectorWeights sectorWeights,
+                            SectorVectorExtractor sectorVectorExtractor) {
+        this.connectionEstablisher = connectionEstablisher;
+        this.sectorWeights = sectorWeights;
+        this.sectorVectorExtractor = sectorVectorExtractor;
     }
 
     /**
      * Identifies divergent accounts based on sector distributions.
+     * The difference between the current and target sector weights of every account is extracted in bulk,
+     * and the accounts are then checked in parallel.
      *
      * @param tolerance the allowed tolerance for divergence
      * @return a set of divergent account IDs
      */
     public Set<Integer> divergentAccounts(int tolerance) {
-        Set<Integer> divergentAccountIds = new HashSet<>();
-        Connection connection = connectionEstablisher.establishConnection();
-        if (connection != null) {
-            try {
-                // Fetch all accounts
-                String fetchAccountsSQL = "SELECT account_id FROM Accounts";
-                try (PreparedStatement accountsStmt = connection.prepareStatement(fetchAccountsSQL)) {
-                    ResultSet accountsRS = accountsStmt.executeQuery();
-                    while (accountsRS.next()) {
-                        int accountId = accountsRS.getInt("account_id");
-                        // For each account, calculate the current sector distributions
-                        Map<String, Integer> currentDistributions = sectorWeights.profileSectorWeights(accountId);
-                        // Fetch the target profile sector distributions for this account
-                        Map<String, Integer> targetDistributions = fetchTargetDistributions(accountId, connection);
-                        // Check if the account's current distributions diverge from the target by more than the tolerance
-                        if (isDivergent(currentDistributions, targetDistributions, tolerance)) {
-                            divergentAccountIds.add(accountId);
-                        }
-                    }
-                }
-            } catch (SQLException e) {
-                System.out.println("SQL error occurred: " + e.getMessage());
-            } finally {
-                connectionEstablisher.closeConnection(connection);
+        SectorVectorExtractor.SectorVectors sectorDifferenceVectors = sectorVectorExtractor.extract();
+        if (sectorDifferenceVectors == null) {
+            return new HashSet<>();
+        }
+
+        // Check if each account's current distributions diverge from its profile's target by more than the tolerance
+        return IntStream.range(0, sectorDifferenceVectors.size()).parallel()
+                .filter(row -> isDivergent(sectorDifferenceVectors.vector(row), tolerance))
+                .mapToObj(sectorDifferenceVectors::accountId)
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+
+    /**
+     * Fetches the profile of every account.
+     *
+     * @param connection the database connection
+     * @return a map of account IDs to profile IDs
+     * @throws SQLException if a SQL error occurs
+     */
+    Map<Integer, Integer> fetchAccountProfiles(Connection connection) throws SQLException {
+        Map<Integer, Integer> profileIdsByAccount = new HashMap<>();
+        String sql = "SELECT account_id, profile_id FROM Accounts";
+        try (PreparedStatement stmt = connection.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                profileIdsByAccount.put(rs.getInt("account_id"), rs.getInt("profile_id"));
             }
-        } else {
-            System.out.println("Failed to establish database connection.");
         }
-        return divergentAccountIds;
+        return profileIdsByAccount;
     }
 
     /**
-     * Fetches the target sector distributions for an account.
+     * Fetches the target sector distributions of every profile.
      *
-     * @param accountId  the ID of the account
      * @param connection the database connection
-     * @return a map of sector names to percentages
+     * @return a map of profile IDs to their sector names and percentages
      * @throws SQLException if a SQL error occurs
      */
-    private Map<String, Integer> fetchTargetDistributions(int accountId, Connection connection) throws SQLException {
-        Map<String, Integer> targetDistributions = new HashMap<>();
-        String sql = "SELECT sec.sectorName, psh.percentage " +
-                "FROM Accounts acc " +
-                "JOIN Profiles prof ON acc.profile_id = prof.profile_id " +
-                "JOIN Profile_Sector_Holdings psh ON prof.profile_id = psh.profile_id " +
-                "JOIN Sectors sec ON psh.sector_id = sec.sector_id " +
-                "WHERE acc.account_id = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setInt(1, accountId);
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    String sectorName = rs.getString("sectorName");
-                    int percentage = rs.getInt("percentage");
-                    targetDistributions.put(sectorName, percentage);
-                }
+    Map<Integer, Map<String, Integer>> fetchTargetDistributions(Connection connection) throws SQLException {
+        Map<Integer, Map<String, Integer>> targetDistributionsByProfile = new HashMap<>();
+        String sql = "SELECT psh.profile_id, sec.sectorName, psh.percentage " +
+                "FROM Profile_Sector_Holdings psh " +
+                "JOIN Sectors sec ON psh.sector_id = sec.sector_id";
+        try (PreparedStatement stmt = connection.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                targetDistributionsByProfile.computeIfAbsent(rs.getInt("profile_id"), id -> new HashMap<>())
+                        .put(rs.getString("sectorName"), rs.getInt("percentage"));
             }
         }
-        return targetDistributions;
+        return targetDistributionsByProfile;
     }
 
     /**
-     * Checks if the sector distributions are divergent.
+     * Calculates how far the current sector distributions of an account diverge from a target.
      *
-     * @param current   the current sector distributions
-     * @param target    the target sector distributions
-     * @param tolerance the allowed tolerance for divergence
-     * @return true if the sector distributions are divergent, false otherwise
+     * @param accountId the ID of the account
+     * @param target    the target sector distributions of the account's profile
+     * @return the largest difference between a current and a target sector percentage
      */
-    private boolean isDivergent(Map<String, Integer> current, Map<String, Integer> target, int tolerance) {
-        for (Map.Entry<String, Integer> targetEntry : target.entrySet()) {
-            String sector = targetEntry.getKey();
-            int targetPercentage = targetEntry.getValue();
-            int currentPercentage = current.getOrDefault(sector, 0); // Use 0 if the sector is not present in current distributions
+    int maxDivergence(int accountId, Map<String, Integer> target) {
+        return maxDivergence(sectorWeights.profileSectorWeights(accountId), target);
+    }
 
-            // Calculate the divergence
-            if (Math.abs(currentPercentage - targetPercentage) > tolerance) {
-                return true; // Found a sector that diverges more than the allowed tolerance
+    /**
+     * Checks if a sector difference vector is divergent. A sector missing from the target has a target of 0,
+     * so this agrees with comparing the current and target distributions sector by sector.
+     *
+     * @param differenceVector the current minus the target weight of every sector
+     * @param tolerance        the allowed tolerance for divergence
+     * @return true if the sector distributions are divergent, false otherwise
+     */
+    private boolean isDivergent(double[] differenceVector, int tolerance) {
+        for (double difference : differenceVector) {
+            if (Math.abs(difference) > tolerance) {
+                return true;
             }
         }
-        // Check for sectors present in current but not in target distributions
-        for (String currentSector : current.keySet()) {
-            if (!target.containsKey(currentSector) && current.get(currentSector) > tolerance) {
-                return true; // Found an unexpected sector with significant holding
+        return false;
+    }
+
+    /**
+     * Calculates how far the sector distributions diverge, so that they are divergent for every tolerance below the result.
+     *
+     * @param current the current sector distributions
+     * @param target  the target sector distributions
+     * @return the largest difference between a current and a target sector percentage
+     */
+    private int maxDivergence(Map<String, Integer> current, Map<String, Integer> target) {
+        int divergence = 0;
+        for (Map.Entry<String, Integer> targetEntry : target.entrySet()) {
+            int currentPercentage = current.getOrDefault(targetEntry.getKey(), 0); // Use 0 if the sector is not present in current distributions
+            divergence = Math.max(divergence, Math.abs(currentPercentage - targetEntry.getValue()));
+        }
+        // Sectors present in current but not in target distributions have a target of 0
+        for (Map.Entry<String, Integer> currentEntry : current.entrySet()) {
+            if (!target.containsKey(currentEntry.getKey())) {
+                divergence = Math.max(divergence, currentEntry.getValue());
             }
         }
-        return false; // No significant divergence found
+        return divergence;
     }
 }
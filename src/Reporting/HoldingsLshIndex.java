@@ -0,0 +1,203 @@
+package Reporting;
+
+import Database.ConnectionEstablisher;
+import Database.Decimals;
+import Manager.PortfolioListener;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An approximate nearest-neighbour index over the holdings of every account, by cosine similarity.
+ * It uses random-projection locality-sensitive hashing: each of several tables hashes an account's holdings
+ * vector to the signs of its projections onto a few random hyperplanes, so accounts holding similar stocks in
+ * similar proportions tend to share a bucket. The sign of a projection does not depend on the length of the
+ * vector, so the signatures are those of the normalized holdings.
+ * More tables find more of the true neighbours (recall) at the cost of more candidates to score;
+ * more bits per table make buckets smaller and lookups faster at the cost of recall.
+ * The index is built from Investments and kept current from the position changes the managers publish.
+ */
+public class HoldingsLshIndex implements PortfolioListener {
+
+    // Seed of the hyperplanes when the caller has no reason to choose one
+    public static final long DEFAULT_SEED = 0x2545F4914F6CDD1DL;
+
+    ConnectionEstablisher connectionEstablisher;
+
+    private final int tables;
+    private final int bitsPerTable;
+    private final long seed;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Map<Integer, Double>> holdingsByAccount = new HashMap<>();
+    private final Map<Integer, int[]> signaturesByAccount = new HashMap<>();
+    private final List<Map<Integer, Set<Integer>>> buckets;
+
+    /**
+     * @param connectionEstablisher the connection provider
+     * @param tables                the number of hash tables, at least 1
+     * @param bitsPerTable          the number of hyperplanes per table, from 1 to 30
+     * @param seed                  the seed the random hyperplanes are derived from
+     */
+    public HoldingsLshIndex(ConnectionEstablisher connectionEstablisher, int tables, int bitsPerTable, long seed) {
+        if (tables < 1 || bitsPerTable < 1 || bitsPerTable > 30) {
+            throw new IllegalArgumentException("An LSH index needs at least 1 table and 1 to 30 bits per table.");
+        }
+        this.connectionEstablisher = connectionEstablisher;
+        this.tables = tables;
+        this.bitsPerTable = bitsPerTable;
+        this.seed = seed;
+        this.buckets = new ArrayList<>(tables);
+        for (int table = 0; table < tables; table++) {
+            buckets.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Loads the holdings of every account and hashes them into the tables.
+     *
+     * @return true if the index was loaded, false otherwise
+     */
+    public boolean load() {
+        Connection connection = connectionEstablisher.establishConnection();
+        if (connection != null) {
+            lock.writeLock().lock();
+            try {
+                holdingsByAccount.clear();
+                signaturesByAccount.clear();
+                for (Map<Integer, Set<Integer>> table : buckets) {
+                    table.clear();
+                }
+                String query = "SELECT account_id, stock_id, SUM(quantity) AS totalQuantity FROM Investments GROUP BY account_id, stock_id";
+                try (PreparedStatement stmt = connection.prepareStatement(query);
+                     ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        holdingsByAccount.computeIfAbsent(rs.getInt("account_id"), id -> new HashMap<>())
+                                .put(rs.getInt("stock_id"), rs.getDouble("totalQuantity"));
+                    }
+                }
+                for (int accountId : holdingsByAccount.keySet()) {
+                    rehash(accountId);
+                }
+                return true;
+            } catch (SQLException e) {
+                System.out.println("SQL error occurred while loading the holdings index: " + e.getMessage());
+            } finally {
+                lock.writeLock().unlock();
+                connectionEstablisher.closeConnection(connection);
+            }
+        } else {
+            System.out.println("Failed to establish database connection.");
+        }
+        return false;
+    }
+
+    /**
+     * Collects the accounts that share a bucket with the given account in any table, together with their holdings
+     * and the holdings of the account itself, so the candidates can be scored exactly.
+     *
+     * @param accountId the ID of the account
+     * @return the holdings of the account and its candidate neighbours keyed by account ID,
+     *         or null if the account holds no positions
+     */
+    public Map<Integer, Map<Integer, Double>> getCandidates(int accountId) {
+        lock.readLock().lock();
+        try {
+            int[] signatures = signaturesByAccount.get(accountId);
+            if (signatures == null) {
+                return null;
+            }
+            Map<Integer, Map<Integer, Double>> candidates = new HashMap<>();
+            candidates.put(accountId, new HashMap<>(holdingsByAccount.get(accountId)));
+            for (int table = 0; table < tables; table++) {
+                for (int candidateId : buckets.get(table).getOrDefault(signatures[table], Collections.emptySet())) {
+                    if (!candidates.containsKey(candidateId)) {
+                        candidates.put(candidateId, new HashMap<>(holdingsByAccount.get(candidateId)));
+                    }
+                }
+            }
+            return candidates;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void positionChanged(int accountId, int stockId, double quantityDelta) {
+        lock.writeLock().lock();
+        try {
+            Map<Integer, Double> holdings = holdingsByAccount.computeIfAbsent(accountId, id -> new HashMap<>());
+            holdings.put(stockId, Decimals.roundToCents(holdings.getOrDefault(stockId, 0.0) + quantityDelta));
+            rehash(accountId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Computes the signatures of an account's holdings and moves it to the matching buckets.
+     * Must be called while holding the write lock.
+     *
+     * @param accountId the ID of the account
+     */
+    private void rehash(int accountId) {
+        Map<Integer, Double> holdings = holdingsByAccount.get(accountId);
+        int[] previous = signaturesByAccount.get(accountId);
+        int[] signatures = new int[tables];
+        for (int table = 0; table < tables; table++) {
+            int signature = 0;
+            for (int bit = 0; bit < bitsPerTable; bit++) {
+                long hyperplane = (long) table * bitsPerTable + bit;
+                double projection = 0.0;
+                for (Map.Entry<Integer, Double> position : holdings.entrySet()) {
+                    projection += position.getValue() * hyperplaneComponent(hyperplane, position.getKey());
+                }
+                if (projection >= 0) {
+                    signature |= 1 << bit;
+                }
+            }
+            signatures[table] = signature;
+            if (previous != null && previous[table] != signature) {
+                Set<Integer> bucket = buckets.get(table).get(previous[table]);
+                bucket.remove(accountId);
+                if (bucket.isEmpty()) {
+                    buckets.get(table).remove(previous[table]);
+                }
+            }
+            if (previous == null || previous[table] != signature) {
+                buckets.get(table).computeIfAbsent(signature, s -> new HashSet<>()).add(accountId);
+            }
+        }
+        signaturesByAccount.put(accountId, signatures);
+    }
+
+    /**
+     * Returns the component of a random hyperplane's normal along a stock's axis, drawn from a standard normal
+     * distribution so that the chance of two accounts sharing a bit falls with the angle between their holdings.
+     * The components are derived from the seed rather than stored, so new stocks need no setup.
+     *
+     * @param hyperplane the number of the hyperplane
+     * @param stockId    the ID of the stock
+     * @return the component
+     */
+    private double hyperplaneComponent(long hyperplane, int stockId) {
+        // SplitMix64 finalizer over the seed, hyperplane and stock, split into two uniforms for a Box-Muller transform
+        long z = seed + hyperplane * 0x9E3779B97F4A7C15L + stockId * 0xC2B2AE3D27D4EB4FL;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        double u1 = ((z >>> 32) + 1) / 4294967296.0;
+        double u2 = (z & 0xFFFFFFFFL) / 4294967296.0;
+        return Math.sqrt(-2 * Math.log(u1)) * Math.cos(2 * Math.PI * u2);
+    }
+}
@@ -0,0 +1,267 @@
+package Reporting;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The stock holdings of every account as a sparse matrix in compressed sparse row form.
+ * Each account with positions is one row; the positions of a row are held in ascending stock ID order
+ * in parallel primitive arrays, so memory grows with the number of positions rather than accounts times stocks.
+ * The Euclidean norm of every row, and a by-stock view of the positions, are computed once when the matrix is loaded.
+ */
+public class HoldingsMatrix {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Account ID of each row, in ascending order
+    private final int[] accountIds;
+    // The positions of row r are at indexes rowStarts[r] up to but excluding rowStarts[r + 1]
+    private final int[] rowStarts;
+    private final int[] stockIds;
+    private final double[] quantities;
+    private final double[] norms;
+    // The same positions grouped by stock, the positions of column c at indexes columnStarts[c] up to but
+    // excluding columnStarts[c + 1]
+    private final int[] columnStockIds;
+    private final int[] columnStarts;
+    private final int[] columnRows;
+    private final double[] columnQuantities;
+
+    private HoldingsMatrix(int[] accountIds, int[] rowStarts, int[] stockIds, double[] quantities) {
+        this.accountIds = accountIds;
+        this.rowStarts = rowStarts;
+        this.stockIds = stockIds;
+        this.quantities = quantities;
+        this.norms = new double[accountIds.length];
+        for (int row = 0; row < accountIds.length; row++) {
+            double sumOfSquares = 0.0;
+            for (int i = rowStarts[row]; i < rowStarts[row + 1]; i++) {
+                sumOfSquares += quantities[i] * quantities[i];
+            }
+            norms[row] = Math.sqrt(sumOfSquares);
+        }
+
+        // Group the positions by stock, keeping the rows of each stock in ascending order
+        int[] distinctStockIds = stockIds.clone();
+        Arrays.sort(distinctStockIds);
+        int columns = 0;
+        for (int i = 0; i < distinctStockIds.length; i++) {
+            if (columns == 0 || distinctStockIds[columns - 1] != distinctStockIds[i]) {
+                distinctStockIds[columns++] = distinctStockIds[i];
+            }
+        }
+        this.columnStockIds = Arrays.copyOf(distinctStockIds, columns);
+        this.columnStarts = new int[columns + 1];
+        for (int stockId : stockIds) {
+            columnStarts[Arrays.binarySearch(columnStockIds, stockId) + 1]++;
+        }
+        for (int column = 0; column < columns; column++) {
+            columnStarts[column + 1] += columnStarts[column];
+        }
+        int[] next = Arrays.copyOf(columnStarts, columns);
+        this.columnRows = new int[stockIds.length];
+        this.columnQuantities = new double[stockIds.length];
+        for (int row = 0; row < accountIds.length; row++) {
+            for (int i = rowStarts[row]; i < rowStarts[row + 1]; i++) {
+                int slot = next[Arrays.binarySearch(columnStockIds, stockIds[i])]++;
+                columnRows[slot] = row;
+                columnQuantities[slot] = quantities[i];
+            }
+        }
+    }
+
+    /**
+     * Reads the holdings of every account in one statement.
+     *
+     * @param connection the database connection
+     * @return the holdings matrix
+     * @throws SQLException if an SQL error occurs
+     */
+    public static HoldingsMatrix load(Connection connection) throws SQLException {
+        int[] accountIds = new int[INITIAL_CAPACITY];
+        int[] rowStarts = new int[INITIAL_CAPACITY + 1];
+        int[] stockIds = new int[INITIAL_CAPACITY];
+        double[] quantities = new double[INITIAL_CAPACITY];
+        int rows = 0;
+        int positions = 0;
+        String query = "SELECT account_id, stock_id, SUM(quantity) AS totalQuantity " +
+                "FROM Investments GROUP BY account_id, stock_id ORDER BY account_id, stock_id";
+        try (PreparedStatement stmt = connection.prepareStatement(query);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                int accountId = rs.getInt("account_id");
+                if (rows == 0 || accountIds[rows - 1] != accountId) {
+                    if (rows == accountIds.length) {
+                        accountIds = Arrays.copyOf(accountIds, rows * 2);
+                        rowStarts = Arrays.copyOf(rowStarts, rows * 2 + 1);
+                    }
+                    accountIds[rows] = accountId;
+                    rowStarts[rows] = positions;
+                    rows++;
+                }
+                if (positions == stockIds.length) {
+                    stockIds = Arrays.copyOf(stockIds, positions * 2);
+                    quantities = Arrays.copyOf(quantities, positions * 2);
+                }
+                stockIds[positions] = rs.getInt("stock_id");
+                quantities[positions] = rs.getDouble("totalQuantity");
+                positions++;
+            }
+        }
+        rowStarts[rows] = positions;
+        return new HoldingsMatrix(Arrays.copyOf(accountIds, rows), Arrays.copyOf(rowStarts, rows + 1),
+                Arrays.copyOf(stockIds, positions), Arrays.copyOf(quantities, positions));
+    }
+
+    /**
+     * Builds a matrix from holdings that are already in memory.
+     *
+     * @param holdings the quantity of each stock held, keyed by account ID and then by stock ID
+     * @return the holdings matrix
+     */
+    public static HoldingsMatrix of(Map<Integer, Map<Integer, Double>> holdings) {
+        int[] accountIds = holdings.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        int[] rowStarts = new int[accountIds.length + 1];
+        int positions = 0;
+        for (Map<Integer, Double> row : holdings.values()) {
+            positions += row.size();
+        }
+        int[] stockIds = new int[positions];
+        double[] quantities = new double[positions];
+        positions = 0;
+        for (int row = 0; row < accountIds.length; row++) {
+            rowStarts[row] = positions;
+            for (Map.Entry<Integer, Double> position : new TreeMap<>(holdings.get(accountIds[row])).entrySet()) {
+                stockIds[positions] = position.getKey();
+                quantities[positions] = position.getValue();
+                positions++;
+            }
+        }
+        rowStarts[accountIds.length] = positions;
+        return new HoldingsMatrix(accountIds, rowStarts, stockIds, quantities);
+    }
+
+    /**
+     * @return the number of accounts with positions
+     */
+    public int size() {
+        return accountIds.length;
+    }
+
+    /**
+     * @param row the row of an account
+     * @return the ID of the account
+     */
+    public int accountId(int row) {
+        return accountIds[row];
+    }
+
+    /**
+     * @param accountId the ID of the account
+     * @return the row of the account, or -1 if the account has no positions
+     */
+    public int rowOf(int accountId) {
+        int row = Arrays.binarySearch(accountIds, accountId);
+        return row < 0 ? -1 : row;
+    }
+
+    /**
+     * @param row the row of an account, or -1 for an account without positions
+     * @return the Euclidean norm of the account's holdings
+     */
+    public double norm(int row) {
+        return row < 0 ? 0.0 : norms[row];
+    }
+
+    /**
+     * @param row the row of an account, or -1 for an account without positions
+     * @return the index of the row's first position
+     */
+    public int rowStart(int row) {
+        return row < 0 ? 0 : rowStarts[row];
+    }
+
+    /**
+     * @param row the row of an account, or -1 for an account without positions
+     * @return the index just past the row's last position
+     */
+    public int rowEnd(int row) {
+        return row < 0 ? 0 : rowStarts[row + 1];
+    }
+
+    /**
+     * @param position the index of a position
+     * @return the ID of the stock held
+     */
+    public int stockId(int position) {
+        return stockIds[position];
+    }
+
+    /**
+     * @param position the index of a position
+     * @return the quantity held
+     */
+    public double quantity(int position) {
+        return quantities[position];
+    }
+
+    /**
+     * @param row     the row of an account, or -1 for an account without positions
+     * @param stockId the ID of the stock
+     * @return the quantity of the stock the account holds, or 0 if it holds none
+     */
+    public double quantityOf(int row, int stockId) {
+        if (row < 0) {
+            return 0.0;
+        }
+        int position = Arrays.binarySearch(stockIds, rowStarts[row], rowStarts[row + 1], stockId);
+        return position < 0 ? 0.0 : quantities[position];
+    }
+
+    /**
+     * Calculates the dot product of two rows by merging their sorted positions.
+     *
+     * @param row1 the first row, or -1 for an account without positions
+     * @param row2 the second row, or -1 for an account without positions
+     * @return the dot product
+     */
+    public double dot(int row1, int row2) {
+        double dotProduct = 0.0;
+        int i = rowStart(row1);
+        int end1 = rowEnd(row1);
+        int j = rowStart(row2);
+        int end2 = rowEnd(row2);
+        while (i < end1 && j < end2) {
+            if (stockIds[i] < stockIds[j]) {
+                i++;
+            } else if (stockIds[i] > stockIds[j]) {
+                j++;
+            } else {
+                dotProduct += quantities[i++] * quantities[j++];
+            }
+        }
+        return dotProduct;
+    }
+
+    /**
+     * Adds the dot product of a row with every row of the matrix to an array, visiting only the rows
+     * that hold one of its stocks. Each product is summed in ascending stock ID order, the same as dot.
+     *
+     * @param row         the row, or -1 for an account without positions
+     * @param dotProducts the array to add to, indexed by row and holding zeros for a fresh product
+     */
+    public void addDotProducts(int row, double[] dotProducts) {
+        for (int i = rowStart(row); i < rowEnd(row); i++) {
+            int column = Arrays.binarySearch(columnStockIds, stockIds[i]);
+            double quantity = quantities[i];
+            for (int j = columnStarts[column]; j < columnStarts[column + 1]; j++) {
+                dotProducts[columnRows[j]] += quantity * columnQuantities[j];
+            }
+        }
+    }
+}
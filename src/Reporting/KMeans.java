@@ -0,0 +1,610 @@
+package Reporting;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Lloyd's k-means clustering over a dense matrix of points, one point per row.
+ * The first centroids are chosen by k-means++ seeding from a seeded random number generator, so the same points,
+ * number of clusters and seed always give the same clustering. Each iteration moves every centroid to the mean of
+ * its points and reassigns every point to its nearest centroid by Euclidean distance, until no point changes cluster,
+ * no centroid moves further than the convergence tolerance, or the iteration limit is reached.
+ * Points are assigned and summed in parallel over fixed blocks of rows, and the partial sums of the blocks are merged
+ * in order, so the result does not depend on the number of threads.
+ * In accelerated mode the assignment step follows Hamerly's algorithm: every point keeps an upper bound on the
+ * distance to its centroid and a lower bound on the distance to any other centroid, both carried across iterations
+ * by how far the centroids moved, and a point is only measured against the centroids again when the bounds no longer
+ * prove that its centroid is the nearest. Clustering can also start from given centroids, such as those of an earlier
+ * run, instead of seeding.
+ * For more points than fit in memory, mini-batch k-means reads the points from a source in fixed-size batches and
+ * moves each centroid towards every point assigned to it by a step that shrinks as the centroid gathers points.
+ */
+public class KMeans {
+
+    // Seed of the random number generator when the caller has no reason to choose one
+    public static final long DEFAULT_SEED = 0x5DEECE66DL;
+    public static final int DEFAULT_MAX_ITERATIONS = 100;
+    public static final double DEFAULT_CONVERGENCE_TOLERANCE = 1e-3;
+
+    // Rows handled by one parallel task
+    private static final int BLOCK_SIZE = 4096;
+
+    private final long seed;
+    private final int maxIterations;
+    private final double convergenceTolerance;
+    private final boolean spherical;
+    private final boolean accelerated;
+
+    /**
+     * @param seed                 the seed of the random number generator used for seeding
+     * @param maxIterations        the maximum number of centroid updates, at least 1
+     * @param convergenceTolerance the distance below which a centroid is considered to have stopped moving
+     * @param spherical            true to scale every centroid to unit length after each update, which clusters
+     *                             unit-length points by cosine similarity (spherical k-means)
+     * @param accelerated          true to bound distances with the triangle inequality and skip the distance
+     *                             computations the bounds make unnecessary
+     */
+    public KMeans(long seed, int maxIterations, double convergenceTolerance, boolean spherical, boolean accelerated) {
+        if (maxIterations < 1 || convergenceTolerance < 0) {
+            throw new IllegalArgumentException("k-means needs at least 1 iteration and a non-negative convergence tolerance.");
+        }
+        this.seed = seed;
+        this.maxIterations = maxIterations;
+        this.convergenceTolerance = convergenceTolerance;
+        this.spherical = spherical;
+        this.accelerated = accelerated;
+    }
+
+    /**
+     * Clusters the points into k clusters, seeding the centroids by k-means++.
+     *
+     * @param points the points, one per row, all of the same length
+     * @param k      the number of clusters, from 1 to the number of points
+     * @return the clustering
+     */
+    public Clustering cluster(double[][] points, int k) {
+        return cluster(points, k, null);
+    }
+
+    /**
+     * Clusters the points into k clusters, starting from the given centroids when there are any.
+     *
+     * @param points           the points, one per row, all of the same length
+     * @param k                the number of clusters, from 1 to the number of points
+     * @param initialCentroids the k centroids to start from, or null to seed them by k-means++
+     * @return the clustering
+     */
+    public Clustering cluster(double[][] points, int k, double[][] initialCentroids) {
+        int n = points.length;
+        if (k < 1 || k > n) {
+            throw new IllegalArgumentException("k-means needs from 1 to " + n + " clusters.");
+        }
+        if (initialCentroids != null && initialCentroids.length != k) {
+            throw new IllegalArgumentException("k-means needs " + k + " initial centroids.");
+        }
+        double[][] centroids;
+        if (initialCentroids == null) {
+            centroids = seedCentroids(points, k);
+        } else {
+            centroids = new double[k][];
+            for (int c = 0; c < k; c++) {
+                centroids[c] = initialCentroids[c].clone();
+            }
+        }
+        int[] assignments = new int[n];
+        Arrays.fill(assignments, -1);
+        // Hamerly's bounds: the distance to the assigned centroid, and to the nearest other centroid
+        double[] upperBounds = accelerated ? new double[n] : null;
+        double[] lowerBounds = accelerated ? new double[n] : null;
+        if (accelerated) {
+            assignWithBounds(points, centroids, assignments, upperBounds, lowerBounds);
+        } else {
+            assign(points, centroids, assignments);
+        }
+        int iterations = 0;
+        while (iterations < maxIterations) {
+            iterations++;
+            double[][] updated = updateCentroids(points, assignments, centroids);
+            double[] shifts = new double[k];
+            double maxShift = 0.0;
+            for (int c = 0; c < k; c++) {
+                shifts[c] = Math.sqrt(squaredDistance(centroids[c], updated[c]));
+                maxShift = Math.max(maxShift, shifts[c]);
+            }
+            centroids = updated;
+            int changed = accelerated
+                    ? reassignWithBounds(points, centroids, shifts, assignments, upperBounds, lowerBounds)
+                    : assign(points, centroids, assignments);
+            if (changed == 0 || maxShift <= convergenceTolerance) {
+                break;
+            }
+        }
+        return new Clustering(assignments, centroids, iterations);
+    }
+
+    /**
+     * Draws a uniform random sample of the points of a source in one read, by reservoir sampling, and counts them.
+     *
+     * @param source     the source of the points
+     * @param sampleSize the largest number of points to keep
+     * @return the sample, or null if the source could not be read
+     */
+    public Sample sample(PointSource source, int sampleSize) {
+        Random random = new Random(seed);
+        double[][] points = new double[sampleSize][];
+        long[] seen = {0};
+        boolean read = source.forEachBatch(sampleSize, (ids, batch, count) -> {
+            for (int i = 0; i < count; i++) {
+                long slot = seen[0] < sampleSize ? seen[0] : (long) (random.nextDouble() * (seen[0] + 1));
+                if (slot < sampleSize) {
+                    points[(int) slot] = batch[i].clone();
+                }
+                seen[0]++;
+            }
+        });
+        if (!read) {
+            return null;
+        }
+        return new Sample(Arrays.copyOf(points, (int) Math.min(seen[0], sampleSize)), seen[0]);
+    }
+
+    /**
+     * Clusters the points of a source by mini-batch k-means, starting from the given centroids.
+     * Each read of the source is one pass: every batch is assigned to the current centroids, and each point then
+     * moves its centroid towards it by one over the number of points the centroid has gathered so far, so a centroid
+     * stays the mean of the points assigned to it. Passes are repeated until no centroid moves further than the
+     * convergence tolerance during a pass, or the iteration limit is reached. Only the centroids and one batch are
+     * held in memory.
+     *
+     * @param source           the source of the points
+     * @param initialCentroids the centroids to start from
+     * @param batchSize        the number of points in a batch
+     * @return the centroids, or null if the source could not be read
+     */
+    public double[][] clusterMiniBatch(PointSource source, double[][] initialCentroids, int batchSize) {
+        int k = initialCentroids.length;
+        double[][] centroids = new double[k][];
+        for (int c = 0; c < k; c++) {
+            centroids[c] = initialCentroids[c].clone();
+        }
+        long[] counts = new long[k];
+        for (int pass = 0; pass < maxIterations; pass++) {
+            double[][] before = new double[k][];
+            for (int c = 0; c < k; c++) {
+                before[c] = centroids[c].clone();
+            }
+            int[] assignments = new int[batchSize];
+            boolean read = source.forEachBatch(batchSize, (ids, batch, count) -> {
+                IntStream.range(0, count).parallel().forEach(i -> assignments[i] = nearestCentroid(batch[i], centroids));
+                for (int i = 0; i < count; i++) {
+                    double[] centroid = centroids[assignments[i]];
+                    double step = 1.0 / ++counts[assignments[i]];
+                    for (int d = 0; d < centroid.length; d++) {
+                        centroid[d] += step * (batch[i][d] - centroid[d]);
+                    }
+                }
+                if (spherical) {
+                    for (double[] centroid : centroids) {
+                        normalize(centroid);
+                    }
+                }
+            });
+            if (!read) {
+                return null;
+            }
+            double maxShift = 0.0;
+            for (int c = 0; c < k; c++) {
+                maxShift = Math.max(maxShift, Math.sqrt(squaredDistance(before[c], centroids[c])));
+            }
+            if (maxShift <= convergenceTolerance) {
+                break;
+            }
+        }
+        return centroids;
+    }
+
+    /**
+     * Chooses the first centroids by k-means++: the first is a point chosen uniformly at random, and each
+     * following one is a point chosen with probability proportional to its squared distance from the nearest
+     * centroid chosen so far.
+     *
+     * @param points the points
+     * @param k      the number of clusters
+     * @return the initial centroids
+     */
+    private double[][] seedCentroids(double[][] points, int k) {
+        int n = points.length;
+        Random random = new Random(seed);
+        double[][] centroids = new double[k][];
+        centroids[0] = points[random.nextInt(n)].clone();
+        double[] nearest = new double[n];
+        Arrays.fill(nearest, Double.POSITIVE_INFINITY);
+        for (int c = 1; c < k; c++) {
+            double[] previous = centroids[c - 1];
+            double[] blockTotals = new double[blockCount(n)];
+            IntStream.range(0, blockTotals.length).parallel().forEach(block -> {
+                double total = 0.0;
+                for (int i = block * BLOCK_SIZE; i < Math.min(n, (block + 1) * BLOCK_SIZE); i++) {
+                    nearest[i] = Math.min(nearest[i], squaredDistance(points[i], previous));
+                    total += nearest[i];
+                }
+                blockTotals[block] = total;
+            });
+            double total = 0.0;
+            for (double blockTotal : blockTotals) {
+                total += blockTotal;
+            }
+            int chosen;
+            if (total > 0) {
+                double target = random.nextDouble() * total;
+                chosen = 0;
+                double cumulative = nearest[0];
+                while (cumulative <= target && chosen < n - 1) {
+                    cumulative += nearest[++chosen];
+                }
+            } else {
+                // Every point coincides with a centroid already chosen
+                chosen = random.nextInt(n);
+            }
+            centroids[c] = points[chosen].clone();
+        }
+        return centroids;
+    }
+
+    /**
+     * Assigns every point to its nearest centroid, the lowest numbered one on a tie.
+     *
+     * @param points      the points
+     * @param centroids   the centroids
+     * @param assignments the cluster of every point, updated in place
+     * @return the number of points whose cluster changed
+     */
+    private int assign(double[][] points, double[][] centroids, int[] assignments) {
+        int n = points.length;
+        return IntStream.range(0, blockCount(n)).parallel().map(block -> {
+            int changed = 0;
+            for (int i = block * BLOCK_SIZE; i < Math.min(n, (block + 1) * BLOCK_SIZE); i++) {
+                int closest = nearestCentroid(points[i], centroids);
+                if (assignments[i] != closest) {
+                    assignments[i] = closest;
+                    changed++;
+                }
+            }
+            return changed;
+        }).sum();
+    }
+
+    /**
+     * Assigns every point to its nearest centroid and sets its bounds to the distances to the nearest
+     * and the second nearest centroids.
+     *
+     * @param points      the points
+     * @param centroids   the centroids
+     * @param assignments the cluster of every point, updated in place
+     * @param upperBounds the upper bound of every point, updated in place
+     * @param lowerBounds the lower bound of every point, updated in place
+     */
+    private void assignWithBounds(double[][] points, double[][] centroids, int[] assignments,
+                                  double[] upperBounds, double[] lowerBounds) {
+        int n = points.length;
+        IntStream.range(0, blockCount(n)).parallel().forEach(block -> {
+            for (int i = block * BLOCK_SIZE; i < Math.min(n, (block + 1) * BLOCK_SIZE); i++) {
+                assignments[i] = nearestCentroid(points[i], centroids, i, upperBounds, lowerBounds);
+            }
+        });
+    }
+
+    /**
+     * Reassigns the points after the centroids moved, by Hamerly's algorithm. The bounds of every point are first
+     * loosened by how far the centroids moved. A point whose upper bound is no more than its lower bound, or than half
+     * the distance from its centroid to the nearest other centroid, cannot be nearer any other centroid and keeps its
+     * cluster without measuring anything. Otherwise the upper bound is tightened to the exact distance, and only if
+     * that still does not settle it is the point measured against every centroid.
+     *
+     * @param points      the points
+     * @param centroids   the moved centroids
+     * @param shifts      how far each centroid moved
+     * @param assignments the cluster of every point, updated in place
+     * @param upperBounds the upper bound of every point, updated in place
+     * @param lowerBounds the lower bound of every point, updated in place
+     * @return the number of points whose cluster changed
+     */
+    private int reassignWithBounds(double[][] points, double[][] centroids, double[] shifts, int[] assignments,
+                                   double[] upperBounds, double[] lowerBounds) {
+        int n = points.length;
+        int k = centroids.length;
+        double[] halfGaps = new double[k];
+        Arrays.fill(halfGaps, Double.POSITIVE_INFINITY);
+        for (int c = 0; c < k; c++) {
+            for (int other = c + 1; other < k; other++) {
+                double halfGap = Math.sqrt(squaredDistance(centroids[c], centroids[other])) / 2;
+                halfGaps[c] = Math.min(halfGaps[c], halfGap);
+                halfGaps[other] = Math.min(halfGaps[other], halfGap);
+            }
+        }
+        // The nearest other centroid of a point moved at most as far as the furthest moving centroid but its own
+        int furthest = 0;
+        for (int c = 1; c < k; c++) {
+            if (shifts[c] > shifts[furthest]) {
+                furthest = c;
+            }
+        }
+        double secondShift = 0.0;
+        for (int c = 0; c < k; c++) {
+            if (c != furthest) {
+                secondShift = Math.max(secondShift, shifts[c]);
+            }
+        }
+        int furthestCentroid = furthest;
+        double maxShift = shifts[furthest];
+        double maxOtherShift = secondShift;
+        return IntStream.range(0, blockCount(n)).parallel().map(block -> {
+            int changed = 0;
+            for (int i = block * BLOCK_SIZE; i < Math.min(n, (block + 1) * BLOCK_SIZE); i++) {
+                int assigned = assignments[i];
+                upperBounds[i] += shifts[assigned];
+                lowerBounds[i] -= assigned == furthestCentroid ? maxOtherShift : maxShift;
+                double bound = Math.max(halfGaps[assigned], lowerBounds[i]);
+                if (upperBounds[i] <= bound) {
+                    continue;
+                }
+                upperBounds[i] = Math.sqrt(squaredDistance(points[i], centroids[assigned]));
+                if (upperBounds[i] <= bound) {
+                    continue;
+                }
+                int closest = nearestCentroid(points[i], centroids, i, upperBounds, lowerBounds);
+                if (closest != assigned) {
+                    assignments[i] = closest;
+                    changed++;
+                }
+            }
+            return changed;
+        }).sum();
+    }
+
+    /**
+     * Moves every centroid to the mean of its points. A centroid left without points keeps its position.
+     *
+     * @param points      the points
+     * @param assignments the cluster of every point
+     * @param centroids   the current centroids
+     * @return the updated centroids
+     */
+    private double[][] updateCentroids(double[][] points, int[] assignments, double[][] centroids) {
+        int n = points.length;
+        int k = centroids.length;
+        int dimensions = centroids[0].length;
+        double[][][] blockSums = new double[blockCount(n)][][];
+        long[][] blockCounts = new long[blockSums.length][];
+        IntStream.range(0, blockSums.length).parallel().forEach(block -> {
+            double[][] sums = new double[k][dimensions];
+            long[] counts = new long[k];
+            for (int i = block * BLOCK_SIZE; i < Math.min(n, (block + 1) * BLOCK_SIZE); i++) {
+                double[] sum = sums[assignments[i]];
+                double[] point = points[i];
+                for (int d = 0; d < dimensions; d++) {
+                    sum[d] += point[d];
+                }
+                counts[assignments[i]]++;
+            }
+            blockSums[block] = sums;
+            blockCounts[block] = counts;
+        });
+        double[][] updated = new double[k][dimensions];
+        long[] counts = new long[k];
+        for (int block = 0; block < blockSums.length; block++) {
+            for (int c = 0; c < k; c++) {
+                for (int d = 0; d < dimensions; d++) {
+                    updated[c][d] += blockSums[block][c][d];
+                }
+                counts[c] += blockCounts[block][c];
+            }
+        }
+        for (int c = 0; c < k; c++) {
+            if (counts[c] == 0) {
+                updated[c] = centroids[c].clone();
+                continue;
+            }
+            for (int d = 0; d < dimensions; d++) {
+                updated[c][d] /= counts[c];
+            }
+            if (spherical) {
+                normalize(updated[c]);
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * @param point     the point
+     * @param centroids the centroids
+     * @return the index of the centroid nearest the point, the lowest one on a tie
+     */
+    static int nearestCentroid(double[] point, double[][] centroids) {
+        int closest = 0;
+        double minDistance = squaredDistance(point, centroids[0]);
+        for (int c = 1; c < centroids.length; c++) {
+            double distance = squaredDistance(point, centroids[c]);
+            if (distance < minDistance) {
+                minDistance = distance;
+                closest = c;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Finds the centroid nearest a point and records the distances to the nearest and the second nearest centroids
+     * as the point's bounds.
+     *
+     * @param point       the point
+     * @param centroids   the centroids
+     * @param i           the row of the point
+     * @param upperBounds the upper bound of every point
+     * @param lowerBounds the lower bound of every point
+     * @return the index of the centroid nearest the point, the lowest one on a tie
+     */
+    private static int nearestCentroid(double[] point, double[][] centroids, int i, double[] upperBounds, double[] lowerBounds) {
+        int closest = 0;
+        double minDistance = squaredDistance(point, centroids[0]);
+        double secondDistance = Double.POSITIVE_INFINITY;
+        for (int c = 1; c < centroids.length; c++) {
+            double distance = squaredDistance(point, centroids[c]);
+            if (distance < minDistance) {
+                secondDistance = minDistance;
+                minDistance = distance;
+                closest = c;
+            } else if (distance < secondDistance) {
+                secondDistance = distance;
+            }
+        }
+        upperBounds[i] = Math.sqrt(minDistance);
+        lowerBounds[i] = Math.sqrt(secondDistance);
+        return closest;
+    }
+
+    /**
+     * @param a the first vector
+     * @param b the second vector, of the same length
+     * @return the squared Euclidean distance between the vectors
+     */
+    static double squaredDistance(double[] a, double[] b) {
+        double sum = 0.0;
+        for (int d = 0; d < a.length; d++) {
+            double difference = a[d] - b[d];
+            sum += difference * difference;
+        }
+        return sum;
+    }
+
+    /**
+     * Scales a vector to unit length in place. A zero vector is left as it is.
+     *
+     * @param vector the vector
+     */
+    static void normalize(double[] vector) {
+        double sumOfSquares = 0.0;
+        for (double component : vector) {
+            sumOfSquares += component * component;
+        }
+        if (sumOfSquares > 0) {
+            double norm = Math.sqrt(sumOfSquares);
+            for (int d = 0; d < vector.length; d++) {
+                vector[d] /= norm;
+            }
+        }
+    }
+
+    private static int blockCount(int rows) {
+        return (rows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    /**
+     * A source of points that can be read any number of times, a batch at a time.
+     */
+    public interface PointSource {
+
+        /**
+         * Reads every point once, in order, handing them to the consumer in batches.
+         *
+         * @param batchSize the largest number of points in a batch
+         * @param consumer  the consumer of the batches
+         * @return true if every point was read, false otherwise
+         */
+        boolean forEachBatch(int batchSize, BatchConsumer consumer);
+    }
+
+    /**
+     * Receives the points of a source a batch at a time. The arrays belong to the source and are reused for the
+     * next batch, so a consumer must copy any point it keeps.
+     */
+    public interface BatchConsumer {
+
+        /**
+         * @param ids    the ID of each point, such as an account ID
+         * @param points the points, one per row
+         * @param count  the number of points in the batch, which fill the first rows of the arrays
+         */
+        void accept(int[] ids, double[][] points, int count);
+    }
+
+    /**
+     * A uniform random sample of the points of a source, and the number of points the source holds.
+     */
+    public static final class Sample {
+        private final double[][] points;
+        private final long population;
+
+        Sample(double[][] points, long population) {
+            this.points = points;
+            this.population = population;
+        }
+
+        /**
+         * @return the sampled points, one per row
+         */
+        public double[][] points() {
+            return points;
+        }
+
+        /**
+         * @return the number of points the source holds
+         */
+        public long population() {
+            return population;
+        }
+    }
+
+    /**
+     * The result of a clustering: the cluster of every point and the final centroids.
+     */
+    public static final class Clustering {
+        private final int[] assignments;
+        private final double[][] centroids;
+        private final int iterations;
+
+        Clustering(int[] assignments, double[][] centroids, int iterations) {
+            this.assignments = assignments;
+            this.centroids = centroids;
+            this.iterations = iterations;
+        }
+
+        /**
+         * @param point the row of a point
+         * @return the cluster the point is assigned to
+         */
+        public int assignment(int point) {
+            return assignments[point];
+        }
+
+        /**
+         * @param cluster the number of a cluster
+         * @return the centroid of the cluster
+         */
+        public double[] centroid(int cluster) {
+            return centroids[cluster];
+        }
+
+        /**
+         * @return the centroids of every cluster; the arrays are not copied
+         */
+        public double[][] centroids() {
+            return centroids;
+        }
+
+        /**
+         * @return the number of clusters
+         */
+        public int clusters() {
+            return centroids.length;
+        }
+
+        /**
+         * @return the number of centroid updates made
+         */
+        public int iterations() {
+            return iterations;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package Reporting;
 
 import Database.ConnectionEstablisher;
+import Database.ReferenceDataCache;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -8,13 +9,23 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class RecommendationSystem {
-    ConnectionEstablisher connectionEstablisher = new ConnectionEstablisher();
 
-    public RecommendationSystem() {
+    // Number of accounts whose similarities one parallel task computes in the batch recommendations
+    private static final int SIMILARITY_BLOCK_SIZE = 64;
 
+    ConnectionEstablisher connectionEstablisher;
+    ReferenceDataCache referenceDataCache;
+    // Present once approximate recommendations are enabled
+    volatile HoldingsLshIndex holdingsIndex;
+
+    public RecommendationSystem(ConnectionEstablisher connectionEstablisher, ReferenceDataCache referenceDataCache) {
+        this.connectionEstablisher = connectionEstablisher;
+        this.referenceDataCache = referenceDataCache;
     }
 
     /**
@@ -27,128 +38,36 @@ public class RecommendationSystem {
      * References for concept for the below method: https://en.wikipedia.org/wiki/Cosine_similarity
      */
     public Map<String, Boolean> stockRecommendations(int accountId, int maxRecommendations, int numComparators) {
-        Connection connection = connectionEstablisher.establishConnection();
-        Map<String, Boolean> recommendations = new HashMap<>();
-        if (connection != null) {
-            try {
-                Map<Integer, Double> stocksForGivenAccount = getStocksForGivenAccount(accountId);
-                Map<Integer, Map<Integer, Double>> accountHoldings = getStockHoldingsForAccount(accountId);
-                if(numComparators>accountHoldings.size()){
-                    return recommendations;
-                }
-
-                Map<Integer, Double> comparatorAccounts = getComparatorAccounts(accountId, stocksForGivenAccount, accountHoldings);
-                List<Map.Entry<Integer, Double>> sortedAccounts = new ArrayList<>(comparatorAccounts.entrySet());
-                sortedAccounts.sort(Map.Entry.comparingByValue(Comparator.reverseOrder()));
-                Map<Integer, Double> topComparators = new LinkedHashMap<>();
-                int count = 0;
-                for (Map.Entry<Integer, Double> entry : sortedAccounts) {
-                    if (count < numComparators) {
-                        topComparators.put(entry.getKey(), entry.getValue());
-                    }
-                    count++;
-                }
-
-                Map<String, Integer> stocksToBuy = new HashMap<>();
-                Map<String, Integer> stocksToSell = new HashMap<>();
-                Map<Boolean, Map<String, Integer>> combinedMap = new HashMap<>();
-                for (Map.Entry<Integer, Map<Integer, Double>> entry : accountHoldings.entrySet()) {
-                    int accId = entry.getKey();
-                    Map<Integer, Double> holdings = entry.getValue();
-                    for (Map.Entry<Integer, Double> stockEntry : holdings.entrySet()) {
-
-                        int stockId = stockEntry.getKey();
-                        double quantity = stockEntry.getValue();
-                        if (stocksForGivenAccount.containsKey(stockId)) {
-                            // Account doesn't have this stock
-                            int majorityHasStock = majorityHasStock(stockId, topComparators, accountHoldings, stocksForGivenAccount);
-                            int majorityDoesNoHasStock = majorityDoesNotHasStock(stockId, topComparators, accountHoldings, stocksForGivenAccount);
-                            if (majorityHasStock > 0) {
-                                String name = getStockSymbolByStockId(stockId);
-                                stocksToBuy.put(name, majorityHasStock);
-                            }
-                            if (majorityDoesNoHasStock > 0) {
-                                String name = getStockSymbolByStockId(stockId);
-                                stocksToSell.put(name, majorityDoesNoHasStock);
-                            }
-                        }
-                    }
-                }
-                combinedMap.put(true, stocksToBuy);
-                combinedMap.put(false, stocksToSell);
-
-                // Define a custom comparator
-                Comparator<Map.Entry<String, Integer>> entryComparator = Map.Entry.comparingByValue(Comparator.reverseOrder());
-
-                combinedMap.forEach((key, value) -> {
-                    Map<String, Integer> sortedInnerMap = value.entrySet().stream()
-                            .sorted(entryComparator)
-                            .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (oldValue, newValue) -> oldValue, LinkedHashMap::new));
-                    combinedMap.put(key, sortedInnerMap);
-                });
-                Map<Boolean, Map<String, Integer>> sortedCombinedMap = combinedMap.entrySet().stream()
-                        .sorted((e1, e2) -> {
-                            int sum1 = e1.getValue().values().stream().mapToInt(Integer::intValue).sum();
-                            int sum2 = e2.getValue().values().stream().mapToInt(Integer::intValue).sum();
-                            return Integer.compare(sum1, sum2);
-                        })
-                        .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (oldValue, newValue) -> oldValue, LinkedHashMap::new));
-
-
-                for (Map.Entry<Boolean, Map<String, Integer>> entry : sortedCombinedMap.entrySet()) {
-                    boolean toBuy = entry.getKey();
-                    Map<String, Integer> stocks = entry.getValue();
-
-                    // Iterate through the stocks
-                    for (Map.Entry<String, Integer> stockEntry : stocks.entrySet()) {
-                        String stockSymbol = stockEntry.getKey();
-
-                        // Check if adding the current entry would exceed maxRecommendations
-                        if (recommendations.size() < maxRecommendations) {
-                            // Add the stock to recommendations
-                            recommendations.put(stockSymbol, toBuy);
-                        } else {
-                            // Break out of the loop if the maxRecommendations limit is reached
-                            break;
-                        }
-                    }
-                    // Break out of the loop if the maxRecommendations limit is reached
-                    if (recommendations.size() >= maxRecommendations) {
-                        break;
-                    }
-                }
-
-
-            } finally {
-                connectionEstablisher.closeConnection(connection);
-            }
-
-        } else {
-            System.out.println("Failed to establish database connection.");
+        HoldingsMatrix holdings = loadHoldings();
+        if (holdings == null) {
+            return new HashMap<>();
         }
-        return recommendations;
+        return stockRecommendations(holdings, accountId, maxRecommendations, numComparators, null);
     }
 
     /**
-     * Retrieves the stock symbol corresponding to a given stock ID.
+     * Generates stock recommendations for every account of an advisor from one load of the holdings.
      *
-     * @param stockId the ID of the stock
-     * @return the stock symbol
+     * @param advisorId          the ID of the advisor
+     * @param maxRecommendations the maximum number of recommendations to generate per account
+     * @param numComparators     the number of comparator accounts to consider per account
+     * @return a map of account IDs to their stock symbols and buy/sell flags
      */
-    private String getStockSymbolByStockId(int stockId) {
+    public Map<Integer, Map<String, Boolean>> stockRecommendationsForAdvisor(int advisorId, int maxRecommendations, int numComparators) {
+        List<Integer> accountIds = new ArrayList<>();
+        HoldingsMatrix holdings = null;
         Connection connection = connectionEstablisher.establishConnection();
-        String stockSymbol = null;
-
         if (connection != null) {
             try {
-                String query = "SELECT stockSymbol FROM Stocks WHERE stock_id = ?";
+                String query = "SELECT account_id FROM Accounts WHERE advisor_id = ?";
                 try (PreparedStatement stmt = connection.prepareStatement(query)) {
-                    stmt.setInt(1, stockId);
+                    stmt.setInt(1, advisorId);
                     ResultSet rs = stmt.executeQuery();
-                    if (rs.next()) {
-                        stockSymbol = rs.getString("stockSymbol");
+                    while (rs.next()) {
+                        accountIds.add(rs.getInt("account_id"));
                     }
                 }
+                holdings = HoldingsMatrix.load(connection);
             } catch (SQLException e) {
                 System.out.println("SQL error occurred: " + e.getMessage());
             } finally {
@@ -157,160 +76,239 @@ public class RecommendationSystem {
         } else {
             System.out.println("Failed to establish database connection.");
         }
-
-        return stockSymbol;
+        if (holdings == null) {
+            return new HashMap<>();
+        }
+        return stockRecommendations(holdings, accountIds, maxRecommendations, numComparators);
     }
 
+    /**
+     * Generates stock recommendations for many accounts from one load of the holdings.
+     *
+     * @param accountIds         the IDs of the accounts
+     * @param maxRecommendations the maximum number of recommendations to generate per account
+     * @param numComparators     the number of comparator accounts to consider per account
+     * @return a map of account IDs to their stock symbols and buy/sell flags
+     */
+    public Map<Integer, Map<String, Boolean>> stockRecommendations(Collection<Integer> accountIds, int maxRecommendations, int numComparators) {
+        HoldingsMatrix holdings = loadHoldings();
+        if (holdings == null) {
+            return new HashMap<>();
+        }
+        return stockRecommendations(holdings, accountIds, maxRecommendations, numComparators);
+    }
 
     /**
-     * Determines the majority of comparator accounts that have a particular stock.
+     * Generates stock recommendations for many accounts from holdings that are already loaded.
+     * The accounts are split into blocks of SIMILARITY_BLOCK_SIZE that a parallel stream runs on the common ForkJoin pool.
+     * Within a block, the similarities of each account with every other are one sparse matrix-vector product
+     * over the holdings grouped by stock, accumulated into an array the block reuses.
      *
-     * @param stockId               the ID of the stock
-     * @param topComparators        the top comparator accounts
-     * @param accountHoldings       the holdings of all accounts
-     * @param stocksForGivenAccount the stocks held by the given account
-     * @return the count of accounts in majority that have the stock
+     * @param holdings           the holdings of all accounts
+     * @param accountIds         the IDs of the accounts
+     * @param maxRecommendations the maximum number of recommendations to generate per account
+     * @param numComparators     the number of comparator accounts to consider per account
+     * @return a map of account IDs to their stock symbols and buy/sell flags
      */
-    private int majorityHasStock(int stockId, Map<Integer, Double> topComparators, Map<Integer, Map<Integer, Double>> accountHoldings, Map<Integer, Double> stocksForGivenAccount) {
-        int countWithStock = 0;
-        int totalCount = topComparators.size();
-        for (Integer s : accountHoldings.keySet()) {
-            if (topComparators.containsKey(s)) {
-                if (stocksForGivenAccount.get(stockId) == 0 && accountHoldings.get(s).get(stockId) > 0) {
-                    countWithStock++;
-                }
+    private Map<Integer, Map<String, Boolean>> stockRecommendations(HoldingsMatrix holdings, Collection<Integer> accountIds,
+                                                                    int maxRecommendations, int numComparators) {
+        List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(accountIds));
+        Map<Integer, Map<String, Boolean>> recommendations = new ConcurrentHashMap<>();
+        int blocks = (ids.size() + SIMILARITY_BLOCK_SIZE - 1) / SIMILARITY_BLOCK_SIZE;
+        IntStream.range(0, blocks).parallel().forEach(block -> {
+            double[] dotProducts = new double[holdings.size()];
+            for (int i = block * SIMILARITY_BLOCK_SIZE; i < Math.min((block + 1) * SIMILARITY_BLOCK_SIZE, ids.size()); i++) {
+                int accountId = ids.get(i);
+                Arrays.fill(dotProducts, 0.0);
+                holdings.addDotProducts(holdings.rowOf(accountId), dotProducts);
+                recommendations.put(accountId, stockRecommendations(holdings, accountId, maxRecommendations, numComparators, dotProducts));
             }
+        });
+        return new HashMap<>(recommendations);
+    }
+
+    /**
+     * Sets the index the approximate recommendations search for comparators in.
+     *
+     * @param holdingsIndex the approximate nearest-neighbour index over all holdings
+     */
+    public void setHoldingsIndex(HoldingsLshIndex holdingsIndex) {
+        this.holdingsIndex = holdingsIndex;
+    }
+
+    /**
+     * Generates stock recommendations for a given account, choosing the comparators only among the accounts
+     * the holdings index puts near it instead of among every account. The candidates are still scored exactly,
+     * so the result equals stockRecommendations whenever the true comparators are among the candidates.
+     * Falls back to the exact search when no index is set or it finds fewer candidates than numComparators.
+     *
+     * @param accountId          the ID of the account
+     * @param maxRecommendations the maximum number of recommendations to generate
+     * @param numComparators     the number of comparator accounts to consider
+     * @return a map of stock symbols to buy/sell flags
+     */
+    public Map<String, Boolean> approximateStockRecommendations(int accountId, int maxRecommendations, int numComparators) {
+        HoldingsMatrix candidates = loadCandidates(accountId, numComparators);
+        if (candidates == null) {
+            return stockRecommendations(accountId, maxRecommendations, numComparators);
         }
-        if (countWithStock > (totalCount / 2)) {
-            return countWithStock;
+        return stockRecommendations(candidates, accountId, maxRecommendations, numComparators, null);
+    }
+
+    /**
+     * Measures how many of the comparators the exact search chooses for an account are also chosen
+     * by the approximate search.
+     *
+     * @param accountId      the ID of the account
+     * @param numComparators the number of comparator accounts to consider
+     * @return the fraction of the exact comparators found by the approximate search, from 0 to 1,
+     *         or NaN if no index is set or the holdings could not be read
+     */
+    public double comparatorRecall(int accountId, int numComparators) {
+        HoldingsMatrix holdings = holdingsIndex == null ? null : loadHoldings();
+        if (holdings == null) {
+            return Double.NaN;
+        }
+        Set<Integer> exactComparators = getTopComparatorIds(holdings, accountId, numComparators);
+        if (exactComparators.isEmpty()) {
+            return 1.0;
         }
-        return 0;
+        HoldingsMatrix candidates = loadCandidates(accountId, numComparators);
+        if (candidates == null) {
+            // The approximate search falls back to the exact one
+            return 1.0;
+        }
+        Set<Integer> approximateComparators = getTopComparatorIds(candidates, accountId, numComparators);
+        approximateComparators.retainAll(exactComparators);
+        return (double) approximateComparators.size() / exactComparators.size();
     }
 
     /**
-     * Determines the majority of comparator accounts that do not have a particular stock.
+     * Generates stock recommendations for a given account from holdings that are already loaded.
+     * The most similar comparators are kept in a bounded heap, and the votes for every stock are counted
+     * in a single pass over the comparators' positions.
      *
-     * @param stockId               the ID of the stock
-     * @param topComparators        the top comparator accounts
-     * @param accountHoldings       the holdings of all accounts
-     * @param stocksForGivenAccount the stocks held by the given account
-     * @return the count of accounts in majority that do not have the stock
+     * @param holdings           the holdings of all accounts
+     * @param accountId          the ID of the account
+     * @param maxRecommendations the maximum number of recommendations to generate
+     * @param numComparators     the number of comparator accounts to consider
+     * @param dotProducts        the dot product of the account with every row, or null to compute them here
+     * @return a map of stock symbols to buy/sell flags
      */
-    private int majorityDoesNotHasStock(int stockId, Map<Integer, Double> topComparators, Map<Integer, Map<Integer, Double>> accountHoldings, Map<Integer, Double> stocksForGivenAccount) {
-        int countWithStock = 0;
-        int totalCount = topComparators.size();
-        for (Integer s : accountHoldings.keySet()) {
-            if (topComparators.containsKey(s)) {
-                if (stocksForGivenAccount.get(stockId) > 0 && accountHoldings.get(s).get(stockId) == 0) {
-                    countWithStock++;
+    private Map<String, Boolean> stockRecommendations(HoldingsMatrix holdings, int accountId, int maxRecommendations, int numComparators,
+                                                      double[] dotProducts) {
+        int accountRow = holdings.rowOf(accountId);
+        int otherAccounts = holdings.size() - (accountRow < 0 ? 0 : 1);
+        if (numComparators > otherAccounts) {
+            return new HashMap<>();
+        }
+        int[] comparatorRows = getTopComparators(holdings, accountRow, numComparators, dotProducts);
+
+        // Buy votes: comparators holding a stock the account does not hold.
+        // Holder counts: comparators holding a stock the account holds, whose complement are the sell votes.
+        Map<Integer, Integer> buyVotes = new TreeMap<>();
+        Map<Integer, Integer> holderCounts = new HashMap<>();
+        for (int row : comparatorRows) {
+            for (int position = holdings.rowStart(row); position < holdings.rowEnd(row); position++) {
+                int stockId = holdings.stockId(position);
+                double quantity = holdings.quantity(position);
+                double accountQuantity = holdings.quantityOf(accountRow, stockId);
+                if (accountQuantity == 0 && quantity > 0) {
+                    buyVotes.merge(stockId, 1, Integer::sum);
+                } else if (accountQuantity > 0 && quantity != 0) {
+                    holderCounts.merge(stockId, 1, Integer::sum);
                 }
             }
         }
 
-        if (countWithStock > (totalCount / 2)) {
-            return countWithStock;
+        // A stock is recommended when a majority of the comparators vote for it
+        int majority = comparatorRows.length / 2;
+        Map<String, Integer> stocksToBuy = new HashMap<>();
+        Map<String, Integer> stocksToSell = new HashMap<>();
+        for (Map.Entry<Integer, Integer> vote : buyVotes.entrySet()) {
+            if (vote.getValue() > majority) {
+                stocksToBuy.put(referenceDataCache.getStockSymbol(vote.getKey()), vote.getValue());
+            }
+        }
+        for (int position = holdings.rowStart(accountRow); position < holdings.rowEnd(accountRow); position++) {
+            int stockId = holdings.stockId(position);
+            int sellVotes = comparatorRows.length - holderCounts.getOrDefault(stockId, 0);
+            if (holdings.quantity(position) > 0 && sellVotes > majority) {
+                stocksToSell.put(referenceDataCache.getStockSymbol(stockId), sellVotes);
+            }
         }
-        return 0;
+        return selectRecommendations(stocksToBuy, stocksToSell, maxRecommendations);
     }
 
     /**
-     * Retrieves the stocks held by the given account.
+     * Picks the recommendations from the voted stocks: the side with fewer votes in total goes first,
+     * and within a side the stocks with the most votes go first.
      *
-     * @param accountId the ID of the account
-     * @return a map of stock IDs to quantities
+     * @param stocksToBuy        the symbols of the stocks to buy and their votes
+     * @param stocksToSell       the symbols of the stocks to sell and their votes
+     * @param maxRecommendations the maximum number of recommendations to generate
+     * @return a map of stock symbols to buy/sell flags
      */
-    private Map<Integer, Double> getStocksForGivenAccount(int accountId) {
-        Map<Integer, Double> stocksForAccount = new HashMap<>();
-
-        Connection connection = connectionEstablisher.establishConnection();
-        if (connection != null) {
-            try {
-                Set<Integer> allStockIds = new HashSet<>();
-                String stockIdsQuery = "SELECT stock_id FROM Stocks";
-                try (PreparedStatement stockIdsStmt = connection.prepareStatement(stockIdsQuery);
-                     ResultSet stockIdsResult = stockIdsStmt.executeQuery()) {
-                    while (stockIdsResult.next()) {
-                        allStockIds.add(stockIdsResult.getInt("stock_id"));
-                    }
-                }
-                // Fetch stock holdings for the given account
-                String query = "SELECT stock_id, SUM(quantity) AS totalQuantity " +
-                        "FROM Investments WHERE account_id = ? GROUP BY stock_id";
-
-                try (PreparedStatement stmt = connection.prepareStatement(query)) {
-                    stmt.setInt(1, accountId);
-                    ResultSet rs = stmt.executeQuery();
-
-                    while (rs.next()) {
-                        int stockId = rs.getInt("stock_id");
-                        double totalQuantity = rs.getDouble("totalQuantity");
-                        stocksForAccount.put(stockId, totalQuantity);
-                    }
-
-                    for (Integer stockId : allStockIds) {
-                        stocksForAccount.putIfAbsent(stockId, 0.0);
-                    }
-
+    private Map<String, Boolean> selectRecommendations(Map<String, Integer> stocksToBuy, Map<String, Integer> stocksToSell, int maxRecommendations) {
+        Map<String, Boolean> recommendations = new HashMap<>();
+        Map<Boolean, Map<String, Integer>> combinedMap = new HashMap<>();
+        combinedMap.put(true, stocksToBuy);
+        combinedMap.put(false, stocksToSell);
+
+        // Define a custom comparator
+        Comparator<Map.Entry<String, Integer>> entryComparator = Map.Entry.comparingByValue(Comparator.reverseOrder());
+
+        combinedMap.forEach((key, value) -> {
+            Map<String, Integer> sortedInnerMap = value.entrySet().stream()
+                    .sorted(entryComparator)
+                    .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (oldValue, newValue) -> oldValue, LinkedHashMap::new));
+            combinedMap.put(key, sortedInnerMap);
+        });
+        Map<Boolean, Map<String, Integer>> sortedCombinedMap = combinedMap.entrySet().stream()
+                .sorted((e1, e2) -> {
+                    int sum1 = e1.getValue().values().stream().mapToInt(Integer::intValue).sum();
+                    int sum2 = e2.getValue().values().stream().mapToInt(Integer::intValue).sum();
+                    return Integer.compare(sum1, sum2);
+                })
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (oldValue, newValue) -> oldValue, LinkedHashMap::new));
+
+
+        for (Map.Entry<Boolean, Map<String, Integer>> entry : sortedCombinedMap.entrySet()) {
+            boolean toBuy = entry.getKey();
+            Map<String, Integer> stocks = entry.getValue();
+
+            // Iterate through the stocks
+            for (Map.Entry<String, Integer> stockEntry : stocks.entrySet()) {
+                String stockSymbol = stockEntry.getKey();
+
+                // Check if adding the current entry would exceed maxRecommendations
+                if (recommendations.size() < maxRecommendations) {
+                    // Add the stock to recommendations
+                    recommendations.put(stockSymbol, toBuy);
+                } else {
+                    // Break out of the loop if the maxRecommendations limit is reached
+                    break;
                 }
-            } catch (SQLException e) {
-                System.out.println("SQL error occurred: " + e.getMessage());
-            } finally {
-                connectionEstablisher.closeConnection(connection);
             }
-        } else {
-            System.out.println("Failed to establish database connection.");
+            // Break out of the loop if the maxRecommendations limit is reached
+            if (recommendations.size() >= maxRecommendations) {
+                break;
+            }
         }
 
-        return stocksForAccount;
+        return recommendations;
     }
 
     /**
-     * Retrieves the holdings of all accounts.
+     * Retrieves the holdings of all accounts as a sparse matrix.
      *
-     * @param accountId the ID of the account
-     * @return a map of account IDs to their stock holdings
+     * @return the holdings matrix, or null if it could not be read
      */
-    private Map<Integer, Map<Integer, Double>> getStockHoldingsForAccount(int accountId) {
-        Map<Integer, Map<Integer, Double>> accountHoldings = new HashMap<>();
-
+    private HoldingsMatrix loadHoldings() {
         Connection connection = connectionEstablisher.establishConnection();
         if (connection != null) {
             try {
-                Set<Integer> allStockIds = new HashSet<>();
-                String stockIdsQuery = "SELECT stock_id FROM Stocks";
-                try (PreparedStatement stockIdsStmt = connection.prepareStatement(stockIdsQuery);
-                     ResultSet stockIdsResult = stockIdsStmt.executeQuery()) {
-                    while (stockIdsResult.next()) {
-                        allStockIds.add(stockIdsResult.getInt("stock_id"));
-                    }
-                }
-                // Fetch stock holdings for all accounts except the input account
-                String query = "SELECT i.account_id, i.stock_id, SUM(i.quantity) AS totalQuantity " +
-                        "FROM Investments i " +
-                        "WHERE i.account_id != ? " +
-                        "GROUP BY i.account_id, i.stock_id";
-
-                try (PreparedStatement stmt = connection.prepareStatement(query)) {
-                    stmt.setInt(1, accountId);
-                    ResultSet rs = stmt.executeQuery();
-
-                    while (rs.next()) {
-                        int accId = rs.getInt("account_id");
-                        int stockId = rs.getInt("stock_id");
-                        Double totalQuantity = rs.getDouble("totalQuantity");
-
-                        // Create inner map if not present
-                        accountHoldings.putIfAbsent(accId, new HashMap<>());
-                        // Add stock holdings for each account
-                        accountHoldings.get(accId).put(stockId, totalQuantity);
-                    }
-                    for (Integer s : accountHoldings.keySet()) {
-                        for (Integer stockId : allStockIds) {
-                            accountHoldings.get(s).putIfAbsent(stockId, 0.0);
-                        }
-                    }
-
-                }
+                return HoldingsMatrix.load(connection);
             } catch (SQLException e) {
                 System.out.println("SQL error occurred: " + e.getMessage());
             } finally {
@@ -319,77 +317,81 @@ public class RecommendationSystem {
         } else {
             System.out.println("Failed to establish database connection.");
         }
-
-        return accountHoldings;
+        return null;
     }
 
-
     /**
-     * Retrieves the comparator accounts based on cosine similarity.
+     * Builds a matrix of the given account and its candidate comparators from the holdings index.
      *
-     * @param accountId             the ID of the account
-     * @param stocksForGivenAccount the stocks held by the given account
-     * @param accountHoldings       the holdings of all accounts
-     * @return a map of comparator account IDs to cosine similarity scores
+     * @param accountId      the ID of the account
+     * @param numComparators the number of comparator accounts to consider
+     * @return the holdings of the account and its candidates, or null if there is no index or too few candidates
      */
-    private Map<Integer, Double> getComparatorAccounts(int accountId, Map<Integer, Double> stocksForGivenAccount, Map<Integer, Map<Integer, Double>> accountHoldings) {
-        Map<Integer, Double> comparatorAccounts = new HashMap<>();
-
-        // Calculate the magnitude of stocksForGivenAccount
-        double magnitudeStocksForGivenAccount = calculateMagnitude(stocksForGivenAccount);
-
-        // Iterate over each account's holdings to calculate the cosine similarity
-        for (Map.Entry<Integer, Map<Integer, Double>> entry : accountHoldings.entrySet()) {
-            int accId = entry.getKey();
-            Map<Integer, Double> holdings = entry.getValue();
-
-            // Calculate the dot product of the two vectors
-            double dotProduct = calculateDotProduct(stocksForGivenAccount, holdings);
-
-            // Calculate the magnitude of the current account's holdings
-            double magnitudeHoldings = calculateMagnitude(holdings);
-
-            // Calculate the cosine similarity
-            double cosineSimilarity = dotProduct / (magnitudeStocksForGivenAccount * magnitudeHoldings);
-
-            // Store the cosine similarity for the current account
-            comparatorAccounts.put(accId, cosineSimilarity);
+    private HoldingsMatrix loadCandidates(int accountId, int numComparators) {
+        HoldingsLshIndex index = holdingsIndex;
+        Map<Integer, Map<Integer, Double>> candidates = index == null ? null : index.getCandidates(accountId);
+        if (candidates == null || candidates.size() - 1 < numComparators) {
+            return null;
         }
-
-        return comparatorAccounts;
+        return HoldingsMatrix.of(candidates);
     }
 
     /**
-     * Calculates the dot product of two vectors.
-     *
-     * @param vector1 the first vector
-     * @param vector2 the second vector
-     * @return the dot product
+     * @param holdings       the holdings to choose from
+     * @param accountId      the ID of the account
+     * @param numComparators the number of comparator accounts to find
+     * @return the IDs of the comparator accounts, or an empty set if there are fewer than numComparators to choose from
      */
-    private double calculateDotProduct(Map<Integer, Double> vector1, Map<Integer, Double> vector2) {
-        double dotProduct = 0.0;
-        for (Map.Entry<Integer, Double> entry : vector1.entrySet()) {
-            int stockId = entry.getKey();
-            double quantity1 = entry.getValue();
-            double quantity2 = vector2.getOrDefault(stockId, 0.0);
-            dotProduct += quantity1 * quantity2;
+    private Set<Integer> getTopComparatorIds(HoldingsMatrix holdings, int accountId, int numComparators) {
+        Set<Integer> comparatorIds = new HashSet<>();
+        int accountRow = holdings.rowOf(accountId);
+        if (numComparators <= holdings.size() - (accountRow < 0 ? 0 : 1)) {
+            for (int row : getTopComparators(holdings, accountRow, numComparators, null)) {
+                comparatorIds.add(holdings.accountId(row));
+            }
         }
-        return dotProduct;
+        return comparatorIds;
     }
 
     /**
-     * Calculates the magnitude of a vector.
+     * Finds the comparator accounts most similar to the given account by cosine similarity.
+     * A bounded min-heap keeps the best candidates seen so far, so only numComparators accounts are ever held.
+     * Accounts with equal similarity are ranked by lowest account ID, and an undefined similarity (an account
+     * without any shares) ranks above every other, as it did when all similarities were sorted.
      *
-     * @param vector the vector
-     * @return the magnitude
+     * @param holdings       the holdings of all accounts
+     * @param accountRow     the row of the given account, or -1 if it has no positions
+     * @param numComparators the number of comparator accounts to find
+     * @param dotProducts    the dot product of the account with every row, or null to compute them here
+     * @return the rows of the comparator accounts
      */
-    private double calculateMagnitude(Map<Integer, Double> vector) {
-        double magnitude = 0.0;
-        for (double quantity : vector.values()) {
-            magnitude += Math.pow(quantity, 2);
+    private int[] getTopComparators(HoldingsMatrix holdings, int accountRow, int numComparators, double[] dotProducts) {
+        double[] similarities = new double[holdings.size()];
+        // The head of the heap is the weakest comparator kept so far
+        Comparator<Integer> weakestFirst = (row1, row2) -> {
+            int bySimilarity = Double.compare(similarities[row1], similarities[row2]);
+            return bySimilarity != 0 ? bySimilarity : Integer.compare(holdings.accountId(row2), holdings.accountId(row1));
+        };
+        PriorityQueue<Integer> topComparators = new PriorityQueue<>(numComparators + 1, weakestFirst);
+        double magnitudeStocksForGivenAccount = holdings.norm(accountRow);
+        for (int row = 0; row < holdings.size(); row++) {
+            if (row == accountRow) {
+                continue;
+            }
+            double dotProduct = dotProducts == null ? holdings.dot(accountRow, row) : dotProducts[row];
+            similarities[row] = dotProduct / (magnitudeStocksForGivenAccount * holdings.norm(row));
+            if (topComparators.size() < numComparators) {
+                topComparators.add(row);
+            } else if (!topComparators.isEmpty() && weakestFirst.compare(row, topComparators.peek()) > 0) {
+                topComparators.poll();
+                topComparators.add(row);
+            }
         }
-        return Math.sqrt(magnitude);
+        int[] comparatorRows = new int[topComparators.size()];
+        int index = 0;
+        for (int row : topComparators) {
+            comparatorRows[index++] = row;
+        }
+        return comparatorRows;
     }
-
-
 }
@@ -1,31 +1,47 @@
 package Reporting;
 
 import Database.ConnectionEstablisher;
+import Database.PriceTable;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 
 public class ReportingOfSystem {
 
-    ConnectionEstablisher connectionEstablisher = new ConnectionEstablisher();
+    // Largest number of account IDs bound into a single IN (...) list by accountValues
+    private static final int MAX_IN_LIST_SIZE = 5000;
 
-    public ReportingOfSystem() {
+    ConnectionEstablisher connectionEstablisher;
+    PriceTable priceTable;
+    AccountValuationIndex accountValuationIndex;
 
+    public ReportingOfSystem(ConnectionEstablisher connectionEstablisher, PriceTable priceTable, AccountValuationIndex accountValuationIndex) {
+        this.connectionEstablisher = connectionEstablisher;
+        this.priceTable = priceTable;
+        this.accountValuationIndex = accountValuationIndex;
     }
 
     /**
-     * Calculates the total market value of an account.
+     * Calculates the total market value of an account. The value is read from the account valuation index,
+     * and only computed from the database when the index does not hold the account.
      *
      * @param accountId the ID of the account
      * @return the total market value of the account
      */
     public double accountValue(int accountId) {
+        double indexedValue = accountValuationIndex.getAccountValue(accountId);
+        if (!Double.isNaN(indexedValue)) {
+            return indexedValue;
+        }
         double totalValue = 0.0;
         Connection connection = connectionEstablisher.establishConnection();
         if (connection != null) {
@@ -34,33 +50,7 @@ public class ReportingOfSystem {
                 if (!accountExists(connection, accountId)) {
                     throw new SQLException("Account with ID " + accountId + " does not exist.");
                 }
-
-                // Calculate the total value of investments
-                String queryInvestments =
-                        "SELECT i.quantity, s.perShare_price " +
-                                "FROM Investments i " +
-                                "JOIN Stocks s ON i.stock_id = s.stock_id " +
-                                "WHERE i.account_id = ?";
-                try (PreparedStatement stmt = connection.prepareStatement(queryInvestments)) {
-                    stmt.setInt(1, accountId);
-                    ResultSet rs = stmt.executeQuery();
-                    while (rs.next()) {
-                        int quantity = rs.getInt("quantity");
-                        double sharePrice = rs.getDouble("perShare_price");
-                        totalValue += quantity * sharePrice; // Add the value of this investment to the total
-                    }
-                }
-
-                // Add the cash balance of the account to the total value
-                String queryCashBalance = "SELECT cash_balance FROM Accounts WHERE account_id = ?";
-                try (PreparedStatement stmt = connection.prepareStatement(queryCashBalance)) {
-                    stmt.setInt(1, accountId);
-                    ResultSet rs = stmt.executeQuery();
-                    if (rs.next()) {
-                        double cashBalance = rs.getDouble("cash_balance");
-                        totalValue += cashBalance; // Add cash balance to the total value
-                    }
-                }
+                totalValue = calculateAccountValue(connection, accountId);
             } catch (SQLException e) {
                 System.out.println("SQL error occurred: " + e.getMessage());
             } finally {
@@ -72,6 +62,41 @@ public class ReportingOfSystem {
         return totalValue; // Return the total market value of the account
     }
 
+    /**
+     * Calculates the market value of an existing account on an already borrowed connection.
+     *
+     * @param connection the database connection
+     * @param accountId  the ID of the account
+     * @return the value of the account's investments plus its cash balance
+     * @throws SQLException if an SQL error occurs
+     */
+    private double calculateAccountValue(Connection connection, int accountId) throws SQLException {
+        double totalValue = 0.0;
+        // Calculate the total value of investments, pricing each position from the in-memory price table
+        String queryInvestments = "SELECT stock_id, quantity FROM Investments WHERE account_id = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(queryInvestments)) {
+            stmt.setInt(1, accountId);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                int quantity = wholeShares(rs);
+                double sharePrice = priceTable.getPrice(connection, rs.getInt("stock_id"));
+                totalValue += quantity * sharePrice; // Add the value of this investment to the total
+            }
+        }
+
+        // Add the cash balance of the account to the total value
+        String queryCashBalance = "SELECT cash_balance FROM Accounts WHERE account_id = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(queryCashBalance)) {
+            stmt.setInt(1, accountId);
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                double cashBalance = rs.getDouble("cash_balance");
+                totalValue += cashBalance; // Add cash balance to the total value
+            }
+        }
+        return totalValue;
+    }
+
     /**
      * Checks if an account exists.
      *
@@ -93,13 +118,82 @@ public class ReportingOfSystem {
         return false;
     }
 
+    /**
+     * Calculates the market value of many accounts at once. Values are read from the account valuation index;
+     * for accounts it does not hold, the cash and positions of up to MAX_IN_LIST_SIZE accounts are read
+     * in one statement and priced from the in-memory price table.
+     *
+     * @param accountIds the IDs of the accounts
+     * @return the market value of each account, keyed by account ID; accounts that do not exist are left out
+     */
+    public Map<Integer, Double> accountValues(Collection<Integer> accountIds) {
+        Map<Integer, Double> values = new HashMap<>();
+        List<Integer> ids = new ArrayList<>();
+        for (int accountId : new LinkedHashSet<>(accountIds)) {
+            double indexedValue = accountValuationIndex.getAccountValue(accountId);
+            if (Double.isNaN(indexedValue)) {
+                ids.add(accountId);
+            } else {
+                values.put(accountId, indexedValue);
+            }
+        }
+        if (ids.isEmpty()) {
+            return values;
+        }
+        Connection connection = connectionEstablisher.establishConnection();
+        if (connection != null) {
+            try {
+                for (int from = 0; from < ids.size(); from += MAX_IN_LIST_SIZE) {
+                    List<Integer> chunk = ids.subList(from, Math.min(from + MAX_IN_LIST_SIZE, ids.size()));
+                    String query = "SELECT a.account_id, a.cash_balance, i.stock_id, i.quantity " +
+                            "FROM Accounts a LEFT JOIN Investments i ON i.account_id = a.account_id " +
+                            "WHERE a.account_id IN (" + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+                    Map<Integer, Double> cashBalances = new HashMap<>();
+                    Map<Integer, Double> investmentValues = new HashMap<>();
+                    try (PreparedStatement stmt = connection.prepareStatement(query)) {
+                        for (int i = 0; i < chunk.size(); i++) {
+                            stmt.setInt(i + 1, chunk.get(i));
+                        }
+                        ResultSet rs = stmt.executeQuery();
+                        while (rs.next()) {
+                            int accountId = rs.getInt("account_id");
+                            cashBalances.put(accountId, rs.getDouble("cash_balance"));
+                            int stockId = rs.getInt("stock_id");
+                            if (!rs.wasNull()) {
+                                int quantity = wholeShares(rs);
+                                investmentValues.merge(accountId, quantity * priceTable.getPrice(connection, stockId), Double::sum);
+                            }
+                        }
+                    }
+                    for (Map.Entry<Integer, Double> entry : cashBalances.entrySet()) {
+                        values.put(entry.getKey(), investmentValues.getOrDefault(entry.getKey(), 0.0) + entry.getValue());
+                    }
+                }
+            } catch (SQLException e) {
+                System.out.println("SQL error occurred: " + e.getMessage());
+            } finally {
+                connectionEstablisher.closeConnection(connection);
+            }
+        } else {
+            System.out.println("Failed to establish database connection.");
+        }
+        return values;
+    }
+
     /**
      * Calculates the total portfolio value managed by an advisor.
+     * The total is read from the account valuation index. For an advisor it does not hold, the advisor's
+     * cash and whole shares per stock are aggregated in one grouped statement and the shares are priced
+     * from the in-memory price table.
      *
      * @param advisorId the ID of the advisor
      * @return the total portfolio value managed by the advisor
      */
     public double advisorPortfolioValue(int advisorId) {
+        double indexedValue = accountValuationIndex.getAdvisorValue(advisorId);
+        if (!Double.isNaN(indexedValue)) {
+            return indexedValue;
+        }
         double totalPortfolioValue = 0.0;
         Connection connection = connectionEstablisher.establishConnection();
         if (connection != null) {
@@ -109,19 +203,22 @@ public class ReportingOfSystem {
                     throw new SQLException("Advisor with ID " + advisorId + " does not exist.");
                 }
 
-                // Step 1: Fetch all account IDs managed by the specified advisor.
-                String queryAccounts = "SELECT account_id FROM Accounts WHERE advisor_id = ?";
-                try (PreparedStatement stmt = connection.prepareStatement(queryAccounts)) {
+                // Whole shares of each stock across the advisor's accounts, plus one row with their total cash
+                String query = "SELECT i.stock_id, SUM(FLOOR(i.quantity)) AS quantity, 0 AS cash " +
+                        "FROM Investments i JOIN Accounts a ON i.account_id = a.account_id " +
+                        "WHERE a.advisor_id = ? GROUP BY i.stock_id " +
+                        "UNION ALL " +
+                        "SELECT NULL, 0, COALESCE(SUM(cash_balance), 0) FROM Accounts WHERE advisor_id = ?";
+                try (PreparedStatement stmt = connection.prepareStatement(query)) {
                     stmt.setInt(1, advisorId);
+                    stmt.setInt(2, advisorId);
                     ResultSet rs = stmt.executeQuery();
                     while (rs.next()) {
-                        int accountId = rs.getInt("account_id");
-
-                        // Step 2: Calculate the market value for each account.
-                        double accountValue = accountValue(accountId);
-
-                        // Step 3: Sum these values.
-                        totalPortfolioValue += accountValue;
+                        int stockId = rs.getInt("stock_id");
+                        if (!rs.wasNull()) {
+                            totalPortfolioValue += rs.getDouble("quantity") * priceTable.getPrice(connection, stockId);
+                        }
+                        totalPortfolioValue += rs.getDouble("cash");
                     }
                 }
             } catch (SQLException e) {
@@ -179,14 +276,14 @@ public class ReportingOfSystem {
                 for (Integer accountId : accountIds) {
                     double totalProfit = 0.0;
                     // Fetch all investments for the account
-                    String query = "SELECT i.stock_id, i.quantity, i.acb, s.perShare_price FROM Investments i JOIN Stocks s ON i.stock_id = s.stock_id WHERE i.account_id = ?";
+                    String query = "SELECT stock_id, quantity, acb FROM Investments WHERE account_id = ?";
                     try (PreparedStatement stmt = connection.prepareStatement(query)) {
                         stmt.setInt(1, accountId);
                         ResultSet rs = stmt.executeQuery();
                         while (rs.next()) {
-                            int quantity = rs.getInt("quantity");
+                            int quantity = wholeShares(rs);
                             double acb = rs.getDouble("acb");
-                            double currentPrice = rs.getDouble("perShare_price");
+                            double currentPrice = priceTable.getPrice(connection, rs.getInt("stock_id"));
                             double currentMarketValue = quantity * currentPrice;
                             double costBase = acb * quantity; // This assumes acb is stored as total cost, not per-share cost
                             double profit = currentMarketValue - costBase;
@@ -248,5 +345,15 @@ public class ReportingOfSystem {
         return accountIds;
     }
 
-
+    /**
+     * Reads the quantity of a position as whole shares. The fraction is dropped here rather than by getInt,
+     * because JDBC drivers differ in whether getInt truncates or rounds a DECIMAL.
+     *
+     * @param rs the result set positioned on a row with a quantity column
+     * @return the whole shares held
+     * @throws SQLException if an SQL error occurs
+     */
+    private static int wholeShares(ResultSet rs) throws SQLException {
+        return (int) rs.getDouble("quantity");
+    }
 }
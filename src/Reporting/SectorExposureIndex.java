@@ -0,0 +1,268 @@
+package Reporting;
+
+import Database.ConnectionEstablisher;
+import Database.Decimals;
+import Database.PriceTable;
+import Database.ReferenceDataCache;
+import Manager.PortfolioListener;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The market value each account holds in every sector, held in memory.
+ * Each account keeps its sector values in a primitive array indexed by a dense sector ordinal, so the
+ * sector weights of an account are computed without SQL. The index is loaded once at startup and then
+ * kept current from the portfolio events of the managers: trades and dividends adjust the sector of the
+ * stock involved, and a price change applies the quantity held times the change in price to every holder.
+ */
+public class SectorExposureIndex implements PortfolioListener {
+
+
+    ConnectionEstablisher connectionEstablisher;
+    ReferenceDataCache referenceDataCache;
+    PriceTable priceTable;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, AccountExposure> accounts = new HashMap<>();
+    private final Map<Integer, Set<Integer>> holdersByStock = new HashMap<>();
+    // Sector ID to its position in every account's array of sector values
+    private final Map<Integer, Integer> sectorOrdinals = new HashMap<>();
+    // The price each position is currently valued at, which a price change is measured against
+    private final Map<Integer, Double> prices = new HashMap<>();
+    private boolean loaded;
+
+    public SectorExposureIndex(ConnectionEstablisher connectionEstablisher, ReferenceDataCache referenceDataCache, PriceTable priceTable) {
+        this.connectionEstablisher = connectionEstablisher;
+        this.referenceDataCache = referenceDataCache;
+        this.priceTable = priceTable;
+    }
+
+    /**
+     * Loads the cash and positions of every account from the database.
+     *
+     * @return true if the index was loaded, false otherwise
+     */
+    public boolean load() {
+        Connection connection = connectionEstablisher.establishConnection();
+        if (connection != null) {
+            lock.writeLock().lock();
+            try (Statement stmt = connection.createStatement()) {
+                accounts.clear();
+                holdersByStock.clear();
+                sectorOrdinals.clear();
+                prices.clear();
+                for (int sectorId : referenceDataCache.getSectorIds()) {
+                    sectorOrdinal(sectorId);
+                }
+                try (ResultSet rs = stmt.executeQuery("SELECT account_id, cash_balance FROM Accounts")) {
+                    while (rs.next()) {
+                        AccountExposure account = new AccountExposure(sectorOrdinals.size());
+                        account.cash = rs.getDouble("cash_balance");
+                        accounts.put(rs.getInt("account_id"), account);
+                    }
+                }
+                try (ResultSet rs = stmt.executeQuery("SELECT account_id, stock_id, quantity FROM Investments")) {
+                    while (rs.next()) {
+                        AccountExposure account = accounts.get(rs.getInt("account_id"));
+                        if (account != null) {
+                            int stockId = rs.getInt("stock_id");
+                            double quantity = rs.getDouble("quantity");
+                            if (quantity != 0) {
+                                account.quantities.put(stockId, quantity);
+                                account.addSectorValue(stockOrdinal(connection, stockId), quantity * priceOf(connection, stockId));
+                                holdersByStock.computeIfAbsent(stockId, id -> new HashSet<>()).add(rs.getInt("account_id"));
+                            }
+                        }
+                    }
+                }
+                loaded = true;
+                return true;
+            } catch (SQLException e) {
+                System.out.println("SQL error occurred while loading sector exposures: " + e.getMessage());
+            } finally {
+                lock.writeLock().unlock();
+                connectionEstablisher.closeConnection(connection);
+            }
+        } else {
+            System.out.println("Failed to establish database connection.");
+        }
+        return false;
+    }
+
+    /**
+     * Calculates the sector weights of an account from its in-memory sector values, the same way
+     * SectorWeights does from the database.
+     *
+     * @param accountId the ID of the account
+     * @return a map containing sector names as keys and their corresponding weights as values,
+     *         or null if the account is not in the index
+     */
+    public Map<String, Integer> getSectorWeights(int accountId) {
+        lock.readLock().lock();
+        try {
+            AccountExposure account = loaded ? accounts.get(accountId) : null;
+            if (account == null) {
+                return null;
+            }
+            double totalValue = account.cash;
+            for (double sectorValue : account.sectorValues) {
+                totalValue += sectorValue;
+            }
+            Map<String, Integer> sectorPercentages = new HashMap<>();
+            for (int sectorId : referenceDataCache.getSectorIds()) {
+                String sectorName = referenceDataCache.getSectorName(sectorId);
+                double sectorValue;
+                if (ReferenceDataCache.CASH_SECTOR.equals(sectorName)) {
+                    // The cash sector holds the account's cash balance
+                    sectorValue = account.cash;
+                } else {
+                    Integer ordinal = sectorOrdinals.get(sectorId);
+                    sectorValue = ordinal == null || ordinal >= account.sectorValues.length ? 0.0 : account.sectorValues[ordinal];
+                }
+                sectorPercentages.put(sectorName, (int) Math.round((sectorValue / totalValue) * 100));
+            }
+            return sectorPercentages;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void accountOpened(int accountId, int advisorId, int profileId, boolean reinvest) {
+        lock.writeLock().lock();
+        try {
+            if (loaded && !accounts.containsKey(accountId)) {
+                accounts.put(accountId, new AccountExposure(sectorOrdinals.size()));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void cashChanged(int accountId, double amount) {
+        lock.writeLock().lock();
+        try {
+            AccountExposure account = accounts.get(accountId);
+            if (account != null) {
+                account.cash = Decimals.roundToCents(account.cash + amount);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void positionChanged(int accountId, int stockId, double quantityDelta) {
+        lock.writeLock().lock();
+        try {
+            AccountExposure account = accounts.get(accountId);
+            if (account != null) {
+                double before = account.quantities.getOrDefault(stockId, 0.0);
+                double after = Decimals.roundToCents(before + quantityDelta);
+                account.addSectorValue(stockOrdinal(null, stockId), (after - before) * priceOf(null, stockId));
+                if (after == 0) {
+                    // Sold out, so the account no longer follows the price of the stock
+                    account.quantities.remove(stockId);
+                    Set<Integer> holders = holdersByStock.get(stockId);
+                    if (holders != null && holders.remove(accountId) && holders.isEmpty()) {
+                        holdersByStock.remove(stockId);
+                    }
+                } else {
+                    account.quantities.put(stockId, after);
+                    holdersByStock.computeIfAbsent(stockId, id -> new HashSet<>()).add(accountId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void priceChanged(int stockId, double perSharePrice) {
+        lock.writeLock().lock();
+        try {
+            Double previous = prices.put(stockId, perSharePrice);
+            if (previous == null) {
+                // No position of the stock has been valued yet, so there is nothing to adjust
+                return;
+            }
+            double priceChange = perSharePrice - previous;
+            int ordinal = stockOrdinal(null, stockId);
+            for (int accountId : holdersByStock.getOrDefault(stockId, Set.of())) {
+                AccountExposure account = accounts.get(accountId);
+                account.addSectorValue(ordinal, account.quantities.getOrDefault(stockId, 0.0) * priceChange);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the ordinal of the sector a stock belongs to. Must be called while holding the write lock.
+     *
+     * @param connection a connection the caller already holds, or null if it holds none
+     * @param stockId    the ID of the stock
+     * @return the sector ordinal
+     */
+    private int stockOrdinal(Connection connection, int stockId) {
+        return sectorOrdinal(referenceDataCache.getSectorIdOfStock(connection, stockId));
+    }
+
+    /**
+     * Returns the ordinal of a sector, giving it the next free one the first time it is seen.
+     * Must be called while holding the write lock.
+     *
+     * @param sectorId the ID of the sector
+     * @return the sector ordinal
+     */
+    private int sectorOrdinal(int sectorId) {
+        return sectorOrdinals.computeIfAbsent(sectorId, id -> sectorOrdinals.size());
+    }
+
+    /**
+     * Returns the price positions of a stock are valued at, taking it from the price table the first time. Must be called
+     * while holding the write lock.
+     *
+     * @param connection a connection the caller already holds, or null if it holds none
+     * @param stockId    the ID of the stock
+     * @return the price per share
+     */
+    private double priceOf(Connection connection, int stockId) {
+        Double price = prices.get(stockId);
+        if (price == null) {
+            price = priceTable.getPrice(connection, stockId);
+            prices.put(stockId, price);
+        }
+        return price;
+    }
+
+    /**
+     * The cash, positions and value per sector of one account.
+     */
+    private static final class AccountExposure {
+        double cash;
+        double[] sectorValues;
+        final Map<Integer, Double> quantities = new HashMap<>();
+
+        AccountExposure(int sectorCount) {
+            this.sectorValues = new double[sectorCount];
+        }
+
+        void addSectorValue(int ordinal, double value) {
+            if (ordinal >= sectorValues.length) {
+                sectorValues = Arrays.copyOf(sectorValues, ordinal + 1);
+            }
+            sectorValues[ordinal] += value;
+        }
+    }
+}
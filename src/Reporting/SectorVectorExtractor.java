@@ -0,0 +1,329 @@
+package Reporting;
+
+import Database.ConnectionEstablisher;
+import Database.PriceTable;
+import Database.ReferenceDataCache;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Extracts the sector difference vector of every account, its current sector weights minus the target
+ * weights of its profile, with one column per sector.
+ * The targets of every profile are read first, and then every account with its cash balance and positions is
+ * streamed from one statement in account order, so that only one account is held while its vector is built.
+ * The vectors can be collected into a dense matrix, or streamed in fixed-size batches when there are too many
+ * accounts to hold them all. Positions are valued from the price table, and the weights are rounded to whole
+ * percentages the same way SectorWeights rounds them.
+ */
+public class SectorVectorExtractor {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    ConnectionEstablisher connectionEstablisher;
+    ReferenceDataCache referenceDataCache;
+    PriceTable priceTable;
+
+    public SectorVectorExtractor(ConnectionEstablisher connectionEstablisher, ReferenceDataCache referenceDataCache, PriceTable priceTable) {
+        this.connectionEstablisher = connectionEstablisher;
+        this.referenceDataCache = referenceDataCache;
+        this.priceTable = priceTable;
+    }
+
+    /**
+     * Extracts the sector difference vectors of every account into a matrix.
+     *
+     * @return the sector difference vectors, or null if they could not be read
+     */
+    public SectorVectors extract() {
+        SectorVectorStream stream = stream();
+        int[][] accountIds = {new int[INITIAL_CAPACITY]};
+        double[][][] vectors = {new double[INITIAL_CAPACITY][]};
+        int[] rows = {0};
+        boolean read = stream.forEachBatch(INITIAL_CAPACITY, (ids, batch, count) -> {
+            if (rows[0] + count > accountIds[0].length) {
+                accountIds[0] = Arrays.copyOf(accountIds[0], accountIds[0].length * 2);
+                vectors[0] = Arrays.copyOf(vectors[0], vectors[0].length * 2);
+            }
+            for (int i = 0; i < count; i++) {
+                accountIds[0][rows[0]] = ids[i];
+                vectors[0][rows[0]] = batch[i].clone();
+                rows[0]++;
+            }
+        });
+        if (!read) {
+            return null;
+        }
+        return new SectorVectors(Arrays.copyOf(accountIds[0], rows[0]), stream.sectorIds, stream.sectorNames,
+                Arrays.copyOf(vectors[0], rows[0]));
+    }
+
+    /**
+     * Creates a stream of the sector difference vectors of every account over the sectors defined now.
+     * Every read of the stream queries the database again.
+     *
+     * @return the stream
+     */
+    public SectorVectorStream stream() {
+        List<Integer> sectorIds = referenceDataCache.getSectorIds();
+        sectorIds.sort(null);
+        String[] sectorNames = new String[sectorIds.size()];
+        for (int column = 0; column < sectorNames.length; column++) {
+            sectorNames[column] = referenceDataCache.getSectorName(sectorIds.get(column));
+        }
+        return new SectorVectorStream(this, sectorIds.stream().mapToInt(Integer::intValue).toArray(), sectorNames);
+    }
+
+    /**
+     * Reads the sector difference vector of every account in account order and hands them to a consumer in batches.
+     *
+     * @param connection  the database connection
+     * @param sectorIds   the ID of the sector in each column
+     * @param sectorNames the name of the sector in each column
+     * @param batchSize   the largest number of accounts in a batch
+     * @param consumer    the consumer of the batches, which must not keep the arrays it is given
+     * @throws SQLException if an SQL error occurs
+     */
+    void readVectors(Connection connection, int[] sectorIds, String[] sectorNames, int batchSize,
+                     KMeans.BatchConsumer consumer) throws SQLException {
+        Map<Integer, Integer> columnsBySector = new HashMap<>();
+        int cashColumn = -1;
+        for (int column = 0; column < sectorIds.length; column++) {
+            columnsBySector.put(sectorIds[column], column);
+            if (ReferenceDataCache.CASH_SECTOR.equals(sectorNames[column])) {
+                cashColumn = column;
+            }
+        }
+
+        // The target weights of every profile, as the vector every account of the profile starts from
+        Map<Integer, double[]> targetsByProfile = new HashMap<>();
+        String targetQuery = "SELECT profile_id, sector_id, percentage FROM Profile_Sector_Holdings";
+        try (PreparedStatement stmt = connection.prepareStatement(targetQuery);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                Integer column = columnsBySector.get(rs.getInt("sector_id"));
+                if (column != null) {
+                    targetsByProfile.computeIfAbsent(rs.getInt("profile_id"), id -> new double[sectorIds.length])
+                            [column] = rs.getInt("percentage");
+                }
+            }
+        }
+
+        // Every account with its positions, one row per position and one for an account without any.
+        // The sector of each stock, and the price of one not in the price table yet, come from the join,
+        // since no other statement may run on this connection while the result set is being streamed
+        int[] accountIds = new int[batchSize];
+        double[][] vectors = new double[batchSize][sectorIds.length];
+        double[] sectorValues = new double[sectorIds.length];
+        double[] noTargets = new double[sectorIds.length];
+        int count = 0;
+        boolean inAccount = false;
+        int accountId = 0;
+        double[] targets = noTargets;
+        double cashBalance = 0.0;
+        String accountQuery = "SELECT a.account_id, a.profile_id, a.cash_balance, i.stock_id, i.quantity, s.sector_id, s.perShare_price " +
+                "FROM Accounts a LEFT JOIN Investments i ON i.account_id = a.account_id " +
+                "LEFT JOIN Stocks s ON s.stock_id = i.stock_id " +
+                "ORDER BY a.account_id";
+        try (PreparedStatement stmt = prepareStreaming(connection, accountQuery);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                int rowAccountId = rs.getInt("account_id");
+                if (!inAccount || rowAccountId != accountId) {
+                    if (inAccount) {
+                        accountIds[count] = accountId;
+                        differenceVector(vectors[count], sectorValues, cashBalance, cashColumn, targets);
+                        if (++count == batchSize) {
+                            consumer.accept(accountIds, vectors, count);
+                            count = 0;
+                        }
+                    }
+                    inAccount = true;
+                    accountId = rowAccountId;
+                    targets = targetsByProfile.getOrDefault(rs.getInt("profile_id"), noTargets);
+                    cashBalance = rs.getDouble("cash_balance");
+                    Arrays.fill(sectorValues, 0.0);
+                }
+                int stockId = rs.getInt("stock_id");
+                if (!rs.wasNull()) {
+                    Integer column = columnsBySector.get(rs.getInt("sector_id"));
+                    if (column != null) {
+                        double price = priceTable.getCachedPrice(stockId);
+                        if (Double.isNaN(price)) {
+                            price = rs.getDouble("perShare_price");
+                        }
+                        sectorValues[column] += rs.getDouble("quantity") * price;
+                    }
+                }
+            }
+        }
+        if (inAccount) {
+            accountIds[count] = accountId;
+            differenceVector(vectors[count], sectorValues, cashBalance, cashColumn, targets);
+            count++;
+        }
+        if (count > 0) {
+            consumer.accept(accountIds, vectors, count);
+        }
+    }
+
+    /**
+     * Calculates an account's current sector weights minus its targets.
+     * The cash sector is weighted by the cash balance, as in SectorWeights.
+     *
+     * @param vector       the array to write the difference vector to
+     * @param sectorValues the market value the account holds in each sector
+     * @param cashBalance  the cash balance of the account
+     * @param cashColumn   the column of the cash sector, or -1 if there is none
+     * @param targets      the target weight of each sector
+     */
+    private void differenceVector(double[] vector, double[] sectorValues, double cashBalance, int cashColumn, double[] targets) {
+        double totalValue = cashBalance;
+        for (double sectorValue : sectorValues) {
+            totalValue += sectorValue;
+        }
+        for (int column = 0; column < vector.length; column++) {
+            double sectorValue = column == cashColumn ? cashBalance : sectorValues[column];
+            vector[column] = (int) Math.round((sectorValue / totalValue) * 100) - targets[column];
+        }
+    }
+
+    /**
+     * Prepares a statement whose result set the driver streams rather than buffers.
+     *
+     * @param connection the database connection
+     * @param query      the query
+     * @return the prepared statement
+     * @throws SQLException if an SQL error occurs
+     */
+    private PreparedStatement prepareStreaming(Connection connection, String query) throws SQLException {
+        PreparedStatement stmt = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        stmt.setFetchSize(connectionEstablisher.getStorageBackend().getStreamingFetchSize());
+        return stmt;
+    }
+
+    /**
+     * The sector difference vectors of every account, streamed from the database in batches over a fixed set of sectors.
+     */
+    public static final class SectorVectorStream implements KMeans.PointSource {
+        private final SectorVectorExtractor extractor;
+        private final int[] sectorIds;
+        private final String[] sectorNames;
+
+        SectorVectorStream(SectorVectorExtractor extractor, int[] sectorIds, String[] sectorNames) {
+            this.extractor = extractor;
+            this.sectorIds = sectorIds;
+            this.sectorNames = sectorNames;
+        }
+
+        /**
+         * @return the number of sectors
+         */
+        public int sectors() {
+            return sectorIds.length;
+        }
+
+        /**
+         * @param column a column of the vectors
+         * @return the ID of the sector in the column
+         */
+        public int sectorId(int column) {
+            return sectorIds[column];
+        }
+
+        @Override
+        public boolean forEachBatch(int batchSize, KMeans.BatchConsumer consumer) {
+            Connection connection = extractor.connectionEstablisher.establishConnection();
+            if (connection != null) {
+                try {
+                    extractor.readVectors(connection, sectorIds, sectorNames, batchSize, consumer);
+                    return true;
+                } catch (SQLException e) {
+                    System.out.println("SQL error occurred: " + e.getMessage());
+                } finally {
+                    extractor.connectionEstablisher.closeConnection(connection);
+                }
+            } else {
+                System.out.println("Failed to establish database connection.");
+            }
+            return false;
+        }
+    }
+
+    /**
+     * The sector difference vectors of every account, one row per account in ascending account ID order
+     * and one column per sector in ascending sector ID order.
+     */
+    public static final class SectorVectors {
+        private final int[] accountIds;
+        private final int[] sectorIds;
+        private final String[] sectorNames;
+        private final double[][] vectors;
+
+        SectorVectors(int[] accountIds, int[] sectorIds, String[] sectorNames, double[][] vectors) {
+            this.accountIds = accountIds;
+            this.sectorIds = sectorIds;
+            this.sectorNames = sectorNames;
+            this.vectors = vectors;
+        }
+
+        /**
+         * @return the number of accounts
+         */
+        public int size() {
+            return accountIds.length;
+        }
+
+        /**
+         * @param row the row of an account
+         * @return the ID of the account
+         */
+        public int accountId(int row) {
+            return accountIds[row];
+        }
+
+        /**
+         * @param column a column of the vectors
+         * @return the ID of the sector in the column
+         */
+        public int sectorId(int column) {
+            return sectorIds[column];
+        }
+
+        /**
+         * @param column a column of the vectors
+         * @return the name of the sector in the column
+         */
+        public String sectorName(int column) {
+            return sectorNames[column];
+        }
+
+        /**
+         * @return the number of sectors
+         */
+        public int sectors() {
+            return sectorNames.length;
+        }
+
+        /**
+         * @param row the row of an account
+         * @return the difference vector of the account, in percentage points; the array is not copied
+         */
+        public double[] vector(int row) {
+            return vectors[row];
+        }
+
+        /**
+         * @return the difference vectors of all accounts, one per row; the matrix is not copied
+         */
+        public double[][] matrix() {
+            return vectors;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package Reporting;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The sector difference vectors of every account, spilled to a file so that they can be read many times over
+ * without querying the database again and without holding them all on the heap.
+ * The file holds the number of sectors and the ID of each sector, followed by one fixed-size record per account:
+ * the account ID and one float per sector. The weights are whole percentages, which a float holds exactly.
+ * The records are read through memory-mapped regions of the file.
+ */
+public class SectorVectorFile implements KMeans.PointSource {
+
+    // Largest number of bytes mapped at once
+    private static final long MAX_REGION_SIZE = Integer.MAX_VALUE;
+
+    private final Path path;
+    private final int[] sectorIds;
+    private final long dataOffset;
+    private final int recordSize;
+    private final long size;
+
+    private SectorVectorFile(Path path, int[] sectorIds) throws IOException {
+        this.path = path;
+        this.sectorIds = sectorIds;
+        this.dataOffset = Integer.BYTES + (long) Integer.BYTES * sectorIds.length;
+        this.recordSize = Integer.BYTES + Float.BYTES * sectorIds.length;
+        this.size = (Files.size(path) - dataOffset) / recordSize;
+    }
+
+    /**
+     * Writes every vector of a stream to a file, reading the database once.
+     *
+     * @param stream    the stream of sector difference vectors
+     * @param path      the file to write, replaced if it exists
+     * @param batchSize the number of accounts read from the database at a time
+     * @return the file
+     * @throws IOException if the file could not be written or the vectors could not be read
+     */
+    public static SectorVectorFile write(SectorVectorExtractor.SectorVectorStream stream, Path path, int batchSize) throws IOException {
+        int[] sectorIds = new int[stream.sectors()];
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(sectorIds.length);
+            for (int column = 0; column < sectorIds.length; column++) {
+                sectorIds[column] = stream.sectorId(column);
+                out.writeInt(sectorIds[column]);
+            }
+            boolean read;
+            try {
+                read = stream.forEachBatch(batchSize, (ids, vectors, count) -> {
+                    try {
+                        for (int i = 0; i < count; i++) {
+                            out.writeInt(ids[i]);
+                            for (double component : vectors[i]) {
+                                out.writeFloat((float) component);
+                            }
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (!read) {
+                throw new IOException("Failed to read the sector vectors from the database.");
+            }
+        }
+        return new SectorVectorFile(path, sectorIds);
+    }
+
+    /**
+     * Opens a file written by write.
+     *
+     * @param path the file
+     * @return the file
+     * @throws IOException if the file could not be read
+     */
+    public static SectorVectorFile open(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            int[] sectorIds = new int[in.readInt()];
+            for (int column = 0; column < sectorIds.length; column++) {
+                sectorIds[column] = in.readInt();
+            }
+            return new SectorVectorFile(path, sectorIds);
+        }
+    }
+
+    /**
+     * @return the number of accounts in the file
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return the number of sectors
+     */
+    public int sectors() {
+        return sectorIds.length;
+    }
+
+    /**
+     * @param column a column of the vectors
+     * @return the ID of the sector in the column
+     */
+    public int sectorId(int column) {
+        return sectorIds[column];
+    }
+
+    @Override
+    public boolean forEachBatch(int batchSize, KMeans.BatchConsumer consumer) {
+        int[] accountIds = new int[batchSize];
+        double[][] vectors = new double[batchSize][sectorIds.length];
+        long recordsPerRegion = MAX_REGION_SIZE / recordSize;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            int count = 0;
+            for (long first = 0; first < size; first += recordsPerRegion) {
+                long records = Math.min(recordsPerRegion, size - first);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + first * recordSize, records * recordSize);
+                for (long record = 0; record < records; record++) {
+                    accountIds[count] = region.getInt();
+                    double[] vector = vectors[count];
+                    for (int column = 0; column < vector.length; column++) {
+                        vector[column] = region.getFloat();
+                    }
+                    if (++count == batchSize) {
+                        consumer.accept(accountIds, vectors, count);
+                        count = 0;
+                    }
+                }
+            }
+            if (count > 0) {
+                consumer.accept(accountIds, vectors, count);
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("Failed to read the sector vector file: " + e.getMessage());
+            return false;
+        }
+    }
+}
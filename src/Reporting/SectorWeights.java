@@ -1,6 +1,8 @@
 package Reporting;
 
 import Database.ConnectionEstablisher;
+import Database.PriceTable;
+import Database.ReferenceDataCache;
 
 import java.sql.*;
 import java.util.ArrayList;
@@ -10,71 +12,39 @@ import java.util.Map;
 
 public class SectorWeights {
 
-    ConnectionEstablisher connectionEstablisher = new ConnectionEstablisher();
-
-    public SectorWeights() {
+    ConnectionEstablisher connectionEstablisher;
+    ReferenceDataCache referenceDataCache;
+    PriceTable priceTable;
+    SectorExposureIndex sectorExposureIndex;
 
+    public SectorWeights(ConnectionEstablisher connectionEstablisher, ReferenceDataCache referenceDataCache, PriceTable priceTable,
+                         SectorExposureIndex sectorExposureIndex) {
+        this.connectionEstablisher = connectionEstablisher;
+        this.referenceDataCache = referenceDataCache;
+        this.priceTable = priceTable;
+        this.sectorExposureIndex = sectorExposureIndex;
     }
 
     /**
-     * Retrieves the sector weights for a given account.
+     * Retrieves the sector weights for a given account. The weights are computed from the sector exposure index,
+     * and only from the database when the index does not hold the account.
      *
      * @param accountId the ID of the account
      * @return a map containing sector names as keys and their corresponding weights as values
      */
     public Map<String, Integer> profileSectorWeights(int accountId) {
-        Map<String, Double> sectorValues = new HashMap<>();
-        double totalValue = 0.0;
+        Map<String, Integer> indexedWeights = sectorExposureIndex.getSectorWeights(accountId);
+        if (indexedWeights != null) {
+            return indexedWeights;
+        }
         Connection connection = connectionEstablisher.establishConnection();
         if (connection != null) {
             try {
-                if (!accountExists(connection, accountId)) {
-                    throw new SQLException("Account with ID " + accountId + " does not exist.");
-                }
-                // Fetch market value for stocks by sector
-                String query = "SELECT s.sector_id, sec.sectorName, SUM(i.quantity * s.perShare_price) AS sectorValue " +
-                        "FROM Investments i " +
-                        "JOIN Stocks s ON i.stock_id = s.stock_id " +
-                        "JOIN Sectors sec ON s.sector_id = sec.sector_id " +
-                        "WHERE i.account_id = ? " +
-                        "GROUP BY s.sector_id";
-                try (PreparedStatement stmt = connection.prepareStatement(query)) {
-                    stmt.setInt(1, accountId);
-                    ResultSet rs = stmt.executeQuery();
-                    while (rs.next()) {
-                        String sectorName = rs.getString("sectorName");
-                        double sectorValue = rs.getDouble("sectorValue");
-                        sectorValues.put(sectorName, sectorValue);
-                        totalValue += sectorValue;
-                    }
-                }
-
-                // Add cash balance to the total account value
-                double cashBalance = getCashBalance(accountId, connection);
-                totalValue += cashBalance;
-                sectorValues.put("cash", cashBalance);
-                List<String> allSectors = getAllSectorNames(connection);
-
-                // Calculate the percentage contribution of each sector
-                Map<String, Integer> sectorPercentages = new HashMap<>();
-                for (String sector : allSectors) {
-                    if (!sectorValues.containsKey(sector)) {
-                        sectorPercentages.put(sector, 0); // Sector not found in account, set percentage to 0
-                    } else {
-                        int percentage = (int) Math.round((sectorValues.get(sector) / totalValue) * 100);
-                        sectorPercentages.put(sector, percentage);
-                    }
-                }
-
-                return sectorPercentages;
+                return profileSectorWeights(connection, accountId);
             } catch (SQLException e) {
                 System.out.println("SQL error occurred: " + e.getMessage());
             } finally {
-                try {
-                    connection.close();
-                } catch (SQLException e) {
-                    System.out.println("Error closing connection: " + e.getMessage());
-                }
+                connectionEstablisher.closeConnection(connection);
             }
         } else {
             System.out.println("Failed to establish database connection.");
@@ -82,6 +52,58 @@ public class SectorWeights {
         return new HashMap<>(); // Return an empty map in case of failure
     }
 
+    /**
+     * Retrieves the sector weights for a given account on a connection the caller already holds.
+     *
+     * @param connection the database connection
+     * @param accountId  the ID of the account
+     * @return a map containing sector names as keys and their corresponding weights as values
+     * @throws SQLException if the account does not exist or an SQL error occurs
+     */
+    Map<String, Integer> profileSectorWeights(Connection connection, int accountId) throws SQLException {
+        Map<String, Integer> indexedWeights = sectorExposureIndex.getSectorWeights(accountId);
+        if (indexedWeights != null) {
+            return indexedWeights;
+        }
+        Map<String, Double> sectorValues = new HashMap<>();
+        double totalValue = 0.0;
+        if (!accountExists(connection, accountId)) {
+            throw new SQLException("Account with ID " + accountId + " does not exist.");
+        }
+        // Fetch market value for stocks by sector, pricing each position from the in-memory price table
+        String query = "SELECT stock_id, quantity FROM Investments WHERE account_id = ?";
+        try (PreparedStatement stmt = connection.prepareStatement(query)) {
+            stmt.setInt(1, accountId);
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                int stockId = rs.getInt("stock_id");
+                String sectorName = referenceDataCache.getSectorName(connection, referenceDataCache.getSectorIdOfStock(connection, stockId));
+                double stockValue = rs.getDouble("quantity") * priceTable.getPrice(connection, stockId);
+                sectorValues.merge(sectorName, stockValue, Double::sum);
+                totalValue += stockValue;
+            }
+        }
+
+        // Add cash balance to the total account value
+        double cashBalance = getCashBalance(accountId, connection);
+        totalValue += cashBalance;
+        sectorValues.put(ReferenceDataCache.CASH_SECTOR, cashBalance);
+        List<String> allSectors = getAllSectorNames(connection);
+
+        // Calculate the percentage contribution of each sector
+        Map<String, Integer> sectorPercentages = new HashMap<>();
+        for (String sector : allSectors) {
+            if (!sectorValues.containsKey(sector)) {
+                sectorPercentages.put(sector, 0); // Sector not found in account, set percentage to 0
+            } else {
+                int percentage = (int) Math.round((sectorValues.get(sector) / totalValue) * 100);
+                sectorPercentages.put(sector, percentage);
+            }
+        }
+
+        return sectorPercentages;
+    }
+
     /**
      * Checks if an account exists.
      *
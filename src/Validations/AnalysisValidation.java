@@ -13,10 +13,24 @@ public class AnalysisValidation {
         return true;
     }
 
+    public boolean advisorStockRecValidations(int advisorId, int maxRecommendations, int numComparators){
+        if(advisorId<=0 || maxRecommendations<=0 || numComparators<=0){
+            return false;
+        }
+        return true;
+    }
+
     public boolean advisorgroupValidations(double tolearance, int maxGroups){
         if(tolearance <-1 || tolearance>1 || maxGroups<=0){
             return false;
         }
         return true;
     }
+
+    public boolean advisorgroupBatchValidations(double tolearance, int maxGroups, int batchSize){
+        if(!advisorgroupValidations(tolearance, maxGroups) || batchSize<=0){
+            return false;
+        }
+        return true;
+    }
 }
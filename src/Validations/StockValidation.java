@@ -20,4 +20,11 @@ public class StockValidation {
         return true;
     }
 
+    public boolean validateReferenceDataFile(String filePath){
+        if(filePath==null || filePath.isEmpty()){
+            return false;
+        }
+        return true;
+    }
+
 }